@@ -14,6 +14,7 @@ public abstract class AbstractCall<R> implements Call<R> {
     private final String functionName;
     private final String function;
     private final TypeToken<R> returnType;
+    private final boolean idempotent;
 
     /**
      * Default constructor.
@@ -22,8 +23,20 @@ public abstract class AbstractCall<R> implements Call<R> {
      * @param returnType the return type of this call
      */
     AbstractCall(String function, TypeToken<R> returnType) {
+        this(function, returnType, false);
+    }
+
+    /**
+     * Constructor declaring whether the call is idempotent.
+     *
+     * @param function string containing module and function name (e.g. "test.ping")
+     * @param returnType the return type of this call
+     * @param idempotent whether the call may be sent more than once
+     */
+    AbstractCall(String function, TypeToken<R> returnType, boolean idempotent) {
         this.function = function;
         this.returnType = returnType;
+        this.idempotent = idempotent;
         String[] splitFunction = ClientUtils.splitFunction(function);
         this.moduleName = splitFunction[0];
         this.functionName = splitFunction[1];
@@ -65,4 +78,12 @@ public abstract class AbstractCall<R> implements Call<R> {
         return functionName;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
 }
@@ -16,4 +16,15 @@ public interface Call<R> {
      * @return call payload as a map of key/value pairs
      */
     Map<String, Object> getPayload();
+
+    /**
+     * Return whether sending this call more than once has the same effect as sending it
+     * once, which allows to retry it or to send it again while a response is pending.
+     * Calls are not idempotent unless they say otherwise.
+     *
+     * @return true if the call may be sent more than once
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
 }
@@ -1,14 +1,18 @@
 package com.suse.salt.netapi.calls;
 
 import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+import static com.suse.salt.netapi.utils.ClientUtils.propagateCancellation;
 
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.calls.runner.Jobs;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.client.ResultCache;
 import com.suse.salt.netapi.client.SaltClient;
 import com.suse.salt.netapi.datatypes.AuthMethod;
 import com.suse.salt.netapi.datatypes.Batch;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.datatypes.target.MinionList;
 import com.suse.salt.netapi.datatypes.target.SSHTarget;
 import com.suse.salt.netapi.datatypes.target.Target;
 import com.suse.salt.netapi.errors.GenericError;
@@ -17,18 +21,24 @@ import com.suse.salt.netapi.event.EventStream;
 import com.suse.salt.netapi.event.JobReturnEvent;
 import com.suse.salt.netapi.event.RunnerReturnEvent;
 import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.parser.ParallelParser;
+import com.suse.salt.netapi.parser.RawReturnParser;
+import com.suse.salt.netapi.parser.SpillPolicy;
+import com.suse.salt.netapi.parser.SpillingParser;
 import com.suse.salt.netapi.results.Result;
 import com.suse.salt.netapi.results.Return;
 import com.suse.salt.netapi.results.SSHResult;
 import com.suse.salt.netapi.utils.ClientUtils;
 
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -49,7 +59,15 @@ public class LocalCall<R> extends AbstractCall<R> {
             Optional<Map<String, ?>> kwarg, TypeToken<R> returnType,
             Optional<?> metadata, Optional<Integer> timeout,
             Optional<Integer> gatherJobTimeout) {
-        super(functionName, returnType);
+        this(functionName, arg, kwarg, returnType, metadata, timeout, gatherJobTimeout,
+                false);
+    }
+
+    public LocalCall(String functionName, Optional<List<?>> arg,
+            Optional<Map<String, ?>> kwarg, TypeToken<R> returnType,
+            Optional<?> metadata, Optional<Integer> timeout,
+            Optional<Integer> gatherJobTimeout, boolean idempotent) {
+        super(functionName, returnType, idempotent);
         this.arg = arg;
         this.kwarg = kwarg;
         this.metadata = metadata;
@@ -76,25 +94,43 @@ public class LocalCall<R> extends AbstractCall<R> {
         this(functionName, arg, kwarg, returnType, Optional.empty());
     }
 
+    public LocalCall(String functionName, Optional<List<?>> arg,
+            Optional<Map<String, ?>> kwarg, TypeToken<R> returnType, boolean idempotent) {
+        this(functionName, arg, kwarg, returnType, Optional.empty(), Optional.empty(),
+                Optional.empty(), idempotent);
+    }
+
     public LocalCall<R> withMetadata(Object metadata) {
         return new LocalCall<>(getFunction(), arg, kwarg, getReturnType(),
-                Optional.of(metadata), timeout, gatherJobTimeout);
+                Optional.of(metadata), timeout, gatherJobTimeout, isIdempotent());
     }
 
     public LocalCall<R> withoutMetadata() {
         return new LocalCall<>(getFunction(), arg, kwarg, getReturnType(),
-                Optional.empty(), timeout, gatherJobTimeout);
+                Optional.empty(), timeout, gatherJobTimeout, isIdempotent());
     }
 
     public LocalCall<R> withTimeouts(Optional<Integer> timeout,
             Optional<Integer> gatherJobTimeout) {
         return new LocalCall<>(getFunction(), arg, kwarg, getReturnType(), metadata,
-                timeout, gatherJobTimeout);
+                timeout, gatherJobTimeout, isIdempotent());
     }
 
     public LocalCall<R> withoutTimeouts() {
         return new LocalCall<>(getFunction(), arg, kwarg, getReturnType(), metadata,
-                Optional.empty(), Optional.empty());
+                Optional.empty(), Optional.empty(), isIdempotent());
+    }
+
+    /**
+     * Returns a copy of this call declaring whether it only reads data from the minions,
+     * so that it may be retried or sent again while a response is pending.
+     *
+     * @param idempotent whether the call may be sent more than once
+     * @return the call with the given idempotency
+     */
+    public LocalCall<R> withIdempotence(boolean idempotent) {
+        return new LocalCall<>(getFunction(), arg, kwarg, getReturnType(), metadata,
+                timeout, gatherJobTimeout, idempotent);
     }
 
     /**
@@ -148,18 +184,18 @@ public class LocalCall<R> extends AbstractCall<R> {
         Map<String, Object> customArgs = new HashMap<>();
         batch.ifPresent(v -> customArgs.putAll(v.getParams()));
 
-        return client.call(
+        CompletionStage<Return<List<LocalAsyncResult<R>>>> response = client.call(
                 this, Client.LOCAL_ASYNC, Optional.of(target), customArgs,
-                new TypeToken<Return<List<LocalAsyncResult<R>>>>(){}, auth)
-                .thenApply(wrapper -> {
-                    LocalAsyncResult<R> result = wrapper.getResult().get(0);
-                    result.setType(getReturnType());
-                    if (result.getJid() == null) {
-                        return Optional.empty();
-                    } else {
-                        return Optional.of(result);
-                    }
-                });
+                new TypeToken<Return<List<LocalAsyncResult<R>>>>(){}, auth);
+        return propagateCancellation(response.thenApply(wrapper -> {
+            LocalAsyncResult<R> result = wrapper.getResult().get(0);
+            result.setType(getReturnType());
+            if (result.getJid() == null) {
+                return Optional.empty();
+            } else {
+                return Optional.of(result);
+            }
+        }), response);
     }
 
     /**
@@ -330,8 +366,124 @@ public class LocalCall<R> extends AbstractCall<R> {
      */
     public CompletionStage<Map<String, Result<R>>> callSync(final SaltClient client, Target<?> target,
             AuthMethod auth) {
-        return callSyncHelperNonBlock(client, target, auth, Optional.empty())
-                .thenApply(r -> r.get(0));
+        Optional<ResultCache> cache = client.getResultCache();
+        if (cache.isPresent() && target instanceof MinionList &&
+                cache.get().caches(getFunction())) {
+            return cache.get().call(this, (MinionList) target, auth,
+                    minions -> callSyncUnbatched(client, minions, auth));
+        }
+        return callSyncUnbatched(client, target, auth);
+    }
+
+    private CompletionStage<Map<String, Result<R>>> callSyncUnbatched(
+            final SaltClient client, Target<?> target, AuthMethod auth) {
+        CompletionStage<List<Map<String, Result<R>>>> results =
+                callSyncHelperNonBlock(client, target, auth, Optional.empty(),
+                        Optional.empty());
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
+    }
+
+    /**
+     * Calls a execution module function on the given target and waits for the result
+     * until the given deadline. The Salt timeouts and the timeouts of the HTTP request are
+     * derived from the time left, see {@link SaltClient#call(Call, Client, Optional, Map,
+     * TypeToken, AuthMethod, Deadline)}. Results are not taken from or added to the
+     * result cache.
+     *
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param deadline the deadline of the call
+     * @return a map containing the results with the minion name as key
+     */
+    public CompletionStage<Map<String, Result<R>>> callSync(final SaltClient client,
+            Target<?> target, AuthMethod auth, Deadline deadline) {
+        CompletionStage<List<Map<String, Result<R>>>> results = callSyncHelperNonBlock(
+                client, target, auth, Optional.empty(), Optional.of(deadline));
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
+    }
+
+    /**
+     * Calls a execution module function on the given target and waits for the result
+     * without decoding the results of all minions up front. The result of a minion is
+     * decoded whenever it is looked up in the returned map, responses larger than the
+     * threshold of the given policy are kept in a temporary file instead of on the heap,
+     * see {@link SpillingParser}. Results are not taken from or added to the result cache.
+     * <p>
+     * The response is streamed into the parser while it is received, on the parser
+     * executor of the HTTP client or else on
+     * {@link ClientUtils#sharedParserExecutor()}, see {@link SpillPolicy} for clients
+     * other than the ones of this library.
+     *
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param spill the policy for large responses
+     * @return a map containing the results with the minion name as key
+     */
+    public CompletionStage<Map<String, Result<R>>> callSync(final SaltClient client,
+            Target<?> target, AuthMethod auth, SpillPolicy spill) {
+        CompletionStage<List<Map<String, Result<R>>>> results = client.call(this,
+                Client.LOCAL, Optional.of(target), new HashMap<>(),
+                new SpillingParser<>(getReturnType(), spill), auth);
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
+    }
+
+    /**
+     * Calls a execution module function on the given target and waits for the result,
+     * decoding the result of a minion only when it is first looked up in the returned
+     * map. The response is scanned for the position of every result and kept on the heap,
+     * see {@link SpillingParser}. Results are not taken from or added to the result cache.
+     *
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @return a map containing the results with the minion name as key
+     */
+    public CompletionStage<Map<String, Result<R>>> callSyncLazy(final SaltClient client,
+            Target<?> target, AuthMethod auth) {
+        CompletionStage<List<Map<String, Result<R>>>> results = client.call(this,
+                Client.LOCAL, Optional.of(target), new HashMap<>(),
+                new SpillingParser<>(getReturnType(), SpillPolicy.NEVER, true), auth);
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
+    }
+
+    /**
+     * Calls a execution module function on the given target and waits for the result,
+     * decoding the results of the minions in parallel on the given executor, see
+     * {@link ParallelParser}. Results are not taken from or added to the result cache.
+     *
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param executor the executor to decode results on
+     * @return a map containing the results with the minion name as key
+     */
+    public CompletionStage<Map<String, Result<R>>> callSyncParallel(final SaltClient client,
+            Target<?> target, AuthMethod auth, Executor executor) {
+        CompletionStage<List<Map<String, Result<R>>>> results = client.call(this,
+                Client.LOCAL, Optional.of(target), new HashMap<>(),
+                new ParallelParser<>(getReturnType(), executor), auth);
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
+    }
+
+    /**
+     * Calls a execution module function on the given target and waits for the result
+     * without decoding it. The value of every minion is passed through as the UTF-8
+     * encoded JSON it was received as, see {@link RawReturnParser}. Results are not
+     * taken from or added to the result cache.
+     *
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @return a map containing the JSON of the results with the minion name as key
+     */
+    public CompletionStage<Map<String, ByteBuffer>> callSyncRaw(final SaltClient client,
+            Target<?> target, AuthMethod auth) {
+        CompletionStage<List<Map<String, ByteBuffer>>> results = client.call(this,
+                Client.LOCAL, Optional.of(target), new HashMap<>(), new RawReturnParser(),
+                auth);
+        return propagateCancellation(results.thenApply(r -> r.get(0)), results);
     }
 
     /**
@@ -365,7 +517,7 @@ public class LocalCall<R> extends AbstractCall<R> {
      */
     public CompletionStage<List<Map<String, Result<R>>>> callSync(final SaltClient client, Target<?> target,
             AuthMethod auth, Optional<Batch> batch) {
-        return callSyncHelperNonBlock(client, target, auth, batch);
+        return callSyncHelperNonBlock(client, target, auth, batch, Optional.empty());
     }
 
     // This is a big hack and should be fixed in salt: https://github.com/saltstack/salt/issues/52762
@@ -388,7 +540,7 @@ public class LocalCall<R> extends AbstractCall<R> {
                                     JsonObject jsonObject = parsingError.getJson().getAsJsonObject();
                                     if (jsonObject.has("retcode")) {
                                         jsonObject.remove("retcode");
-                                        return JsonParser.GSON.fromJson(jsonObject, xor);
+                                        return JsonParser.CODEC.decode(jsonObject, xor);
                                     } else {
                                         return Result.error(parsingError);
                                     }
@@ -412,12 +564,14 @@ public class LocalCall<R> extends AbstractCall<R> {
      * @param target the target for the function
      * @param batch the batch parameter, empty for unbatched
      * @param auth authentication credentials to use
+     * @param deadline the deadline of the call, if any
      * @return A list of maps with each list representing each batch, and maps containing
      * the results with the minion names as keys. The first list is the entire
      * output for unbatched input.
      */
     private CompletionStage<List<Map<String, Result<R>>>> callSyncHelperNonBlock(
-            final SaltClient client, Target<?> target, AuthMethod auth, Optional<Batch> batch) {
+            final SaltClient client, Target<?> target, AuthMethod auth, Optional<Batch> batch,
+            Optional<Deadline> deadline) {
         Map<String, Object> customArgs = new HashMap<>();
         batch.ifPresent(v -> customArgs.putAll(v.getParams()));
 
@@ -430,23 +584,21 @@ public class LocalCall<R> extends AbstractCall<R> {
         TypeToken<Return<List<Map<String, Result<R>>>>> typeToken =
                 (TypeToken<Return<List<Map<String, Result<R>>>>>) TypeToken.get(wrapperType);
 
+        CompletionStage<Return<List<Map<String, Result<R>>>>> response = deadline
+                .map(d -> client.call(this, clientType, Optional.of(target), customArgs,
+                        typeToken, auth, d))
+                .orElseGet(() -> client.call(this,
+                        clientType,
+                        Optional.of(target),
+                        customArgs,
+                        typeToken,
+                        auth));
         if (batch.isPresent()) {
-            return client.call(this,
-                    clientType,
-                    Optional.of(target),
-                    customArgs,
-                    typeToken,
-                    auth)
+            return propagateCancellation(response
                     .thenApply(Return::getResult)
-                    .thenApply(results -> handleRetcodeBatchingHack(results, xor));
+                    .thenApply(results -> handleRetcodeBatchingHack(results, xor)), response);
         } else {
-            return client.call(this,
-                    clientType,
-                    Optional.of(target),
-                    customArgs,
-                    typeToken,
-                    auth)
-                    .thenApply(Return::getResult);
+            return propagateCancellation(response.thenApply(Return::getResult), response);
         }
     }
 
@@ -474,13 +626,15 @@ public class LocalCall<R> extends AbstractCall<R> {
         Type listType = parameterizedType(null, List.class, map);
         Type wrapperType = parameterizedType(null, Return.class, listType);
 
-        return client.call(this,
-                Client.SSH,
-                Optional.of(target),
-                args,
-                (TypeToken<Return<List<Map<String, Result<SSHResult<R>>>>>>)
-                        TypeToken.get(wrapperType), auth)
-                .thenApply(wrapper -> wrapper.getResult().get(0));
+        CompletionStage<Return<List<Map<String, Result<SSHResult<R>>>>>> response =
+                client.call(this,
+                        Client.SSH,
+                        Optional.of(target),
+                        args,
+                        (TypeToken<Return<List<Map<String, Result<SSHResult<R>>>>>>)
+                                TypeToken.get(wrapperType), auth);
+        return propagateCancellation(response.thenApply(wrapper -> wrapper.getResult().get(0)),
+                response);
     }
 
     private static <R> void onRunnerReturn(
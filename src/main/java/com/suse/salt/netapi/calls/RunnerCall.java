@@ -1,6 +1,7 @@
 package com.suse.salt.netapi.calls;
 
 import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+import static com.suse.salt.netapi.utils.ClientUtils.propagateCancellation;
 
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.client.SaltClient;
@@ -27,7 +28,12 @@ public class RunnerCall<R> extends AbstractCall<R> {
 
     public RunnerCall(String functionName, Optional<Map<String, ?>> kwargs,
             TypeToken<R> returnType) {
-        super(functionName, returnType);
+        this(functionName, kwargs, returnType, false);
+    }
+
+    public RunnerCall(String functionName, Optional<Map<String, ?>> kwargs,
+            TypeToken<R> returnType, boolean idempotent) {
+        super(functionName, returnType, idempotent);
         this.kwargs = kwargs;
     }
 
@@ -53,13 +59,14 @@ public class RunnerCall<R> extends AbstractCall<R> {
      * @return information about the scheduled job
      */
     public CompletionStage<RunnerAsyncResult<R>> callAsync(final SaltClient client, AuthMethod auth) {
-        return client.call(this, Client.RUNNER_ASYNC, Optional.empty(), Collections.emptyMap(),
-                new TypeToken<Return<List<RunnerAsyncResult<R>>>>(){}, auth)
-                .thenApply(wrapper -> {
-                    RunnerAsyncResult<R> result = wrapper.getResult().get(0);
-                    result.setType(getReturnType());
-                    return result;
-                });
+        CompletionStage<Return<List<RunnerAsyncResult<R>>>> response = client.call(this,
+                Client.RUNNER_ASYNC, Optional.empty(), Collections.emptyMap(),
+                new TypeToken<Return<List<RunnerAsyncResult<R>>>>(){}, auth);
+        return propagateCancellation(response.thenApply(wrapper -> {
+            RunnerAsyncResult<R> result = wrapper.getResult().get(0);
+            result.setType(getReturnType());
+            return result;
+        }), response);
     }
 
     /**
@@ -77,12 +84,12 @@ public class RunnerCall<R> extends AbstractCall<R> {
         Type wrapperType = parameterizedType(null, Return.class, listType);
 
         @SuppressWarnings("unchecked")
-        CompletionStage<Result<R>> resultCompletionStage =
+        CompletionStage<Return<List<Result<R>>>> response =
                 client.call(
                         this, Client.RUNNER, Optional.empty(), Collections.emptyMap(),
-                        (TypeToken<Return<List<Result<R>>>>) TypeToken.get(wrapperType), auth)
-                        .thenApply(wrapper -> wrapper.getResult().get(0));
-        return resultCompletionStage;
+                        (TypeToken<Return<List<Result<R>>>>) TypeToken.get(wrapperType), auth);
+        return propagateCancellation(response.thenApply(wrapper -> wrapper.getResult().get(0)),
+                response);
     }
 
 }
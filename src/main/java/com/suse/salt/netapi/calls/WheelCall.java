@@ -1,6 +1,7 @@
 package com.suse.salt.netapi.calls;
 
 import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+import static com.suse.salt.netapi.utils.ClientUtils.propagateCancellation;
 
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.client.SaltClient;
@@ -27,7 +28,12 @@ public class WheelCall<R> extends AbstractCall<R> {
 
     public WheelCall(String functionName, Optional<Map<String, ?>> kwargs,
             TypeToken<R> returnType) {
-        super(functionName, returnType);
+        this(functionName, kwargs, returnType, false);
+    }
+
+    public WheelCall(String functionName, Optional<Map<String, ?>> kwargs,
+            TypeToken<R> returnType, boolean idempotent) {
+        super(functionName, returnType, idempotent);
         this.kwargs = kwargs;
     }
 
@@ -53,14 +59,14 @@ public class WheelCall<R> extends AbstractCall<R> {
      * @return information about the scheduled job
      */
     public CompletionStage<WheelAsyncResult<R>> callAsync(final SaltClient client, AuthMethod auth) {
-        return client.call(
+        CompletionStage<Return<List<WheelAsyncResult<R>>>> response = client.call(
                 this, Client.WHEEL_ASYNC, Optional.empty(), Collections.emptyMap(),
-                new TypeToken<Return<List<WheelAsyncResult<R>>>>(){}, auth)
-                .thenApply(wrapper -> {
-                    WheelAsyncResult<R> result = wrapper.getResult().get(0);
-                    result.setType(getReturnType());
-                    return result;
-                });
+                new TypeToken<Return<List<WheelAsyncResult<R>>>>(){}, auth);
+        return propagateCancellation(response.thenApply(wrapper -> {
+            WheelAsyncResult<R> result = wrapper.getResult().get(0);
+            result.setType(getReturnType());
+            return result;
+        }), response);
     }
 
     /**
@@ -79,12 +85,12 @@ public class WheelCall<R> extends AbstractCall<R> {
         Type wrapperType = parameterizedType(null, Return.class, listType);
 
         @SuppressWarnings("unchecked")
-        CompletionStage<WheelResult<Result<R>>> wheelResultCompletionStage =
+        CompletionStage<Return<List<WheelResult<Result<R>>>>> response =
                 client.call(this, Client.WHEEL, Optional.empty(), Collections.emptyMap(),
                         (TypeToken<Return<List<WheelResult<Result<R>>>>>)
-                                TypeToken.get(wrapperType), auth)
-                        .thenApply(wrapper -> wrapper.getResult().get(0));
-        return wheelResultCompletionStage;
+                                TypeToken.get(wrapperType), auth);
+        return propagateCancellation(response.thenApply(wrapper -> wrapper.getResult().get(0)),
+                response);
     }
 
 }
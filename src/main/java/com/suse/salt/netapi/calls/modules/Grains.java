@@ -19,13 +19,13 @@ public class Grains {
 
     private static LocalCall<List<String>> LS =
             new LocalCall<>("grains.ls", Optional.empty(),
-            Optional.empty(), new TypeToken<List<String>>(){});
+            Optional.empty(), new TypeToken<List<String>>(){}, true);
 
     public static LocalCall<Map<String, Object>> items(boolean sanitize) {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("sanitize", sanitize);
         return new LocalCall<>("grains.items", Optional.empty(), Optional.of(args),
-                new TypeToken<Map<String, Object>>(){});
+                new TypeToken<Map<String, Object>>(){}, true);
     }
 
     public static LocalCall<List<String>> ls() {
@@ -37,14 +37,14 @@ public class Grains {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("sanitize", sanitize);
         return new LocalCall<>("grains.item", Optional.of(Arrays.asList(items)),
-                Optional.of(args), new TypeToken<Map<String, Object>>(){});
+                Optional.of(args), new TypeToken<Map<String, Object>>(){}, true);
     }
 
     public static LocalCall<Boolean> hasValue(String key) {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("key", key);
         return new LocalCall<>("grains.has_value", Optional.empty(), Optional.of(args),
-                new TypeToken<Boolean>(){});
+                new TypeToken<Boolean>(){}, true);
     }
 
     public static LocalCall<Map<String, Object>> set(String key,  Optional<Map<String, Object>> extraArgs) {
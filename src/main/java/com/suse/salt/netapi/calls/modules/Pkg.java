@@ -222,7 +222,7 @@ public class Pkg {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("versions_as_list", true);
         return new LocalCall<>("pkg.list_pkgs", Optional.empty(), Optional.of(args),
-                new TypeToken<Map<String, List<String>>>(){});
+                new TypeToken<Map<String, List<String>>>(){}, true);
     }
 
     /**
@@ -237,7 +237,7 @@ public class Pkg {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("attr", attributes);
         return new LocalCall<>("pkg.list_pkgs", Optional.empty(), Optional.of(args),
-                new TypeToken<Map<String, List<Xor<String, Info>>>>(){});
+                new TypeToken<Map<String, List<Xor<String, Info>>>>(){}, true);
     }
 
     /**
@@ -256,7 +256,7 @@ public class Pkg {
             kwargs.put("errors", "report");
         }
         return new LocalCall<>("pkg.info_installed", Optional.of(Arrays.asList(packages)),
-                Optional.of(kwargs), new TypeToken<Map<String, Info>>(){});
+                Optional.of(kwargs), new TypeToken<Map<String, Info>>(){}, true);
     }
 
     /**
@@ -276,7 +276,7 @@ public class Pkg {
             kwargs.put("errors", "report");
         }
         return new LocalCall<>("pkg.info_installed", Optional.of(Arrays.asList(packages)),
-                Optional.of(kwargs), new TypeToken<Map<String, Xor<Info, List<Info>>>>(){});
+                Optional.of(kwargs), new TypeToken<Map<String, Xor<Info, List<Info>>>>(){}, true);
     }
 
     public static LocalCall<Map<String, Info>> infoAvailable(String... packages) {
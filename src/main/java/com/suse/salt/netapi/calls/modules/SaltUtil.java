@@ -79,11 +79,11 @@ public class SaltUtil {
         private Optional<JsonElement> metadata = Optional.empty();
 
         public <R> Optional<R> getMetadata(Class<R> type) {
-            return metadata.map(json -> JsonParser.GSON.fromJson(json, type));
+            return metadata.map(json -> JsonParser.CODEC.decode(json, type));
         }
 
         public <R> Optional<R> getMetadata(TypeToken<R> type) {
-            return metadata.map(json -> JsonParser.GSON.fromJson(json, type.getType()));
+            return metadata.map(json -> JsonParser.CODEC.decode(json, type.getType()));
         }
 
         public String getJid() {
@@ -24,11 +24,11 @@ public class State {
     public static class ApplyResult extends StateApplyResult<JsonElement> {
 
         public <R> R getChanges(Class<R> dataType) {
-            return JsonParser.GSON.fromJson(changes, dataType);
+            return JsonParser.CODEC.decode(changes, dataType);
         }
 
         public <R> R getChanges(TypeToken<R> dataType) {
-            return JsonParser.GSON.fromJson(changes, dataType.getType());
+            return JsonParser.CODEC.decode(changes, dataType.getType());
         }
     }
 
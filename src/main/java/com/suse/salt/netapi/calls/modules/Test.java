@@ -18,7 +18,7 @@ public class Test {
 
     private static final LocalCall<Boolean> PING =
             new LocalCall<>("test.ping", Optional.empty(), Optional.empty(),
-            new TypeToken<Boolean>(){});
+            new TypeToken<Boolean>(){}, true);
 
     private static final LocalCall<String> MISSING_FUNC =
             new LocalCall<>("test.missing_func", Optional.empty(), Optional.empty(),
@@ -26,11 +26,11 @@ public class Test {
 
     private static final LocalCall<VersionInformation> VERSIONS_INFORMATION =
             new LocalCall<>("test.versions_information", Optional.empty(), Optional.empty(),
-            new TypeToken<VersionInformation>(){});
+            new TypeToken<VersionInformation>(){}, true);
 
     private static final LocalCall<ModuleReport> MODULE_REPORT =
             new LocalCall<>("test.module_report", Optional.empty(), Optional.empty(),
-            new TypeToken<ModuleReport>(){});
+            new TypeToken<ModuleReport>(){}, true);
 
     private static final LocalCall<Map<String, String>> PROVIDERS =
             new LocalCall<>("test.providers", Optional.empty(), Optional.empty(),
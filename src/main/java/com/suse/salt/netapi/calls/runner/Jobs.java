@@ -2,7 +2,6 @@ package com.suse.salt.netapi.calls.runner;
 
 import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
 
@@ -12,6 +11,7 @@ import com.suse.salt.netapi.calls.RunnerAsyncResult;
 import com.suse.salt.netapi.calls.RunnerCall;
 import com.suse.salt.netapi.calls.WheelAsyncResult;
 import com.suse.salt.netapi.datatypes.StartTime;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 import com.suse.salt.netapi.results.Return;
 
@@ -33,7 +33,7 @@ import java.util.TimeZone;
  */
 public class Jobs {
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     /**
      * Information about a salt job as returned by 'jobs.list_job'
@@ -104,7 +104,7 @@ public class Jobs {
         public Optional<Object> getMetadata() {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, Object.class));
+                    return Optional.ofNullable(CODEC.decode(md, Object.class));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -114,7 +114,7 @@ public class Jobs {
         public <R> Optional<R> getMetadata(Class<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType));
+                    return Optional.ofNullable(CODEC.decode(md, dataType));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -124,7 +124,7 @@ public class Jobs {
         public <R> Optional<R> getMetadata(TypeToken<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType.getType()));
+                    return Optional.ofNullable(CODEC.decode(md, dataType.getType()));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -134,7 +134,7 @@ public class Jobs {
         public <T> Optional<T> getResult(String minionId, Class<T> type) {
             return Optional.ofNullable(result.get(minionId)).map(result -> {
                 Type wrapperType = parameterizedType(null, Return.class, type);
-                Return<T> r = GSON.fromJson(result, wrapperType);
+                Return<T> r = CODEC.decode(result, wrapperType);
                 return r.getResult();
             });
         }
@@ -142,7 +142,7 @@ public class Jobs {
         public <T> Optional<T> getResult(String minionId, TypeToken<T> type) {
             return Optional.ofNullable(result.get(minionId)).map(result -> {
                 Type wrapperType = parameterizedType(null, Return.class, type.getType());
-                Return<T> r = GSON.fromJson(result, wrapperType);
+                Return<T> r = CODEC.decode(result, wrapperType);
                 return r.getResult();
             });
         }
@@ -155,7 +155,7 @@ public class Jobs {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("jid", jid);
         return new RunnerCall<>("jobs.lookup_jid", Optional.of(args),
-                new TypeToken<Map<String, Object>>(){});
+                new TypeToken<Map<String, Object>>(){}, true);
     }
 
     @SuppressWarnings("unchecked")
@@ -165,7 +165,7 @@ public class Jobs {
         Type type = parameterizedType(null, Map.class, String.class,
                 jid.getType().getType());
         return new RunnerCall<>("jobs.lookup_jid", Optional.of(args),
-                (TypeToken<Map<String, R>>) TypeToken.get(type));
+                (TypeToken<Map<String, R>>) TypeToken.get(type), true);
     }
 
     @SuppressWarnings("unchecked")
@@ -175,7 +175,7 @@ public class Jobs {
         Type dataType = parameterizedType(null, Data.class, jid.getType().getType());
         Type type = parameterizedType(null, Map.class, String.class, dataType);
         return new RunnerCall<>("jobs.lookup_jid", Optional.of(args),
-                (TypeToken<Map<String, Data<R>>>) TypeToken.get(type));
+                (TypeToken<Map<String, Data<R>>>) TypeToken.get(type), true);
     }
 
     @SuppressWarnings("unchecked")
@@ -185,7 +185,7 @@ public class Jobs {
         Type dataType = parameterizedType(null, Data.class, jid.getType().getType());
         Type type = parameterizedType(null, Map.class, String.class, dataType);
         return new RunnerCall<>("jobs.lookup_jid", Optional.of(args),
-                (TypeToken<Map<String, Data<R>>>) TypeToken.get(type));
+                (TypeToken<Map<String, Data<R>>>) TypeToken.get(type), true);
     }
 
     /**
@@ -237,7 +237,7 @@ public class Jobs {
         public Optional<Object> getMetadata() {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, Object.class));
+                    return Optional.ofNullable(CODEC.decode(md, Object.class));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -247,7 +247,7 @@ public class Jobs {
         public <R> Optional<R> getMetadata(Class<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType));
+                    return Optional.ofNullable(CODEC.decode(md, dataType));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -257,7 +257,7 @@ public class Jobs {
         public <R> Optional<R> getMetadata(TypeToken<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType.getType()));
+                    return Optional.ofNullable(CODEC.decode(md, dataType.getType()));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -269,7 +269,7 @@ public class Jobs {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("search_metadata", searchMetadata);
         return new RunnerCall<>("jobs.list_jobs", Optional.of(args),
-                new TypeToken<Map<String, ListJobsEntry>>() { });
+                new TypeToken<Map<String, ListJobsEntry>>() { }, true);
     }
 
     public static RunnerCall<Map<String, ListJobsEntry>> listJobs(Object searchMetadata,
@@ -281,13 +281,13 @@ public class Jobs {
         args.put("end_time",
                 endTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
         return new RunnerCall<>("jobs.list_jobs", Optional.of(args),
-                new TypeToken<Map<String, ListJobsEntry>>() { });
+                new TypeToken<Map<String, ListJobsEntry>>() { }, true);
     }
 
     public static RunnerCall<Info> listJob(String jid) {
         LinkedHashMap<String, Object> args = new LinkedHashMap<>();
         args.put("jid", jid);
         return new RunnerCall<>("jobs.list_job", Optional.of(args),
-                new TypeToken<Info>(){});
+                new TypeToken<Info>(){}, true);
     }
 }
@@ -24,7 +24,7 @@ public class Manage {
 
     public static RunnerCall<List<String>> up() {
         return new RunnerCall<>("manage.up", Optional.empty(),
-                new TypeToken<List<String>>(){});
+                new TypeToken<List<String>>(){}, true);
     }
 
     public static RunnerCall<List<String>> up(Optional<Integer> timeout,
@@ -33,7 +33,7 @@ public class Manage {
         timeout.ifPresent(value -> args.put("timeout", value));
         gatherJobTimeout.ifPresent(value -> args.put("gather_job_timeout", value));
         return new RunnerCall<>("manage.up", Optional.of(args),
-                new TypeToken<List<String>>(){});
+                new TypeToken<List<String>>(){}, true);
     }
 
     public static RunnerCall<List<String>> present(Optional<String> subset,
@@ -42,7 +42,7 @@ public class Manage {
         subset.ifPresent(value -> args.put("subset", value));
         showIpv4.ifPresent(value -> args.put("show_ipv4", value));
         return new RunnerCall<>("manage.present", Optional.of(args),
-                new TypeToken<List<String>>(){});
+                new TypeToken<List<String>>(){}, true);
     }
 
     public static RunnerCall<List<String>> present() {
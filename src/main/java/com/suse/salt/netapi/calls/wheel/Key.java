@@ -107,13 +107,13 @@ public class Key {
     }
 
     private static final WheelCall<Names> LIST_ALL =
-            new WheelCall<>("key.list_all", Optional.empty(), new TypeToken<Names>(){});
+            new WheelCall<>("key.list_all", Optional.empty(), new TypeToken<Names>(){}, true);
 
     public static WheelCall<Fingerprints> finger(String match) {
         Map<String, Object> args = new LinkedHashMap<>();
         args.put("match", match);
         return new WheelCall<>("key.finger", Optional.of(args),
-                new TypeToken<Fingerprints>(){});
+                new TypeToken<Fingerprints>(){}, true);
     }
 
     public static WheelCall<Pair> gen(String id) {
@@ -3,6 +3,7 @@ package com.suse.salt.netapi.client;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
@@ -47,6 +48,23 @@ public interface AsyncHttpClient {
      */
     <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data, JsonParser<T> parser);
 
+    /**
+     * Send a POST request with an already encoded body and parse the result into object
+     * of given type. Implementations should override this to send the bytes as they are,
+     * the default implementation decodes them into a String.
+     *
+     * @param data the UTF-8 encoded data to send (in JSON format)
+     * @param headers headers to pass to the request
+     * @param uri uri to make the http request to
+     * @param <T> return type the response json will be parsed into
+     * @param parser parser to use for the response json
+     * @return CompletionStage holding object of the given return type T
+     */
+    default <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        return post(uri, headers, new String(data, StandardCharsets.UTF_8), parser);
+    }
+
     /**
      * Send a POST request and parse the result into object of given type.
      *
@@ -59,4 +77,28 @@ public interface AsyncHttpClient {
     default <T> CompletionStage<T> post(URI uri, String data, JsonParser<T> parser) {
         return post(uri, Collections.emptyMap(), data, parser);
     }
+
+    /**
+     * Returns a client sending requests of the given priority over the same connections.
+     * Clients not distinguishing priorities return themselves.
+     *
+     * @param priority the priority of the requests
+     * @return the client for the given priority
+     */
+    default AsyncHttpClient withPriority(Priority priority) {
+        return this;
+    }
+
+    /**
+     * Returns a client sending requests that have to be answered by the given deadline:
+     * requests waiting for a connection, a connection being established or a response are
+     * given up once it passes. Clients not supporting deadlines return themselves, their
+     * requests are only aborted when the returned stages are cancelled.
+     *
+     * @param deadline the deadline of the requests
+     * @return the client for the given deadline
+     */
+    default AsyncHttpClient withDeadline(Deadline deadline) {
+        return this;
+    }
 }
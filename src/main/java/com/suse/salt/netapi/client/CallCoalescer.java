@@ -0,0 +1,134 @@
+package com.suse.salt.netapi.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets identical calls made while one of them is in flight share its request and its
+ * parsed response, so that salt does not publish the same job to the same minions
+ * several times. Callers joining a call in flight receive the very same response object
+ * and should therefore not modify it.
+ * <p>
+ * Calls are only coalesced while their request is in flight, completed responses are not
+ * kept. The shared request is cancelled once every caller has cancelled.
+ */
+class CallCoalescer {
+
+    // Requests in flight, keyed by call. Guarded by this.
+    private final Map<Object, Flight<?>> flights = new HashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * A request and the number of callers waiting for its response.
+     *
+     * @param <T> the type of the response
+     */
+    private static class Flight<T> {
+        private final CompletableFuture<T> shared = new CompletableFuture<>();
+        private CompletableFuture<T> response;
+        private int waiters;
+    }
+
+    /**
+     * Sends a request unless an identical one is in flight.
+     *
+     * @param <T> the type of the response
+     * @param key identifies the call, equal keys must denote calls with equal responses
+     * @param request sends the request
+     * @return CompletionStage holding the response
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletionStage<T> call(Object key, Supplier<CompletionStage<T>> request) {
+        Flight<T> flight;
+        boolean leader = false;
+        synchronized (this) {
+            flight = (Flight<T>) flights.get(key);
+            if (flight == null) {
+                flight = new Flight<>();
+                flights.put(key, flight);
+                leader = true;
+            }
+            flight.waiters++;
+        }
+        if (leader) {
+            send(key, flight, request);
+        } else {
+            coalesced.increment();
+        }
+
+        Flight<T> joined = flight;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        joined.shared.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                leave(key, joined);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the number of calls that joined a request in flight
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private <T> void send(Object key, Flight<T> flight, Supplier<CompletionStage<T>> request) {
+        CompletableFuture<T> response;
+        try {
+            response = request.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            remove(key, flight);
+            flight.shared.completeExceptionally(e);
+            return;
+        }
+        synchronized (this) {
+            flight.response = response;
+            if (flight.waiters == 0) {
+                // Every caller cancelled before the request was sent
+                response.cancel(true);
+            }
+        }
+        response.whenComplete((value, e) -> {
+            remove(key, flight);
+            if (e != null) {
+                flight.shared.completeExceptionally(e);
+            } else {
+                flight.shared.complete(value);
+            }
+        });
+    }
+
+    private void leave(Object key, Flight<?> flight) {
+        CompletableFuture<?> cancelled = null;
+        synchronized (this) {
+            if (--flight.waiters == 0) {
+                if (flights.get(key) == flight) {
+                    flights.remove(key);
+                }
+                cancelled = flight.response;
+            }
+        }
+        if (cancelled != null) {
+            cancelled.cancel(true);
+        }
+    }
+
+    private synchronized void remove(Object key, Flight<?> flight) {
+        if (flights.get(key) == flight) {
+            flights.remove(key);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.suse.salt.netapi.client;
+
+import com.google.gson.reflect.TypeToken;
+import com.suse.salt.netapi.calls.Call;
+import com.suse.salt.netapi.calls.Client;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.results.Return;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects calls made within a short time window and sends them to salt-api as a single
+ * request carrying one lowstate chunk per call. Salt returns one entry per chunk which is
+ * then parsed with the type of the respective call and handed back to its caller.
+ * <p>
+ * A batch is sent as soon as it reaches the maximum size or when the window opened by its
+ * first call has passed, whichever comes first. Only calls using the same credentials are
+ * sent together. Calls whose response does not consist of exactly one return entry (like
+ * local_batch or salt-ssh) are never pipelined.
+ */
+public class CallPipeline {
+
+    private static final Set<Client> PIPELINED_CLIENTS = EnumSet.of(
+            Client.LOCAL, Client.LOCAL_ASYNC,
+            Client.RUNNER, Client.RUNNER_ASYNC,
+            Client.WHEEL, Client.WHEEL_ASYNC);
+
+    private final SaltClient client;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // Batches not yet sent, keyed by credentials. Guarded by this.
+    private final Map<List<Object>, Batch> pending = new HashMap<>();
+
+    /**
+     * A single call waiting to be sent.
+     */
+    private static class Entry {
+        private final Map<String, Object> lowstate;
+        private final Type chunkType;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Entry(Map<String, Object> lowstate, Type chunkType) {
+            this.lowstate = lowstate;
+            this.chunkType = chunkType;
+        }
+    }
+
+    /**
+     * Calls collected for the same credentials.
+     */
+    private static class Batch {
+        private final AuthMethod auth;
+        private final List<Entry> entries = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+
+        Batch(AuthMethod auth) {
+            this.auth = auth;
+        }
+    }
+
+    /**
+     * Creates a new pipeline sending its batches through the given client.
+     *
+     * @param client the client used to send batches, must not be pipelined itself
+     * @param maxBatchSize maximum number of calls sent in one request
+     * @param maxDelayMillis maximum time in milliseconds a call waits for others to join
+     * @param scheduler scheduler used to send batches once their window has passed
+     */
+    public CallPipeline(SaltClient client, int maxBatchSize, long maxDelayMillis,
+            ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must not be negative");
+        }
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Creates a pipeline with the same settings as this one sending its batches through
+     * the given client.
+     *
+     * @param other the client used to send batches
+     * @return the new pipeline
+     */
+    CallPipeline withClient(SaltClient other) {
+        return new CallPipeline(other, maxBatchSize, maxDelayMillis, scheduler);
+    }
+
+    /**
+     * Checks if a call can be pipelined. This is the case if the client type returns a
+     * single entry per chunk and the response type has the form Return&lt;List&lt;T&gt;&gt;.
+     *
+     * @param client the client type of the call
+     * @param custom custom lowstate arguments of the call
+     * @param type the response type of the call
+     * @return true if the call can be sent as part of a batch
+     */
+    public static boolean supports(Client client, Map<String, Object> custom, TypeToken<?> type) {
+        return PIPELINED_CLIENTS.contains(client) && !custom.containsKey("batch") &&
+                chunkType(type).isPresent();
+    }
+
+    /**
+     * Adds a call to the pipeline. The arguments are the same as for
+     * {@link SaltClient#call(Call, Client, Optional, Map, TypeToken, AuthMethod)}.
+     *
+     * @param <R> the response type of the call, must be of the form Return&lt;List&lt;T&gt;&gt;
+     * @param call the call to send
+     * @param clientType the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param type the response type of the call
+     * @param auth authentication credentials to use
+     * @return CompletionStage holding the response as if the call was sent on its own
+     */
+    public <R> CompletionStage<R> call(Call<?> call, Client clientType,
+            Optional<Target<?>> target, Map<String, Object> custom, TypeToken<R> type,
+            AuthMethod auth) {
+        Type chunkType = chunkType(type).orElseThrow(() -> new IllegalArgumentException(
+                "Response type can not be pipelined: " + type));
+        Entry entry = new Entry(client.lowstate(call, clientType, target, custom, auth),
+                chunkType);
+        List<Object> key = authKey(auth);
+
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = pending.computeIfAbsent(key, k -> new Batch(auth));
+            batch.entries.add(entry);
+            if (batch.entries.size() >= maxBatchSize) {
+                pending.remove(key);
+                if (batch.timer != null) {
+                    batch.timer.cancel(false);
+                }
+                full = batch;
+            } else if (batch.entries.size() == 1) {
+                batch.timer = scheduler.schedule(() -> flush(key, batch),
+                        maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletionStage<R> result = entry.future
+                .thenApply(chunk -> (R) new Return<>(Collections.singletonList(chunk)));
+        return result;
+    }
+
+    /**
+     * Sends all pending batches right away.
+     */
+    public void flush() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        batches.forEach(batch -> {
+            if (batch.timer != null) {
+                batch.timer.cancel(false);
+            }
+            send(batch);
+        });
+    }
+
+    private void flush(List<Object> key, Batch batch) {
+        synchronized (this) {
+            if (pending.get(key) != batch) {
+                return;
+            }
+            pending.remove(key);
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        List<Map<String, Object>> lowstates = new ArrayList<>(batch.entries.size());
+        List<Type> types = new ArrayList<>(batch.entries.size());
+        batch.entries.forEach(entry -> {
+            lowstates.add(entry.lowstate);
+            types.add(entry.chunkType);
+        });
+
+        client.callChunks(lowstates, types, batch.auth).whenComplete((chunks, error) -> {
+            for (int i = 0; i < batch.entries.size(); i++) {
+                CompletableFuture<Object> future = batch.entries.get(i).future;
+                if (error != null) {
+                    future.completeExceptionally(error instanceof CompletionException &&
+                            error.getCause() != null ? error.getCause() : error);
+                } else {
+                    future.complete(chunks.get(i));
+                }
+            }
+        });
+    }
+
+    private static List<Object> authKey(AuthMethod auth) {
+        return auth.getInternal().fold(
+                token -> Arrays.asList("token", token.getToken()),
+                pass -> Arrays.asList("password", pass.getUsername(), pass.getPassword(),
+                        pass.getModule()));
+    }
+
+    private static Optional<Type> chunkType(TypeToken<?> type) {
+        if (type.getRawType() != Return.class ||
+                !(type.getType() instanceof ParameterizedType)) {
+            return Optional.empty();
+        }
+        Type wrapped = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
+        if (!(wrapped instanceof ParameterizedType) ||
+                ((ParameterizedType) wrapped).getRawType() != List.class) {
+            return Optional.empty();
+        }
+        return Optional.of(((ParameterizedType) wrapped).getActualTypeArguments()[0]);
+    }
+}
@@ -0,0 +1,94 @@
+package com.suse.salt.netapi.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Point in time by which a call needs to be answered, given as the time budget of the
+ * whole call. The time left is handed down to every layer when it starts waiting, see
+ * {@link SaltClient#call(com.suse.salt.netapi.calls.Call,
+ * com.suse.salt.netapi.calls.Client, java.util.Optional, Map,
+ * com.google.gson.reflect.TypeToken, com.suse.salt.netapi.datatypes.AuthMethod, Deadline)}.
+ */
+public final class Deadline {
+
+    /** Least time left for the response to be transferred and parsed */
+    private static final long MIN_MARGIN_MILLIS = 500;
+
+    /** Most time left for the response to be transferred and parsed */
+    private static final long MAX_MARGIN_MILLIS = 5000;
+
+    /** Longest time Salt waits for minions to answer whether they still run the job */
+    private static final long MAX_GATHER_JOB_TIMEOUT = 10;
+
+    private final long expiresAtNanos;
+    private final LongSupplier nanoClock;
+
+    private Deadline(long expiresAtNanos, LongSupplier nanoClock) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param millis the time budget in milliseconds
+     * @return the deadline
+     */
+    public static Deadline after(long millis) {
+        return after(millis, System::nanoTime);
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     *
+     * @param millis the time budget in milliseconds
+     * @param nanoClock the clock to measure the time with
+     * @return the deadline
+     */
+    static Deadline after(long millis, LongSupplier nanoClock) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Expected value not less than 0");
+        }
+        return new Deadline(nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(millis),
+                nanoClock);
+    }
+
+    /**
+     * @return the time left in milliseconds, 0 once the deadline has passed
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - nanoClock.getAsLong()));
+    }
+
+    /**
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return expiresAtNanos - nanoClock.getAsLong() <= 0;
+    }
+
+    /**
+     * Returns the timeouts in seconds to pass to Salt for the time left, for calls waiting
+     * for minions to return. Salt waits the "timeout" for the minions to return, and then
+     * asks the minions not done yet whether they still run the job, waiting the
+     * "gather_job_timeout" for them to answer. A tenth of the time left, but at least
+     * 0.5 and at most 5 seconds, is kept for the response to be transferred and parsed.
+     * Salt is given one second each when there is less time left.
+     *
+     * @return the "timeout" and "gather_job_timeout" lowstate arguments
+     */
+    public Map<String, Object> saltTimeouts() {
+        long remaining = remainingMillis();
+        long margin = Math.min(Math.max(remaining / 10, MIN_MARGIN_MILLIS), MAX_MARGIN_MILLIS);
+        long salt = TimeUnit.MILLISECONDS.toSeconds(remaining - margin);
+        long gatherJobTimeout = Math.max(1, Math.min(salt / 4, MAX_GATHER_JOB_TIMEOUT));
+        long timeout = Math.max(1, salt - gatherJobTimeout);
+        Map<String, Object> timeouts = new HashMap<>();
+        timeouts.put("timeout", (int) Math.min(timeout, Integer.MAX_VALUE));
+        timeouts.put("gather_job_timeout", (int) gatherJobTimeout);
+        return timeouts;
+    }
+}
@@ -0,0 +1,316 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.exception.ParsingException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Set of salt-api instances serving the same master(s) that requests are spread across.
+ * <p>
+ * Every request goes to the better of two endpoints chosen at random (power of two
+ * choices). Endpoints are compared by the number of requests in flight times a moving
+ * average of their latency that decays exponentially with time and rises immediately on a
+ * slow response, so a stalling instance stops getting traffic right away and recovers
+ * once it answers quickly again.
+ * <p>
+ * Endpoints failing with connection errors or timeouts are ejected for a while that grows
+ * with every consecutive failure. When all endpoints are ejected the one due to come back
+ * first is used.
+ */
+public class EndpointSet {
+
+    private final Endpoint[] endpoints;
+    private final long decayNanos;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final LongSupplier nanoClock;
+
+    private EndpointSet(Builder builder, List<URI> uris, LongSupplier nanoClock) {
+        if (uris.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one URI");
+        }
+        this.endpoints = new Endpoint[uris.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            // Like SaltClient, only the root of the given URIs is used
+            endpoints[i] = new Endpoint(uris.get(i).resolve("/"));
+        }
+        this.decayNanos = builder.decayNanos;
+        this.baseEjectionNanos = builder.baseEjectionNanos;
+        this.maxEjectionNanos = builder.maxEjectionNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Creates an endpoint set with the default settings.
+     *
+     * @param uris the salt-api URIs
+     * @return the endpoint set
+     */
+    public static EndpointSet of(URI... uris) {
+        return custom().build(Arrays.asList(uris));
+    }
+
+    /**
+     * Returns a builder for an endpoint set.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Sends a request to the endpoint selected for it and tracks the outcome. Cancelling
+     * the returned stage cancels the request.
+     *
+     * @param <T> the type of the response
+     * @param request sends the request given the root URI of an endpoint
+     * @return CompletionStage holding the response
+     */
+    public <T> CompletionStage<T> send(Function<URI, CompletionStage<T>> request) {
+        Endpoint endpoint = select();
+        endpoint.outstanding.incrementAndGet();
+        long start = nanoClock.getAsLong();
+        CompletableFuture<T> response;
+        try {
+            response = request.apply(endpoint.uri).toCompletableFuture();
+        } catch (RuntimeException e) {
+            endpoint.outstanding.decrementAndGet();
+            throw e;
+        }
+        response.whenComplete((result, e) -> {
+            endpoint.outstanding.decrementAndGet();
+            long now = nanoClock.getAsLong();
+            if (e == null) {
+                endpoint.onSuccess(now - start, now);
+            } else if (isConnectionFailure(e)) {
+                endpoint.onFailure(now);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Selects an endpoint for a request that is not tracked, like an event stream.
+     *
+     * @return the root URI of the selected endpoint
+     */
+    public URI selectUri() {
+        return select().uri;
+    }
+
+    /**
+     * @return the endpoints of this set
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(Arrays.asList(endpoints));
+    }
+
+    private Endpoint select() {
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        long now = nanoClock.getAsLong();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(endpoints.length);
+        int j = random.nextInt(endpoints.length - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = endpoints[i];
+        Endpoint b = endpoints[j];
+        boolean aEjected = a.isEjected(now);
+        boolean bEjected = b.isEjected(now);
+        if (aEjected && bEjected) {
+            return fallback(now);
+        } else if (aEjected || bEjected) {
+            return aEjected ? b : a;
+        }
+        return a.cost(now) <= b.cost(now) ? a : b;
+    }
+
+    /**
+     * Picks the least loaded endpoint in service, or the one due to come back first if
+     * there is none.
+     */
+    private Endpoint fallback(long now) {
+        Endpoint best = null;
+        Endpoint soonest = endpoints[0];
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now)) {
+                if (best == null || endpoint.cost(now) < best.cost(now)) {
+                    best = endpoint;
+                }
+            } else if (endpoint.ejectedUntil - soonest.ejectedUntil < 0) {
+                soonest = endpoint;
+            }
+        }
+        return best != null ? best : soonest;
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ?
+                e.getCause() : e;
+        return cause instanceof IOException && !(cause instanceof ParsingException) ||
+                cause instanceof TimeoutException;
+    }
+
+    /**
+     * A single salt-api instance and the statistics gathered about it.
+     */
+    public final class Endpoint {
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // Guarded by this
+        private double latency;
+        private long lastSample;
+        private int failures;
+
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        private Endpoint(URI uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * @return the root URI of this endpoint
+         */
+        public URI getUri() {
+            return uri;
+        }
+
+        /**
+         * @return the number of requests in flight
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return the moving average of the latency in milliseconds
+         */
+        public synchronized double getLatencyMillis() {
+            return latency / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @return true if this endpoint currently gets no requests
+         */
+        public boolean isEjected() {
+            return isEjected(nanoClock.getAsLong());
+        }
+
+        private boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        private synchronized double cost(long now) {
+            // Endpoints without samples are tried as if they were idle and fast
+            return (decayed(now) + 1) * (outstanding.get() + 1);
+        }
+
+        private double decayed(long now) {
+            return latency * Math.exp(-(double) (now - lastSample) / decayNanos);
+        }
+
+        private synchronized void onSuccess(long rtt, long now) {
+            if (rtt > latency) {
+                latency = rtt;
+            } else {
+                double weight = Math.exp(-(double) (now - lastSample) / decayNanos);
+                latency = latency * weight + rtt * (1 - weight);
+            }
+            lastSample = now;
+            failures = 0;
+            ejected = false;
+        }
+
+        private synchronized void onFailure(long now) {
+            failures++;
+            long duration = Math.min(maxEjectionNanos,
+                    baseEjectionNanos << Math.min(failures - 1, 30));
+            ejectedUntil = now + duration;
+            ejected = true;
+        }
+
+        @Override
+        public String toString() {
+            return uri.toString();
+        }
+    }
+
+    /**
+     * Helper class for building an {@link EndpointSet}.
+     */
+    public static class Builder {
+        private long decayNanos = TimeUnit.SECONDS.toNanos(10);
+        private long baseEjectionNanos = TimeUnit.SECONDS.toNanos(1);
+        private long maxEjectionNanos = TimeUnit.SECONDS.toNanos(60);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the time after which a latency sample has decayed to 1/e of its weight in
+         * the moving average, defaults to 10 seconds.
+         *
+         * @param millis the decay time in milliseconds
+         * @return this builder
+         */
+        public Builder withDecay(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.decayNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return this;
+        }
+
+        /**
+         * Sets for how long a failing endpoint is ejected: the n-th consecutive failure
+         * ejects it for the base times 2^(n-1), capped at the given maximum. Defaults to 1
+         * and 60 seconds.
+         *
+         * @param baseMillis the ejection time after the first failure in milliseconds
+         * @param maxMillis the longest ejection time in milliseconds
+         * @return this builder
+         */
+        public Builder withEjection(long baseMillis, long maxMillis) {
+            if (baseMillis < 0 || maxMillis < baseMillis) {
+                throw new IllegalArgumentException("Expected 0 <= base <= max");
+            }
+            this.baseEjectionNanos = TimeUnit.MILLISECONDS.toNanos(baseMillis);
+            this.maxEjectionNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+            return this;
+        }
+
+        /**
+         * Creates an endpoint set for the given salt-api URIs.
+         *
+         * @param uris the salt-api URIs
+         * @return the endpoint set
+         */
+        public EndpointSet build(List<URI> uris) {
+            return build(uris, System::nanoTime);
+        }
+
+        EndpointSet build(List<URI> uris, LongSupplier nanoClock) {
+            return new EndpointSet(this, new ArrayList<>(uris), nanoClock);
+        }
+    }
+}
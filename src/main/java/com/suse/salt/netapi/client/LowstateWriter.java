@@ -0,0 +1,281 @@
+package com.suse.salt.netapi.client;
+
+import com.google.gson.stream.JsonWriter;
+import com.suse.salt.netapi.calls.Call;
+import com.suse.salt.netapi.calls.Client;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.parser.JsonParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Serializes lowstate chunks into UTF-8 encoded request bodies.
+ * <p>
+ * The fields of a call are written one after the other instead of being merged into a
+ * map first, and the JSON is encoded to UTF-8 into a buffer kept per thread instead of
+ * going through a String. The only copy made is the exactly sized body that is returned. Where
+ * several sources define the same key the precedence is the one of
+ * {@link SaltClient#lowstate}: authentication, target, client, call payload and custom
+ * arguments, with later sources overriding earlier ones.
+ */
+class LowstateWriter {
+
+    /** Buffers growing beyond this size are not kept for the next request */
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private static final int INITIAL_SIZE = 1024;
+
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    private LowstateWriter() {
+    }
+
+    /**
+     * Functional interface for writing JSON.
+     */
+    @FunctionalInterface
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * Writes a request body holding the lowstate chunk of a single call.
+     *
+     * @param call the call
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param auth authentication credentials to use
+     * @return the request body
+     */
+    static byte[] write(Call<?> call, Client client, Optional<Target<?>> target,
+            Map<String, Object> custom, AuthMethod auth) {
+        return write(json -> {
+            json.beginArray();
+            writeLowstate(json, call, client, target, custom, auth);
+            json.endArray();
+        });
+    }
+
+    /**
+     * Writes a request body holding the given lowstate chunks.
+     *
+     * @param lowstates the lowstate chunks
+     * @return the request body
+     */
+    static byte[] write(List<Map<String, Object>> lowstates) {
+        return write(json -> {
+            json.beginArray();
+            for (Map<String, Object> lowstate : lowstates) {
+                writeJson(json, lowstate);
+            }
+            json.endArray();
+        });
+    }
+
+    private static byte[] write(JsonBody body) {
+        Buffer buffer = BUFFERS.get();
+        try {
+            JsonWriter json = new JsonWriter(buffer);
+            json.setSerializeNulls(false);
+            body.write(json);
+            json.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.recycle();
+        }
+    }
+
+    private static void writeLowstate(JsonWriter json, Call<?> call, Client client,
+            Optional<Target<?>> target, Map<String, Object> custom, AuthMethod auth)
+            throws IOException {
+        Map<String, Object> payload = call.getPayload();
+        Map<String, Object> props = target.isPresent() ?
+                target.get().getProps() : Collections.emptyMap();
+
+        json.beginObject();
+        Optional<PasswordAuth> password = auth.getInternal().right();
+        if (password.isPresent()) {
+            PasswordAuth pass = password.get();
+            writeUnlessOverridden(json, "username", pass.getUsername(), props, payload,
+                    custom);
+            writeUnlessOverridden(json, "password", pass.getPassword(), props, payload,
+                    custom);
+            writeUnlessOverridden(json, "eauth", pass.getModule().getValue(), props,
+                    payload, custom);
+        }
+        for (Map.Entry<String, Object> entry : props.entrySet()) {
+            if (!"client".equals(entry.getKey())) {
+                writeUnlessOverridden(json, entry.getKey(), entry.getValue(),
+                        Collections.emptyMap(), payload, custom);
+            }
+        }
+        writeUnlessOverridden(json, "client", client.getValue(), Collections.emptyMap(),
+                payload, custom);
+        for (Map.Entry<String, Object> entry : payload.entrySet()) {
+            writeUnlessOverridden(json, entry.getKey(), entry.getValue(),
+                    Collections.emptyMap(), Collections.emptyMap(), custom);
+        }
+        for (Map.Entry<String, Object> entry : custom.entrySet()) {
+            writeValue(json, entry.getKey(), entry.getValue());
+        }
+        json.endObject();
+    }
+
+    private static void writeUnlessOverridden(JsonWriter json, String name, Object value,
+            Map<String, Object> props, Map<String, Object> payload,
+            Map<String, Object> custom) throws IOException {
+        if (!props.containsKey(name) && !payload.containsKey(name) &&
+                !custom.containsKey(name)) {
+            writeValue(json, name, value);
+        }
+    }
+
+    private static void writeValue(JsonWriter json, String name, Object value)
+            throws IOException {
+        json.name(name);
+        writeJson(json, value);
+    }
+
+    /**
+     * Writes the types making up most lowstates directly and leaves everything else to
+     * the codec, as the adapter lookup of Gson allocates on every invocation.
+     */
+    private static void writeJson(JsonWriter json, Object value) throws IOException {
+        if (value == null) {
+            // Map entries are dropped together with their name, as Gson does
+            json.nullValue();
+        } else if (value instanceof String) {
+            json.value((String) value);
+        } else if (value instanceof Boolean) {
+            json.value((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            json.value(((Number) value).longValue());
+        } else if (value instanceof List) {
+            json.beginArray();
+            for (Object element : (List<?>) value) {
+                writeJson(json, element);
+            }
+            json.endArray();
+        } else if (value instanceof Map) {
+            json.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.name(String.valueOf(entry.getKey()));
+                writeJson(json, entry.getValue());
+            }
+            json.endObject();
+        } else {
+            JsonParser.CODEC.write(value, value.getClass(), json);
+        }
+    }
+
+    /**
+     * UTF-8 encoding writer into a byte buffer that is reused for the requests of one
+     * thread. Unlike an OutputStreamWriter it does not allocate on every write.
+     */
+    private static class Buffer extends Writer {
+
+        private byte[] buf = new byte[INITIAL_SIZE];
+        private int count;
+        private char highSurrogate;
+
+        @Override
+        public void write(int c) {
+            encode((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) {
+            ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                encode(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(len);
+            for (int i = off; i < off + len; i++) {
+                encode(str.charAt(i));
+            }
+        }
+
+        private void encode(char c) {
+            if (c < 0x80 && highSurrogate == 0) {
+                if (count == buf.length) {
+                    ensureCapacity(1);
+                }
+                buf[count++] = (byte) c;
+                return;
+            }
+            ensureCapacity(4);
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    buf[count++] = (byte) (0xf0 | (codePoint >> 18));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buf[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                    return;
+                }
+                // Unpaired surrogates are replaced like the JDK encoders do
+                buf[count++] = '?';
+                encode(c);
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xc0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xe0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        private void ensureCapacity(int additional) {
+            if (buf.length - count < additional) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + additional));
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                encode('?');
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        void recycle() {
+            count = 0;
+            highSurrogate = 0;
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[INITIAL_SIZE];
+            }
+        }
+    }
+}
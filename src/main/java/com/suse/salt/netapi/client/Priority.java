@@ -0,0 +1,16 @@
+package com.suse.salt.netapi.client;
+
+/**
+ * Priority classes of requests to salt-api, see {@link SaltClient#withPriority(Priority)}.
+ */
+public enum Priority {
+
+    /** Interactive requests somebody is waiting for */
+    HIGH,
+
+    /** Requests without a particular priority */
+    NORMAL,
+
+    /** Bulk requests like fleet-wide sweeps that may wait for others */
+    LOW
+}
@@ -0,0 +1,382 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.datatypes.target.TargetType;
+import com.suse.salt.netapi.exception.RateLimitException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Limits the calls sent to salt-api per eauth principal, or per tenant given by the
+ * caller. Every principal has two token buckets, one for the number of calls and one for
+ * the number of minions they target. Calls exceeding either budget are not sent, their
+ * stage completes exceptionally with a {@link RateLimitException} telling when a call of
+ * the same size would be admitted.
+ * <p>
+ * Principals are named by the eauth module and the username of the credentials, e.g.
+ * "pam:admin", or of the token if it carries them. Tokens without a username share the
+ * principal "token", give them a tenant to limit them apart. Each bucket is a single
+ * atomic timestamp, the theoretical arrival time of the generic cell rate algorithm, so
+ * that admitting a call takes no locks. Quotas of principals and tenants sending no calls
+ * for a while are dropped once their buckets are full again.
+ * <p>
+ * Passed to {@link SaltClient#withRateLimiter(RateLimiter)}, every request sent for a call
+ * is admitted first, including retries but not calls served by coalescing or caching.
+ */
+public class RateLimiter {
+
+    /** Principal of all tokens that do not name their user */
+    private static final String TOKEN_PRINCIPAL = "token";
+
+    private final Optional<Rate> callRate;
+    private final Optional<Rate> fanOutRate;
+    private final ToIntFunction<Target<?>> targetSize;
+    private final LongSupplier nanoClock;
+    private final Function<AuthMethod, String> keyFunction;
+    private final long idleNanos;
+    private final ConcurrentMap<String, Quota> quotas;
+    private final AtomicLong nextSweep;
+    private final LongAdder expiredAdmitted;
+    private final LongAdder expiredThrottled;
+
+    private RateLimiter(Builder builder, LongSupplier nanoClock) {
+        this.callRate = builder.callRate;
+        this.fanOutRate = builder.fanOutRate;
+        this.targetSize = builder.targetSize;
+        this.nanoClock = nanoClock;
+        this.keyFunction = RateLimiter::principal;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(builder.idleExpiryMillis);
+        this.quotas = new ConcurrentHashMap<>();
+        this.nextSweep = new AtomicLong(nanoClock.getAsLong() + idleNanos);
+        this.expiredAdmitted = new LongAdder();
+        this.expiredThrottled = new LongAdder();
+    }
+
+    private RateLimiter(RateLimiter parent, String tenant) {
+        this.callRate = parent.callRate;
+        this.fanOutRate = parent.fanOutRate;
+        this.targetSize = parent.targetSize;
+        this.nanoClock = parent.nanoClock;
+        this.keyFunction = auth -> tenant;
+        this.idleNanos = parent.idleNanos;
+        this.quotas = parent.quotas;
+        this.nextSweep = parent.nextSweep;
+        this.expiredAdmitted = parent.expiredAdmitted;
+        this.expiredThrottled = parent.expiredThrottled;
+    }
+
+    /**
+     * Returns a builder for a rate limiter.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a rate limiter sharing the budgets and counters of this one that charges all
+     * calls to the given tenant instead of their principal.
+     *
+     * @param tenant the key to charge calls to
+     * @return a rate limiter for the tenant
+     */
+    public RateLimiter forTenant(String tenant) {
+        return new RateLimiter(this, tenant);
+    }
+
+    /**
+     * Sends a request if the budgets of its principal allow it.
+     *
+     * @param <T> the type of the response
+     * @param auth the credentials of the call
+     * @param target the target of the call, calls without one target no minions
+     * @param request sends the request
+     * @return CompletionStage holding the response, or failing with a
+     * {@link RateLimitException} if the call was throttled
+     */
+    public <T> CompletionStage<T> execute(AuthMethod auth, Optional<Target<?>> target,
+            Supplier<CompletionStage<T>> request) {
+        String key = keyFunction.apply(auth);
+        long now = nanoClock.getAsLong();
+        Quota quota = quota(key, now);
+        int minions = target.map(targetSize::applyAsInt).orElse(0);
+        long waitNanos = quota.acquire(minions, now);
+        if (waitNanos > 0) {
+            quota.throttled.increment();
+            long retryAfterMillis = TimeUnit.NANOSECONDS.toMillis(
+                    waitNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+            CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(new RateLimitException(key, retryAfterMillis));
+            return result;
+        }
+        quota.admitted.increment();
+        return request.get();
+    }
+
+    /**
+     * @return the number of calls admitted for all principals and tenants
+     */
+    public long getAdmitted() {
+        return expiredAdmitted.sum() +
+                quotas.values().stream().mapToLong(q -> q.admitted.sum()).sum();
+    }
+
+    /**
+     * @return the number of calls throttled for all principals and tenants
+     */
+    public long getThrottled() {
+        return expiredThrottled.sum() +
+                quotas.values().stream().mapToLong(q -> q.throttled.sum()).sum();
+    }
+
+    /**
+     * Returns the number of calls throttled for a principal or tenant since its quota was
+     * last dropped for being idle.
+     *
+     * @param key the principal, e.g. "pam:admin", or the tenant
+     * @return the number of throttled calls
+     */
+    public long getThrottled(String key) {
+        Quota quota = quotas.get(key);
+        return quota == null ? 0 : quota.throttled.sum();
+    }
+
+    private Quota quota(String key, long now) {
+        // Looking up first avoids locking the bin of an existing key
+        Quota quota = quotas.get(key);
+        if (quota == null) {
+            sweep(now);
+            quota = quotas.computeIfAbsent(key, k -> new Quota(now));
+        }
+        quota.lastUsed = now;
+        return quota;
+    }
+
+    /**
+     * Drops the quotas that have been idle for the expiry, at most once per expiry, so
+     * that keys seen once do not pile up.
+     */
+    private void sweep(long now) {
+        long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + idleNanos)) {
+            return;
+        }
+        quotas.forEach((key, quota) -> {
+            if (quota.isIdle(now) && quotas.remove(key, quota)) {
+                expiredAdmitted.add(quota.admitted.sum());
+                expiredThrottled.add(quota.throttled.sum());
+            }
+        });
+    }
+
+    private static String principal(AuthMethod auth) {
+        // The session token itself is a secret and changes with every login
+        return auth.getInternal().fold(
+                token -> token.getUser() != null ?
+                        token.getEauth() + ":" + token.getUser() : TOKEN_PRINCIPAL,
+                pass -> pass.getModule().getValue() + ":" + pass.getUsername());
+    }
+
+    private static int defaultTargetSize(Target<?> target) {
+        return target.getType() == TargetType.LIST ?
+                ((List<?>) target.getTarget()).size() : 1;
+    }
+
+    /**
+     * Budgets and counters of a principal or tenant.
+     */
+    private final class Quota {
+        private final Optional<Bucket> calls;
+        private final Optional<Bucket> fanOut;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private volatile long lastUsed;
+
+        Quota(long now) {
+            this.calls = callRate.map(rate -> new Bucket(rate, now));
+            this.fanOut = fanOutRate.map(rate -> new Bucket(rate, now));
+            this.lastUsed = now;
+        }
+
+        /**
+         * @return true if no call was sent for the expiry and the buckets are full, so
+         * that a new quota would admit the same calls
+         */
+        boolean isIdle(long now) {
+            return now - lastUsed >= idleNanos &&
+                    calls.map(bucket -> bucket.isFull(now)).orElse(true) &&
+                    fanOut.map(bucket -> bucket.isFull(now)).orElse(true);
+        }
+
+        /**
+         * Takes one call and the given number of minions from the buckets.
+         *
+         * @return 0 if admitted, otherwise the time in nanoseconds to wait
+         */
+        long acquire(int minions, long now) {
+            long waitNanos = calls.map(bucket -> bucket.acquire(1, now)).orElse(0L);
+            if (waitNanos > 0 || minions == 0 || !fanOut.isPresent()) {
+                return waitNanos;
+            }
+            waitNanos = fanOut.get().acquire(minions, now);
+            if (waitNanos > 0) {
+                // Hand back the call, it is not sent after all
+                calls.ifPresent(bucket -> bucket.release(1));
+            }
+            return waitNanos;
+        }
+    }
+
+    /**
+     * A refill rate and the number of tokens that can be taken at once.
+     */
+    private static class Rate {
+        private final long intervalNanos;
+        private final int burst;
+
+        Rate(double perSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * Token bucket holding the time at which it is full again.
+     */
+    private static class Bucket {
+        private final Rate rate;
+        private final AtomicLong fullAt;
+
+        Bucket(Rate rate, long now) {
+            this.rate = rate;
+            this.fullAt = new AtomicLong(now);
+        }
+
+        long acquire(int tokens, long now) {
+            // Larger requests drain a full bucket rather than never being admitted
+            long cost = Math.min(tokens, rate.burst) * rate.intervalNanos;
+            long tolerance = rate.burst * rate.intervalNanos;
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + cost;
+                long waitNanos = next - now - tolerance;
+                if (waitNanos > 0) {
+                    return waitNanos;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+
+        void release(int tokens) {
+            fullAt.addAndGet(-Math.min(tokens, rate.burst) * rate.intervalNanos);
+        }
+    }
+
+    /**
+     * Helper class for building a {@link RateLimiter}.
+     */
+    public static class Builder {
+        private Optional<Rate> callRate = Optional.empty();
+        private Optional<Rate> fanOutRate = Optional.empty();
+        private ToIntFunction<Target<?>> targetSize = RateLimiter::defaultTargetSize;
+        private long idleExpiryMillis = TimeUnit.MINUTES.toMillis(10);
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the number of calls per principal, unlimited by default.
+         *
+         * @param perSecond the sustained number of calls per second
+         * @param burst the number of calls that can be sent at once
+         * @return this builder
+         */
+        public Builder withCallRate(double perSecond, int burst) {
+            this.callRate = Optional.of(rate(perSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits the number of minions targeted per principal, unlimited by default. A
+         * call targeting more minions than the burst is admitted when the bucket is full.
+         *
+         * @param perSecond the sustained number of minions targeted per second
+         * @param burst the number of minions that can be targeted at once
+         * @return this builder
+         */
+        public Builder withFanOutRate(double perSecond, int burst) {
+            this.fanOutRate = Optional.of(rate(perSecond, burst));
+            return this;
+        }
+
+        /**
+         * Sets how many minions a target is charged for. Defaults to the number of minions
+         * of a list and 1 for any other target, whose size is not known up front.
+         *
+         * @param estimator estimates the number of minions of a target
+         * @return this builder
+         */
+        public Builder withTargetSize(ToIntFunction<Target<?>> estimator) {
+            this.targetSize = estimator;
+            return this;
+        }
+
+        /**
+         * Sets how long a principal or tenant may send no calls before its quota is
+         * dropped, 10 minutes by default. Its counters are kept in the totals only.
+         *
+         * @param millis the idle time in milliseconds
+         * @return this builder
+         */
+        public Builder withIdleExpiry(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Expected idle expiry greater than 0");
+            }
+            this.idleExpiryMillis = millis;
+            return this;
+        }
+
+        /**
+         * Creates a rate limiter.
+         *
+         * @return the rate limiter
+         */
+        public RateLimiter build() {
+            return build(System::nanoTime);
+        }
+
+        RateLimiter build(LongSupplier nanoClock) {
+            return new RateLimiter(this, nanoClock);
+        }
+
+        private static Rate rate(double perSecond, int burst) {
+            if (perSecond <= 0) {
+                throw new IllegalArgumentException("Expected rate greater than 0");
+            }
+            if (burst <= 0) {
+                throw new IllegalArgumentException("Expected burst greater than 0");
+            }
+            return new Rate(perSecond, burst);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.calls.LocalCall;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache for the results of local calls whose data rarely changes, like grains.items or
+ * test.versions_information. Results are kept per minion and per call for the time to live
+ * configured for the function, functions without a time to live are not cached.
+ * <p>
+ * Only calls targeting a {@link MinionList} are served from the cache: the results of
+ * cached minions are returned right away and the call is sent for the remaining minions
+ * only, if any. Errors are not cached. The least recently used results are evicted once
+ * the cache is full.
+ * <p>
+ * Results are cached per token, or per user and password, and callers must not modify
+ * them. Passwords are only kept as part of a SHA-256 digest of the credentials, so a
+ * caller giving a wrong password is not served results cached for the user.
+ */
+public class ResultCache {
+
+    private final Map<String, Long> ttlNanos;
+    private final int maxSize;
+    private final LongSupplier nanoClock;
+
+    // Guarded by this
+    private final LinkedHashMap<Key, CachedResult> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ResultCache(Builder builder, LongSupplier nanoClock) {
+        this.ttlNanos = new HashMap<>(builder.ttlNanos);
+        this.maxSize = builder.maxSize;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a builder for a result cache.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Checks if results of the given function are cached.
+     *
+     * @param function module and function name, e.g. "grains.items"
+     * @return true if the function has a time to live
+     */
+    public boolean caches(String function) {
+        return ttlNanos.containsKey(function);
+    }
+
+    /**
+     * Serves a call from the cache as far as possible and sends it for the minions
+     * without a cached result.
+     *
+     * @param <R> the return type of the called function
+     * @param call the call
+     * @param target the minions targeted by the call
+     * @param auth authentication credentials to use
+     * @param send sends the call to the given minions
+     * @return CompletionStage holding the results of all minions
+     */
+    public <R> CompletionStage<Map<String, Result<R>>> call(LocalCall<R> call,
+            MinionList target, AuthMethod auth,
+            Function<MinionList, CompletionStage<Map<String, Result<R>>>> send) {
+        String function = call.getModuleName() + "." + call.getFunctionName();
+        Long ttl = ttlNanos.get(function);
+        if (ttl == null) {
+            return send.apply(target);
+        }
+        List<Object> callKey = Arrays.asList(call.getPayload(), call.getReturnType(),
+                principal(auth));
+        int callHash = callKey.hashCode();
+
+        Map<String, Result<R>> results = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = nanoClock.getAsLong();
+        synchronized (this) {
+            for (String minion : target.getTarget()) {
+                Key key = new Key(minion, callKey, callHash);
+                CachedResult entry = entries.get(key);
+                if (entry != null && now - entry.expires < 0) {
+                    @SuppressWarnings("unchecked")
+                    Result<R> result = (Result<R>) entry.result;
+                    results.put(minion, result);
+                } else {
+                    if (entry != null) {
+                        entries.remove(key);
+                    }
+                    missing.add(minion);
+                }
+            }
+        }
+        hits.add(results.size());
+        misses.add(missing.size());
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(results);
+        }
+
+        CompletionStage<Map<String, Result<R>>> response = send.apply(new MinionList(missing));
+        return ClientUtils.propagateCancellation(response.thenApply(fresh -> {
+            long expires = nanoClock.getAsLong() + ttl;
+            synchronized (this) {
+                fresh.forEach((minion, result) -> {
+                    if (result.result().isPresent()) {
+                        entries.put(new Key(minion, callKey, callHash),
+                                new CachedResult(result, expires));
+                    }
+                });
+            }
+            results.putAll(fresh);
+            return results;
+        }), response);
+    }
+
+    /**
+     * Removes all results from the cache.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the results of the given minion from the cache.
+     *
+     * @param minion the minion id
+     */
+    public synchronized void invalidate(String minion) {
+        entries.keySet().removeIf(key -> key.minion.equals(minion));
+    }
+
+    /**
+     * @return the number of minion results served from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of minion results that had to be requested
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of results in the cache, including expired ones
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String principal(AuthMethod auth) {
+        return auth.getInternal().fold(
+                token -> "token:" + token.getToken(),
+                pass -> "user:" + digest(pass.getModule().getValue(), pass.getUsername(),
+                        pass.getPassword()));
+    }
+
+    private static String digest(String... values) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        for (String value : values) {
+            byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            // Prefix each value with its length so that values cannot run into each other
+            sha256.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            sha256.update(bytes);
+        }
+        return Base64.getEncoder().encodeToString(sha256.digest());
+    }
+
+    /**
+     * Identifies the result of a call on a minion.
+     */
+    private static class Key {
+        private final String minion;
+        private final Object call;
+        private final int hash;
+
+        Key(String minion, Object call, int callHash) {
+            this.minion = minion;
+            this.call = call;
+            this.hash = 31 * callHash + minion.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && minion.equals(other.minion) &&
+                    call.equals(other.call);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A cached result and when it expires.
+     */
+    private static class CachedResult {
+        private final Result<?> result;
+        private final long expires;
+
+        CachedResult(Result<?> result, long expires) {
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Helper class for building a {@link ResultCache}.
+     */
+    public static class Builder {
+        private final Map<String, Long> ttlNanos = new HashMap<>();
+        private int maxSize = 10000;
+
+        private Builder() {
+        }
+
+        /**
+         * Caches the results of a function for the given time.
+         *
+         * @param function module and function name, e.g. "grains.items"
+         * @param ttlMillis the time to live in milliseconds
+         * @return this builder
+         */
+        public Builder withTtl(String function, long ttlMillis) {
+            if (ttlMillis <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            ttlNanos.put(function, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+            return this;
+        }
+
+        /**
+         * Sets the number of minion results kept at most, defaults to 10000.
+         *
+         * @param value the maximum size
+         * @return this builder
+         */
+        public Builder withMaxSize(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.maxSize = value;
+            return this;
+        }
+
+        /**
+         * Creates the result cache.
+         *
+         * @return the result cache
+         */
+        public ResultCache build() {
+            return build(System::nanoTime);
+        }
+
+        ResultCache build(LongSupplier nanoClock) {
+            return new ResultCache(this, nanoClock);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.exception.HttpStatusException;
+import com.suse.salt.netapi.exception.ParsingException;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Policy for retrying and hedging requests that may be sent more than once, see
+ * {@link com.suse.salt.netapi.calls.Call#isIdempotent()}.
+ * <p>
+ * Requests failing with a connection error, a timeout or a 5xx response are retried after
+ * an exponential backoff with full jitter. With hedging enabled, a second request is sent
+ * when there is no response after the given percentile of the latencies seen for the same
+ * function. The first successful response is taken and the other request is cancelled.
+ * Cancelling the returned stage cancels all requests in flight.
+ */
+public class RetryPolicy {
+
+    /** Number of latencies kept per function */
+    private static final int WINDOW = 256;
+
+    /** Number of latencies needed before requests are hedged */
+    private static final int MIN_SAMPLES = 20;
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double hedgePercentile;
+    private final long minHedgeDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseBackoffMillis = builder.baseBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.minHedgeDelayMillis = builder.minHedgeDelayMillis;
+        this.scheduler = ClientUtils.sharedScheduler();
+    }
+
+    /**
+     * Returns a builder for a retry policy.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Sends a request following this policy.
+     *
+     * @param <T> the type of the response
+     * @param key the function latencies are tracked for, e.g. "jobs.lookup_jid"
+     * @param request sends the request every time it is invoked
+     * @return CompletionStage holding the first successful response
+     */
+    public <T> CompletionStage<T> execute(String key, Supplier<CompletionStage<T>> request) {
+        Execution<T> execution = new Execution<>(
+                latencies.computeIfAbsent(key, k -> new Latencies()), request);
+        execution.send(false);
+        return execution.result;
+    }
+
+    /**
+     * @return the number of requests sent again after a failure
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of backup requests sent while a response was pending
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of backup requests answered before the original request
+     */
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis,
+                baseBackoffMillis << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ?
+                e.getCause() : e;
+        if (cause instanceof HttpStatusException) {
+            return ((HttpStatusException) cause).isServerError();
+        }
+        return cause instanceof IOException && !(cause instanceof ParsingException) ||
+                cause instanceof TimeoutException;
+    }
+
+    /**
+     * The requests sent for a single invocation of {@link #execute}.
+     *
+     * @param <T> the type of the response
+     */
+    private class Execution<T> {
+        private final Latencies latencies;
+        private final Supplier<CompletionStage<T>> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // Guarded by this
+        private final List<CompletableFuture<T>> inFlight = new ArrayList<>(2);
+        private ScheduledFuture<?> timer;
+        private int attempts;
+        private boolean hedged;
+
+        Execution(Latencies latencies, Supplier<CompletionStage<T>> request) {
+            this.latencies = latencies;
+            this.request = request;
+            result.whenComplete((r, e) -> cancelAll());
+        }
+
+        void send(boolean hedge) {
+            CompletableFuture<T> response;
+            synchronized (this) {
+                if (result.isDone()) {
+                    return;
+                }
+                if (!hedge) {
+                    attempts++;
+                }
+                try {
+                    response = request.get().toCompletableFuture();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                inFlight.add(response);
+                if (!hedge && !hedged && hedgePercentile > 0) {
+                    long delay = latencies.percentile(hedgePercentile);
+                    if (delay >= 0) {
+                        schedule(this::hedge, Math.max(minHedgeDelayMillis, delay));
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            response.whenComplete((r, e) -> onResponse(response, hedge, start, r, e));
+        }
+
+        private void schedule(Runnable task, long delayMillis) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            timer = scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                if (result.isDone() || hedged || inFlight.isEmpty()) {
+                    return;
+                }
+                hedged = true;
+            }
+            hedges.increment();
+            send(true);
+        }
+
+        private void onResponse(CompletableFuture<T> response, boolean hedge, long start,
+                T value, Throwable e) {
+            boolean retry = false;
+            synchronized (this) {
+                inFlight.remove(response);
+                if (result.isDone()) {
+                    return;
+                }
+                if (e == null) {
+                    latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    if (hedge) {
+                        hedgeWins.increment();
+                    }
+                } else if (!inFlight.isEmpty()) {
+                    // The other request may still succeed
+                    return;
+                } else if (attempts < maxAttempts && isRetryable(e)) {
+                    retry = true;
+                    schedule(() -> send(false), backoff(attempts));
+                }
+            }
+            if (retry) {
+                retries.increment();
+            } else if (e == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void cancelAll() {
+            List<CompletableFuture<T>> pending;
+            synchronized (this) {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                pending = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            pending.forEach(response -> response.cancel(true));
+        }
+    }
+
+    /**
+     * Latencies of the most recent successful requests for one function.
+     */
+    private static class Latencies {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+
+        synchronized void add(long latencyMillis) {
+            samples[count++ % WINDOW] = latencyMillis;
+            if (count == 2 * WINDOW) {
+                count = WINDOW;
+            }
+        }
+
+        /**
+         * @return the given percentile in milliseconds, or -1 without enough samples
+         */
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, Math.min(count, WINDOW));
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+        }
+    }
+
+    /**
+     * Helper class for building a {@link RetryPolicy}.
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long baseBackoffMillis = 100;
+        private long maxBackoffMillis = 5000;
+        private double hedgePercentile;
+        private long minHedgeDelayMillis;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets how often a request is sent at most, not counting backup requests,
+         * defaults to 3.
+         *
+         * @param value the maximum number of attempts
+         * @return this builder
+         */
+        public Builder withMaxAttempts(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.maxAttempts = value;
+            return this;
+        }
+
+        /**
+         * Sets the backoff before retries: the n-th retry waits a random time between 0
+         * and the base times 2^(n-1), capped at the given maximum. Defaults to 100 and
+         * 5000 milliseconds.
+         *
+         * @param baseMillis the backoff ceiling of the first retry in milliseconds
+         * @param maxMillis the highest backoff ceiling in milliseconds
+         * @return this builder
+         */
+        public Builder withBackoff(long baseMillis, long maxMillis) {
+            if (baseMillis < 0 || maxMillis < baseMillis) {
+                throw new IllegalArgumentException("Expected 0 <= base <= max");
+            }
+            this.baseBackoffMillis = baseMillis;
+            this.maxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Enables sending a backup request once the given percentile of the observed
+         * latencies has passed without a response, e.g. 0.95. Requests are not hedged
+         * until a function has answered 20 times.
+         *
+         * @param percentile the percentile of the latencies, greater than 0 and up to 1
+         * @param minDelayMillis the least time in milliseconds to wait for a response
+         * @return this builder
+         */
+        public Builder withHedging(double percentile, long minDelayMillis) {
+            if (percentile <= 0 || percentile > 1 || minDelayMillis < 0) {
+                throw new IllegalArgumentException(
+                        "Expected 0 < percentile <= 1 and minDelayMillis >= 0");
+            }
+            this.hedgePercentile = percentile;
+            this.minHedgeDelayMillis = minDelayMillis;
+            return this;
+        }
+
+        /**
+         * Creates the retry policy.
+         *
+         * @return the retry policy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package com.suse.salt.netapi.client;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.AbstractCall;
 import com.suse.salt.netapi.calls.Call;
 import com.suse.salt.netapi.calls.Client;
 import com.suse.salt.netapi.calls.SaltSSHConfig;
@@ -16,17 +15,25 @@ import com.suse.salt.netapi.event.EventListener;
 import com.suse.salt.netapi.event.WebSocketEventStream;
 import com.suse.salt.netapi.exception.SaltException;
 import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.parser.ReturnChunksParser;
 import com.suse.salt.netapi.results.Result;
 import com.suse.salt.netapi.results.SSHRawResult;
+import com.suse.salt.netapi.utils.ClientUtils;
 
+import java.lang.reflect.Type;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Salt API client.
@@ -35,9 +42,13 @@ public class SaltClient {
 
     /** The async connection factory object */
     private final AsyncHttpClient asyncHttpClient;
-    private final URI uri;
-
-    private final Gson gson = new GsonBuilder().create();
+    private final EndpointSet endpoints;
+    private final Optional<CallPipeline> pipeline;
+    private final Optional<RetryPolicy> retryPolicy;
+    private final Optional<CallCoalescer> coalescer;
+    private final Optional<ResultCache> resultCache;
+    private final Optional<TokenManager> tokenManager;
+    private final Optional<RateLimiter> rateLimiter;
 
     /**
      * Constructor for connecting to a given URL.
@@ -46,8 +57,204 @@ public class SaltClient {
      * @param url the Salt API URL
      */
     public SaltClient(URI url, AsyncHttpClient asyncHttpClient) {
-        this.uri = url.resolve("/");
+        this(EndpointSet.of(url), asyncHttpClient);
+    }
+
+    /**
+     * Constructor for spreading requests across several salt-api instances.
+     *
+     * @param endpoints the salt-api instances to send requests to
+     * @param asyncHttpClient http client to use for the salt api
+     */
+    public SaltClient(EndpointSet endpoints, AsyncHttpClient asyncHttpClient) {
+        this(endpoints, asyncHttpClient, Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    private SaltClient(EndpointSet endpoints, AsyncHttpClient asyncHttpClient,
+            Optional<CallPipeline> pipeline, Optional<RetryPolicy> retryPolicy,
+            Optional<CallCoalescer> coalescer, Optional<ResultCache> resultCache,
+            Optional<TokenManager> tokenManager, Optional<RateLimiter> rateLimiter) {
+        this.endpoints = endpoints;
         this.asyncHttpClient = asyncHttpClient;
+        this.pipeline = pipeline;
+        this.retryPolicy = retryPolicy;
+        this.coalescer = coalescer;
+        this.resultCache = resultCache;
+        this.tokenManager = tokenManager;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that pipelines calls: calls
+     * made within the given delay are sent to salt-api in a single request, see
+     * {@link CallPipeline} for details.
+     *
+     * @param maxBatchSize maximum number of calls sent in one request
+     * @param maxDelayMillis maximum time in milliseconds a call waits for others to join
+     * @return a pipelining client
+     */
+    public SaltClient withPipelining(int maxBatchSize, long maxDelayMillis) {
+        SaltClient direct = withoutPipelining();
+        return new SaltClient(endpoints, asyncHttpClient, Optional.of(new CallPipeline(direct,
+                maxBatchSize, maxDelayMillis, ClientUtils.sharedScheduler())), retryPolicy,
+                coalescer, resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that sends every call in a
+     * request of its own.
+     *
+     * @return a non pipelining client
+     */
+    public SaltClient withoutPipelining() {
+        return new SaltClient(endpoints, asyncHttpClient, Optional.empty(), retryPolicy,
+                coalescer, resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one whose requests have the given
+     * priority. Priorities only take effect with an AsyncHttpClient distinguishing them,
+     * like {@link com.suse.salt.netapi.client.impl.PrioritizingAsyncHttpClient}.
+     *
+     * @param priority the priority of the requests
+     * @return a client sending requests of the given priority
+     */
+    public SaltClient withPriority(Priority priority) {
+        AsyncHttpClient prioritized = asyncHttpClient.withPriority(priority);
+        SaltClient direct = new SaltClient(endpoints, prioritized, Optional.empty(),
+                retryPolicy, coalescer, resultCache, tokenManager, rateLimiter);
+        return new SaltClient(endpoints, prioritized,
+                pipeline.map(p -> p.withClient(direct)), retryPolicy, coalescer,
+                resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that retries and hedges
+     * idempotent calls and {@link #stats()} following the given policy. Calls are only
+     * sent more than once if {@link Call#isIdempotent()} says so.
+     *
+     * @param policy the retry policy
+     * @return a retrying client
+     */
+    public SaltClient withRetryPolicy(RetryPolicy policy) {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, Optional.of(policy),
+                coalescer, resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that sends every call once.
+     *
+     * @return a non retrying client
+     */
+    public SaltClient withoutRetryPolicy() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, Optional.empty(),
+                coalescer, resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one where identical idempotent
+     * calls made while one of them is in flight share its request and its parsed
+     * response. Calls are identical if they have the same client type, function,
+     * arguments, target, custom arguments, credentials and response type. Callers must
+     * not modify responses, as other callers may hold the same objects.
+     *
+     * @return a coalescing client
+     */
+    public SaltClient withCoalescing() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy,
+                Optional.of(new CallCoalescer()), resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that sends every call on its
+     * own.
+     *
+     * @return a non coalescing client
+     */
+    public SaltClient withoutCoalescing() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy,
+                Optional.empty(), resultCache, tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that serves
+     * {@link com.suse.salt.netapi.calls.LocalCall#callSync(SaltClient, Target, AuthMethod)}
+     * from the given cache where possible.
+     *
+     * @param cache the result cache
+     * @return a caching client
+     */
+    public SaltClient withResultCache(ResultCache cache) {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                Optional.of(cache), tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that does not cache results.
+     *
+     * @return a non caching client
+     */
+    public SaltClient withoutResultCache() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                Optional.empty(), tokenManager, rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that makes calls given the
+     * password credentials of the token manager with its session token instead, see
+     * {@link TokenManager}.
+     *
+     * @param manager the token manager
+     * @return a client using session tokens
+     */
+    public SaltClient withTokenManager(TokenManager manager) {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                resultCache, Optional.of(manager), rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that makes calls with the
+     * credentials they are given.
+     *
+     * @return a client not using a token manager
+     */
+    public SaltClient withoutTokenManager() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                resultCache, Optional.empty(), rateLimiter);
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that only sends calls the given
+     * rate limiter admits, see {@link RateLimiter}. Throttled calls fail with a
+     * {@link com.suse.salt.netapi.exception.RateLimitException}.
+     *
+     * @param limiter the rate limiter
+     * @return a rate limited client
+     */
+    public SaltClient withRateLimiter(RateLimiter limiter) {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                resultCache, tokenManager, Optional.of(limiter));
+    }
+
+    /**
+     * Returns a client sharing the connection of this one that sends calls without
+     * limiting their rate.
+     *
+     * @return a client not limiting the rate of calls
+     */
+    public SaltClient withoutRateLimiter() {
+        return new SaltClient(endpoints, asyncHttpClient, pipeline, retryPolicy, coalescer,
+                resultCache, tokenManager, Optional.empty());
+    }
+
+    /**
+     * Returns the cache local calls are served from, if any.
+     *
+     * @return the result cache
+     */
+    public Optional<ResultCache> getResultCache() {
+        return resultCache;
     }
 
     /**
@@ -67,10 +274,11 @@ public class SaltClient {
         props.put("password", password);
         props.put("eauth", eauth.getValue());
 
-        String payload = gson.toJson(props);
+        String payload = JsonParser.CODEC.encode(props);
 
-        CompletionStage<Token> result = asyncHttpClient
-                .post(uri.resolve("login"), payload, JsonParser.TOKEN)
+        CompletionStage<Token> result = endpoints
+                .send(uri -> asyncHttpClient.post(uri.resolve("login"), payload,
+                        JsonParser.TOKEN))
                 .thenApply(r -> {
                     // They return a list of tokens here, take the first one
                     Token token = r.getResult().get(0);
@@ -88,8 +296,9 @@ public class SaltClient {
      * @return true if the logout was successful, otherwise false
      */
     public CompletionStage<Boolean> logout() {
-        return asyncHttpClient
-                .post(uri.resolve("logout"), "", JsonParser.STRING)
+        return endpoints
+                .send(uri -> asyncHttpClient.post(uri.resolve("logout"), "",
+                        JsonParser.STRING))
                 .thenApply(s -> "Your token has been cleared".contentEquals(s.getResult()));
     }
 
@@ -124,10 +333,11 @@ public class SaltClient {
 
         List<Map<String, Object>> list =  Collections.singletonList(props);
 
-        String payload = gson.toJson(list);
+        String payload = JsonParser.CODEC.encode(list);
 
-        CompletionStage<Map<String, Object>> result = asyncHttpClient
-                .post(uri.resolve("run"), payload, JsonParser.RUN_RESULTS)
+        CompletionStage<Map<String, Object>> result = endpoints
+                .send(uri -> asyncHttpClient.post(uri.resolve("run"), payload,
+                        JsonParser.RUN_RESULTS))
                 .thenApply(s -> s.getResult().get(0));
         return result;
     }
@@ -155,10 +365,11 @@ public class SaltClient {
 
         List<Map<String, Object>> list = Collections.singletonList(props);
 
-        String payload = gson.toJson(list);
+        String payload = JsonParser.CODEC.encode(list);
 
-        CompletionStage<Map<String, Result<SSHRawResult>>> result = asyncHttpClient
-                .post(uri.resolve("run"), payload, JsonParser.RUNSSHRAW_RESULTS)
+        CompletionStage<Map<String, Result<SSHRawResult>>> result = endpoints
+                .send(uri -> asyncHttpClient.post(uri.resolve("run"), payload,
+                        JsonParser.RUNSSHRAW_RESULTS))
                 .thenApply(r -> r.getResult().get(0));
 
         return result;
@@ -172,7 +383,10 @@ public class SaltClient {
      * @return the stats
      */
     public CompletionStage<Stats> stats() {
-        return asyncHttpClient.get(uri.resolve("stats"), JsonParser.STATS);
+        Supplier<CompletionStage<Stats>> request = () -> endpoints.send(
+                uri -> asyncHttpClient.get(uri.resolve("stats"), JsonParser.STATS));
+        return retryPolicy.map(policy -> policy.execute("stats", request))
+                .orElseGet(request);
     }
 
     /**
@@ -198,30 +412,241 @@ public class SaltClient {
      */
     public WebSocketEventStream events(Token token, long sessionIdleTimeout, long idleTimeout,
                        int maxMsgSize, EventListener... listeners) throws SaltException {
-        return new WebSocketEventStream(uri, token, sessionIdleTimeout, idleTimeout, maxMsgSize, listeners);
+        return new WebSocketEventStream(endpoints.selectUri(), token, sessionIdleTimeout,
+                idleTimeout, maxMsgSize, listeners);
     }
 
+    /**
+     * Generic interface to make a call to salt-api.
+     *
+     * @param <R> the type of the response
+     * @param call the call to send
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param type the type the response is parsed into
+     * @param auth authentication credentials to use
+     * @return CompletionStage holding the parsed response
+     */
     public <R> CompletionStage<R> call(Call<?> call, Client client, Optional<Target<?>> target,
                 Map<String, Object> custom, TypeToken<R> type, AuthMethod auth) {
-        Map<String, String> headers = new HashMap<>();
+        if (!call.isIdempotent()) {
+            return send(call, client, target, custom, type, auth);
+        }
+        Supplier<CompletionStage<R>> request = () -> retryPolicy
+                .map(policy -> policy.execute(functionKey(call, client),
+                        () -> send(call, client, target, custom, type, auth)))
+                .orElseGet(() -> send(call, client, target, custom, type, auth));
+        if (coalescer.isPresent()) {
+            // Maps compare equal regardless of their order, so the lowstate is canonical
+            List<Object> key = Arrays.asList(lowstate(call, client, target, custom, auth),
+                    headers(auth), type);
+            return coalescer.get().call(key, request);
+        }
+        return request.get();
+    }
+
+    private static String functionKey(Call<?> call, Client client) {
+        if (call instanceof AbstractCall) {
+            AbstractCall<?> abstractCall = (AbstractCall<?>) call;
+            return abstractCall.getModuleName() + "." + abstractCall.getFunctionName();
+        }
+        return client.getValue();
+    }
+
+    /**
+     * Generic interface to make a call to salt-api parsing the response with the given
+     * parser, e.g. a {@link com.suse.salt.netapi.parser.SpillingParser}. Parsers may
+     * produce responses that cannot be shared, so such calls are neither coalesced nor
+     * sent through the call pipeline.
+     *
+     * @param <R> the type of the response
+     * @param call the call to send
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param parser the parser for the response
+     * @param auth authentication credentials to use
+     * @return CompletionStage holding the parsed response
+     */
+    public <R> CompletionStage<R> call(Call<?> call, Client client, Optional<Target<?>> target,
+            Map<String, Object> custom, JsonParser<R> parser, AuthMethod auth) {
+        Supplier<CompletionStage<R>> request = () -> send(auth, target,
+                a -> post(call, client, target, custom, parser, a, Optional.empty()));
+        return call.isIdempotent() ? retryPolicy
+                .map(policy -> policy.execute(functionKey(call, client), request))
+                .orElseGet(request) : request.get();
+    }
+
+    /**
+     * Generic interface to make a call to salt-api that has to be answered by the given
+     * deadline. The time left is handed down to every layer when it starts waiting:
+     * <ul>
+     * <li>calls waiting for minions to return (local and local_batch) are sent with the
+     * "timeout" and "gather_job_timeout" given by {@link Deadline#saltTimeouts()}, unless
+     * shorter ones are set on the call,</li>
+     * <li>requests are given up waiting for a connection or a response at the deadline,
+     * see {@link AsyncHttpClient#withDeadline(Deadline)},</li>
+     * <li>the returned stage completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} once the deadline passes, cancelling
+     * requests waiting in a queue or in flight, and retries still to be made.</li>
+     * </ul>
+     * Calls with a deadline are neither coalesced nor sent through the call pipeline, as
+     * their lowstate depends on the time left when they are sent.
+     *
+     * @param <R> the type of the response
+     * @param call the call to send
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param type the type the response is parsed into
+     * @param auth authentication credentials to use
+     * @param deadline the deadline of the call
+     * @return CompletionStage holding the parsed response
+     */
+    public <R> CompletionStage<R> call(Call<?> call, Client client, Optional<Target<?>> target,
+            Map<String, Object> custom, TypeToken<R> type, AuthMethod auth, Deadline deadline) {
+        Supplier<CompletionStage<R>> request = () -> send(auth, target, a -> {
+            if (deadline.isExpired()) {
+                CompletableFuture<R> expired = new CompletableFuture<>();
+                expired.completeExceptionally(new TimeoutException("Deadline passed before " +
+                        "the request was sent"));
+                return expired;
+            }
+            return post(call, client, target, withSaltTimeouts(call, client, custom, deadline),
+                    new JsonParser<>(type), a, Optional.of(deadline));
+        });
+        CompletionStage<R> response = call.isIdempotent() ? retryPolicy
+                .map(policy -> policy.execute(functionKey(call, client), request))
+                .orElseGet(request) : request.get();
+        return ClientUtils.withTimeout(response, deadline.remainingMillis());
+    }
+
+    private static Map<String, Object> withSaltTimeouts(Call<?> call, Client client,
+            Map<String, Object> custom, Deadline deadline) {
+        if (client != Client.LOCAL && client != Client.LOCAL_BATCH) {
+            return custom;
+        }
+        Map<String, Object> payload = call.getPayload();
+        Map<String, Object> args = new HashMap<>(custom);
+        deadline.saltTimeouts().forEach((key, derived) -> {
+            Object given = args.containsKey(key) ? args.get(key) : payload.get(key);
+            boolean shorter = given instanceof Number &&
+                    ((Number) given).longValue() < ((Number) derived).longValue();
+            args.put(key, shorter ? given : derived);
+        });
+        return args;
+    }
+
+    private <R> CompletionStage<R> send(Call<?> call, Client client,
+            Optional<Target<?>> target, Map<String, Object> custom, TypeToken<R> type,
+            AuthMethod auth) {
+        return send(auth, target, a -> dispatch(call, client, target, custom, type, a));
+    }
+
+    private <R> CompletionStage<R> send(AuthMethod auth, Optional<Target<?>> target,
+            Function<AuthMethod, CompletionStage<R>> dispatch) {
+        Supplier<CompletionStage<R>> request = () -> {
+            if (tokenManager.isPresent() && tokenManager.get().manages(auth)) {
+                return tokenManager.get().execute(dispatch);
+            }
+            return dispatch.apply(auth);
+        };
+        return rateLimiter.map(limiter -> limiter.execute(auth, target, request))
+                .orElseGet(request);
+    }
+
+    private <R> CompletionStage<R> dispatch(Call<?> call, Client client,
+            Optional<Target<?>> target, Map<String, Object> custom, TypeToken<R> type,
+            AuthMethod auth) {
+        if (pipeline.isPresent() && CallPipeline.supports(client, custom, type)) {
+            return pipeline.get().call(call, client, target, custom, type, auth);
+        }
+        return post(call, client, target, custom, new JsonParser<>(type), auth,
+                Optional.empty());
+    }
+
+    private <R> CompletionStage<R> post(Call<?> call, Client client,
+            Optional<Target<?>> target, Map<String, Object> custom, JsonParser<R> parser,
+            AuthMethod auth, Optional<Deadline> deadline) {
+        byte[] payload = LowstateWriter.write(call, client, target, custom, auth);
+        AsyncHttpClient http = deadline.map(asyncHttpClient::withDeadline)
+                .orElse(asyncHttpClient);
+        return endpoints.send(uri -> http.post(endpoint(uri, auth), headers(auth),
+                payload, parser));
+    }
+
+    /**
+     * Generic interface to make a call to salt-api with a deadline. If there is no
+     * response within the given time the returned stage completes exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} and the HTTP request is aborted, which
+     * also happens when the returned stage is cancelled.
+     *
+     * @param <R> the type of the response
+     * @param call the call to send
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param type the type the response is parsed into
+     * @param auth authentication credentials to use
+     * @param timeoutMillis time in milliseconds to wait for the response
+     * @return CompletionStage holding the parsed response
+     */
+    public <R> CompletionStage<R> call(Call<?> call, Client client, Optional<Target<?>> target,
+            Map<String, Object> custom, TypeToken<R> type, AuthMethod auth, long timeoutMillis) {
+        return ClientUtils.withTimeout(call(call, client, target, custom, type, auth),
+                timeoutMillis);
+    }
+
+    /**
+     * Sends several lowstate chunks in a single request.
+     *
+     * @param lowstates the lowstate chunks to send
+     * @param types the type of the return entry for each chunk
+     * @param auth authentication credentials to use
+     * @return CompletionStage holding one parsed return entry per chunk
+     */
+    CompletionStage<List<Object>> callChunks(List<Map<String, Object>> lowstates,
+            List<Type> types, AuthMethod auth) {
+        byte[] payload = LowstateWriter.write(lowstates);
+        return endpoints.send(uri -> asyncHttpClient.post(endpoint(uri, auth), headers(auth),
+                payload, new ReturnChunksParser(types)));
+    }
+
+    /**
+     * Builds the lowstate chunk for a call.
+     *
+     * @param call the call
+     * @param client the client type of the call
+     * @param target the target of the call
+     * @param custom custom lowstate arguments
+     * @param auth authentication credentials to use
+     * @return the lowstate as a map of key/value pairs
+     */
+    Map<String, Object> lowstate(Call<?> call, Client client, Optional<Target<?>> target,
+            Map<String, Object> custom, AuthMethod auth) {
         Map<String, Object> props = new HashMap<>();
-        auth.getInternal().consume(token -> {
-            headers.put("X-Auth-Token", token.getToken());
-        }, pass -> {
-                props.put("username", pass.getUsername());
-                props.put("password", pass.getPassword());
-                props.put("eauth", pass.getModule().getValue());
-            });
+        auth.getInternal().consume(token -> { }, pass -> {
+            props.put("username", pass.getUsername());
+            props.put("password", pass.getPassword());
+            props.put("eauth", pass.getModule().getValue());
+        });
 
         target.ifPresent(t -> props.putAll(t.getProps()));
         props.put("client", client.getValue());
         props.putAll(call.getPayload());
         props.putAll(custom);
-        List<Map<String, Object>> list = Collections.singletonList(props);
-        String payload = gson.toJson(list);
+        return props;
+    }
+
+    private Map<String, String> headers(AuthMethod auth) {
+        return auth.getInternal().fold(
+                token -> Collections.singletonMap("X-Auth-Token", token.getToken()),
+                pass -> Collections.emptyMap());
+    }
 
-        URI endpoint = auth.getInternal().isRight() ? uri.resolve("run") : uri;
-        return asyncHttpClient.post(endpoint, headers, payload, new JsonParser<>(type));
+    private static URI endpoint(URI uri, AuthMethod auth) {
+        return auth.getInternal().isRight() ? uri.resolve("run") : uri;
     }
 
 }
@@ -0,0 +1,298 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.Token;
+import com.suse.salt.netapi.exception.SaltUserUnauthorizedException;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs in once with the given credentials and hands out the session token, so that salt
+ * does not have to run eauth for every request.
+ * <p>
+ * The token is renewed in the background shortly before it expires, while requests keep
+ * using the current one. Requests rejected as unauthorized, e.g. because the master
+ * restarted and lost its tokens, are sent once more after logging in again. Concurrent
+ * requests share a single login.
+ * <p>
+ * Passed to {@link SaltClient#withTokenManager(TokenManager)}, the token is used for all
+ * calls made with the password credentials of this manager.
+ */
+public class TokenManager {
+
+    private final SaltClient client;
+    private final PasswordAuth credentials;
+    private final long refreshMarginMillis;
+    private final long retryDelayMillis;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private CompletableFuture<Token> current;
+    private ScheduledFuture<?> refreshTimer;
+    private boolean closed;
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+
+    private TokenManager(Builder builder, SaltClient client, PasswordAuth credentials,
+            LongSupplier clock) {
+        this.client = client;
+        this.credentials = credentials;
+        this.refreshMarginMillis = builder.refreshMarginMillis;
+        this.retryDelayMillis = builder.retryDelayMillis;
+        this.clock = clock;
+        this.scheduler = ClientUtils.sharedScheduler();
+    }
+
+    /**
+     * Returns a builder for a token manager.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the current token, logging in if there is none or it has expired.
+     *
+     * @return CompletionStage holding token based credentials
+     */
+    public CompletionStage<AuthMethod> getAuthMethod() {
+        return token().thenApply(AuthMethod::new);
+    }
+
+    /**
+     * Sends a request with the current token. If it is rejected as unauthorized, the
+     * request is sent once more with a new token. Cancelling the returned stage cancels
+     * the request.
+     *
+     * @param <T> the type of the response
+     * @param request sends the request with the given credentials
+     * @return CompletionStage holding the response
+     */
+    public <T> CompletionStage<T> execute(Function<AuthMethod, CompletionStage<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(request, result, token(), true);
+        return result;
+    }
+
+    /**
+     * Checks if the given credentials are the ones of this manager.
+     *
+     * @param auth credentials
+     * @return true if the token of this manager can be used instead
+     */
+    public boolean manages(AuthMethod auth) {
+        return auth.getInternal().fold(token -> false,
+                pass -> pass == credentials ||
+                        pass.getUsername().equals(credentials.getUsername()) &&
+                        pass.getPassword().equals(credentials.getPassword()) &&
+                        pass.getModule() == credentials.getModule());
+    }
+
+    /**
+     * Stops renewing the token in the background.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (refreshTimer != null) {
+            refreshTimer.cancel(false);
+        }
+    }
+
+    /**
+     * @return the number of logins
+     */
+    public long getLogins() {
+        return logins.sum();
+    }
+
+    /**
+     * @return the number of requests sent again after being rejected as unauthorized
+     */
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    private synchronized CompletableFuture<Token> token() {
+        if (current == null || current.isCompletedExceptionally() ||
+                current.isDone() && isExpired(current.join())) {
+            current = login();
+        }
+        return current;
+    }
+
+    /**
+     * Logs in again unless that already happened since the given token was handed out.
+     */
+    private synchronized CompletableFuture<Token> renew(Token rejected) {
+        if (current.isCompletedExceptionally() ||
+                current.isDone() && current.join() == rejected) {
+            current = login();
+        }
+        return current;
+    }
+
+    // Must be called holding the lock
+    private CompletableFuture<Token> login() {
+        logins.increment();
+        CompletableFuture<Token> token = client.login(credentials.getUsername(),
+                credentials.getPassword(), credentials.getModule()).toCompletableFuture();
+        token.thenAccept(this::scheduleRefresh);
+        return token;
+    }
+
+    private synchronized void scheduleRefresh(Token token) {
+        if (closed || token.getExpire() == null) {
+            return;
+        }
+        long delay = token.getExpire().getTime() - refreshMarginMillis - clock.getAsLong();
+        schedule(() -> refresh(token), Math.max(0, delay));
+    }
+
+    // Must be called holding the lock
+    private void schedule(Runnable task, long delayMillis) {
+        if (refreshTimer != null) {
+            refreshTimer.cancel(false);
+        }
+        refreshTimer = scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Logs in while the given token is still in use and replaces it on success.
+     */
+    private void refresh(Token token) {
+        synchronized (this) {
+            if (closed || !current.isDone() || current.isCompletedExceptionally() ||
+                    current.join() != token) {
+                return;
+            }
+            logins.increment();
+        }
+        client.login(credentials.getUsername(), credentials.getPassword(),
+                credentials.getModule()).whenComplete((renewed, e) -> {
+                    synchronized (this) {
+                        if (current.isDone() && !current.isCompletedExceptionally() &&
+                                current.join() == token) {
+                            if (e == null) {
+                                current = CompletableFuture.completedFuture(renewed);
+                                scheduleRefresh(renewed);
+                            } else if (!closed && !isExpired(token)) {
+                                schedule(() -> refresh(token), retryDelayMillis);
+                            }
+                        }
+                    }
+                });
+    }
+
+    private <T> void attempt(Function<AuthMethod, CompletionStage<T>> request,
+            CompletableFuture<T> result, CompletableFuture<Token> token, boolean replay) {
+        // The login is shared with other requests and therefore never cancelled
+        token.whenComplete((t, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            CompletableFuture<T> response;
+            try {
+                response = request.apply(new AuthMethod(t)).toCompletableFuture();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    response.cancel(true);
+                }
+            });
+            response.whenComplete((r, e) -> {
+                if (e == null) {
+                    result.complete(r);
+                } else if (replay && unwrap(e) instanceof SaltUserUnauthorizedException) {
+                    replays.increment();
+                    attempt(request, result, renew(t), false);
+                } else {
+                    result.completeExceptionally(e);
+                }
+            });
+        });
+    }
+
+    private boolean isExpired(Token token) {
+        return token.getExpire() != null && token.getExpire().getTime() <= clock.getAsLong();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Helper class for building a {@link TokenManager}.
+     */
+    public static class Builder {
+        private long refreshMarginMillis = TimeUnit.MINUTES.toMillis(5);
+        private long retryDelayMillis = TimeUnit.SECONDS.toMillis(10);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets how long before its expiry the token is renewed, defaults to 5 minutes.
+         *
+         * @param millis the time in milliseconds
+         * @return this builder
+         */
+        public Builder withRefreshMargin(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("Expected value not less than 0");
+            }
+            this.refreshMarginMillis = millis;
+            return this;
+        }
+
+        /**
+         * Sets how long to wait before trying again when renewing the token fails,
+         * defaults to 10 seconds.
+         *
+         * @param millis the time in milliseconds
+         * @return this builder
+         */
+        public Builder withRetryDelay(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.retryDelayMillis = millis;
+            return this;
+        }
+
+        /**
+         * Creates a token manager logging in through the given client.
+         *
+         * @param client the client to log in with
+         * @param credentials the credentials to log in with
+         * @return the token manager
+         */
+        public TokenManager build(SaltClient client, PasswordAuth credentials) {
+            return build(client, credentials, System::currentTimeMillis);
+        }
+
+        TokenManager build(SaltClient client, PasswordAuth credentials, LongSupplier clock) {
+            return new TokenManager(this, client, credentials, clock);
+        }
+    }
+}
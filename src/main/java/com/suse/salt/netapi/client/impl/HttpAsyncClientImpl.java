@@ -1,24 +1,38 @@
 package com.suse.salt.netapi.client.impl;
 
 import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.exception.HttpStatusException;
 import com.suse.salt.netapi.exception.SaltException;
 import com.suse.salt.netapi.exception.SaltUserUnauthorizedException;
 import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.utils.ClientUtils;
+import com.suse.salt.netapi.utils.HttpClientUtils;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * AsyncHttpClient implemented with Apache's HttpAsyncClient.
@@ -26,16 +40,138 @@ import java.util.concurrent.CompletionStage;
  */
 public class HttpAsyncClientImpl implements AsyncHttpClient {
 
+    /** Connect timeout of requests with a deadline if the request config sets none */
+    private static final int MAX_CONNECT_TIMEOUT_MILLIS = 10000;
+
     /** HTTP client instance */
     private final HttpAsyncClient httpClient;
 
+    /** Executor responses are parsed on while they are received */
+    private final Optional<Executor> parserExecutor;
+
+    /** Whether compressed responses are accepted */
+    private final boolean acceptCompressed;
+
+    /** Minimum size in bytes of request bodies to be compressed, if any */
+    private final Optional<Integer> compressRequestsFrom;
+
+    /** Deadline of the requests, if any */
+    private final Optional<Deadline> deadline;
+
+    /** Default request config of the HTTP client, the base of requests with a deadline */
+    private final RequestConfig requestConfig;
+
+    /** Counters of the bytes sent and received */
+    private final TransferStats stats;
+
     /**
-     * Init a connection to a given Salt API endpoint.
+     * Init a connection to a given Salt API endpoint. Response bodies are buffered and
+     * parsed on the I/O reactor thread once they are complete, unless the parser
+     * {@link JsonParser#requiresStreaming() requires streaming}: those bodies are streamed
+     * into the parser on {@link ClientUtils#sharedParserExecutor()}.
      *
      * @param httpClientIn the HTTP client
      */
     public HttpAsyncClientImpl(HttpAsyncClient httpClientIn) {
+        this(httpClientIn, Optional.empty(), false, Optional.empty(), Optional.empty(),
+                HttpClientUtils.defaultRequestConfig(), new TransferStats());
+    }
+
+    /**
+     * Init a connection to a given Salt API endpoint streaming response bodies into the
+     * parser as they arrive instead of buffering them. Every response occupies a thread
+     * of the given executor while it is being received, so the executor should not
+     * limit the number of concurrent requests.
+     *
+     * @param httpClientIn the HTTP client
+     * @param parserExecutorIn executor to run the parsers on
+     */
+    public HttpAsyncClientImpl(HttpAsyncClient httpClientIn, Executor parserExecutorIn) {
+        this(httpClientIn, Optional.of(parserExecutorIn), false, Optional.empty(),
+                Optional.empty(), HttpClientUtils.defaultRequestConfig(), new TransferStats());
+    }
+
+    private HttpAsyncClientImpl(HttpAsyncClient httpClientIn,
+            Optional<Executor> parserExecutorIn, boolean acceptCompressedIn,
+            Optional<Integer> compressRequestsFromIn, Optional<Deadline> deadlineIn,
+            RequestConfig requestConfigIn, TransferStats statsIn) {
         httpClient = httpClientIn;
+        parserExecutor = parserExecutorIn;
+        acceptCompressed = acceptCompressedIn;
+        compressRequestsFrom = compressRequestsFromIn;
+        deadline = deadlineIn;
+        requestConfig = requestConfigIn;
+        stats = statsIn;
+    }
+
+    /**
+     * Returns a client sharing the HTTP client of this one that asks the server for gzip
+     * or deflate compressed responses. Compressed bodies are decompressed while they are
+     * parsed, they are never held in memory as a whole.
+     *
+     * @return a new client accepting compressed responses
+     */
+    public HttpAsyncClientImpl withResponseCompression() {
+        return new HttpAsyncClientImpl(httpClient, parserExecutor, true,
+                compressRequestsFrom, deadline, requestConfig, new TransferStats());
+    }
+
+    /**
+     * Returns a client sharing the HTTP client of this one that gzip compresses request
+     * bodies of at least the given size, like calls targeting long minion lists. The
+     * server, or a proxy in front of it, needs to accept gzip encoded request bodies.
+     *
+     * @param minBytes minimum size of request bodies to be compressed
+     * @return a new client compressing large request bodies
+     */
+    public HttpAsyncClientImpl withRequestCompression(int minBytes) {
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("Expected value not less than 0");
+        }
+        return new HttpAsyncClientImpl(httpClient, parserExecutor, acceptCompressed,
+                Optional.of(minBytes), deadline, requestConfig, new TransferStats());
+    }
+
+    /**
+     * Returns a client sharing the HTTP client of this one that knows the given config
+     * is the default request config of the HTTP client. Requests with a deadline set a
+     * config of their own, which replaces the default one, so it is derived from the
+     * given config. Defaults to {@link HttpClientUtils#defaultRequestConfig()}, for
+     * clients of {@link HttpClientUtils#custom()} pass
+     * {@link com.suse.salt.netapi.utils.PooledHttpClient#getRequestConfig()}.
+     *
+     * @param requestConfigIn the default request config of the HTTP client
+     * @return a new client deriving the config of requests from the given one
+     */
+    public HttpAsyncClientImpl withRequestConfig(RequestConfig requestConfigIn) {
+        return new HttpAsyncClientImpl(httpClient, parserExecutor, acceptCompressed,
+                compressRequestsFrom, deadline, requestConfigIn, new TransferStats());
+    }
+
+    /**
+     * Returns a client sharing the HTTP client and the transfer statistics of this one
+     * whose requests time out at the given deadline. The config of every request is the
+     * one given by {@link #withRequestConfig(RequestConfig)}, with its connection request,
+     * connect and socket timeouts bounded by the time left when the request is sent, and
+     * the connect timeout by 10 seconds if the config sets none.
+     *
+     * @param deadlineIn the deadline of the requests
+     * @return a new client for the given deadline
+     */
+    @Override
+    public HttpAsyncClientImpl withDeadline(Deadline deadlineIn) {
+        return new HttpAsyncClientImpl(httpClient, parserExecutor, acceptCompressed,
+                compressRequestsFrom, Optional.of(deadlineIn), requestConfig, stats);
+    }
+
+    /**
+     * Returns the counters of the bytes this client has sent and received, compressed
+     * and uncompressed.
+     *
+     * @return the transfer statistics
+     */
+    public TransferStats getTransferStats() {
+        return stats;
     }
 
     /**
@@ -46,6 +182,15 @@ public class HttpAsyncClientImpl implements AsyncHttpClient {
         return request(uri, headers, data, parser);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        return executeRequest(httpClient, prepareRequest(uri, headers, data), parser);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -61,29 +206,55 @@ public class HttpAsyncClientImpl implements AsyncHttpClient {
      * @return CompletionStage holding object of type T
      */
     private <T> CompletionStage<T> request(URI uri, Map<String, String> headers, String data, JsonParser<T> parser) {
-        return executeRequest(httpClient, prepareRequest(uri, headers, data), parser);
+        byte[] body = data != null ? data.getBytes(StandardCharsets.UTF_8) : null;
+        return executeRequest(httpClient, prepareRequest(uri, headers, body), parser);
     }
 
     /**
      * Prepares the HTTP request object creating a POST or GET request depending on if data
      * is supplied or not.
      *
-     * @param jsonData json POST data, will use GET if null
+     * @param body UTF-8 encoded json POST data, will use GET if null
      * @return HttpUriRequest object the prepared request
      */
-    private <T> HttpUriRequest prepareRequest(URI uri, Map<String, String> headers, String jsonData) {
+    private <T> HttpUriRequest prepareRequest(URI uri, Map<String, String> headers, byte[] body) {
         HttpUriRequest httpRequest;
-        if (jsonData != null) {
+        if (body != null) {
             // POST data
             HttpPost httpPost = new HttpPost(uri);
-            httpPost.setEntity(new StringEntity(jsonData, ContentType.APPLICATION_JSON));
+            if (compressRequestsFrom.filter(min -> body.length >= min).isPresent()) {
+                byte[] compressed = gzip(body);
+                ByteArrayEntity entity =
+                        new ByteArrayEntity(compressed, ContentType.APPLICATION_JSON);
+                entity.setContentEncoding("gzip");
+                httpPost.setEntity(entity);
+                stats.requestSent(body.length, compressed.length, true);
+            } else {
+                httpPost.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+                stats.requestSent(body.length, body.length, false);
+            }
             httpRequest = httpPost;
         } else {
             // GET request
             httpRequest = new HttpGet(uri);
+            stats.requestSent(0, 0, false);
         }
         httpRequest.addHeader(HttpHeaders.ACCEPT, "application/json");
+        if (acceptCompressed) {
+            httpRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
         headers.forEach(httpRequest::addHeader);
+        deadline.ifPresent(d -> {
+            int remaining = (int) Math.max(1, Math.min(d.remainingMillis(), Integer.MAX_VALUE));
+            int connectTimeout = requestConfig.getConnectTimeout() > 0 ?
+                    requestConfig.getConnectTimeout() : MAX_CONNECT_TIMEOUT_MILLIS;
+            ((HttpRequestBase) httpRequest).setConfig(RequestConfig.copy(requestConfig)
+                    .setConnectionRequestTimeout(
+                            bounded(requestConfig.getConnectionRequestTimeout(), remaining))
+                    .setConnectTimeout(Math.min(remaining, connectTimeout))
+                    .setSocketTimeout(bounded(requestConfig.getSocketTimeout(), remaining))
+                    .build());
+        });
 
         return httpRequest;
     }
@@ -98,50 +269,84 @@ public class HttpAsyncClientImpl implements AsyncHttpClient {
     private <T> CompletionStage<T> executeRequest(HttpAsyncClient httpClient,
             HttpUriRequest httpRequest, JsonParser<T> parser) {
         CompletableFuture<T> future = new CompletableFuture<>();
-        httpClient.execute(httpRequest, new FutureCallback<HttpResponse>() {
-            @Override
-            public void failed(Exception e) {
-                future.completeExceptionally(e);
-            }
-
-            @Override
-            public void completed(HttpResponse response) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                if (statusCode == HttpStatus.SC_OK ||
-                        statusCode == HttpStatus.SC_ACCEPTED) {
-
-                    // Parse result type from the returned JSON
-                    try {
-                        T result = parser.parse(response.getEntity().getContent());
-                        future.complete(result);
-                    } catch (Exception e) {
+        JsonResponseConsumer<T> consumer =
+                new JsonResponseConsumer<>(parser, parserExecutor(parser), stats);
+        Future<CompletableFuture<T>> exchange = httpClient.execute(
+                HttpAsyncMethods.create(httpRequest), consumer,
+                new FutureCallback<CompletableFuture<T>>() {
+                    @Override
+                    public void failed(Exception e) {
                         future.completeExceptionally(e);
                     }
-                } else {
-                    future.completeExceptionally(createSaltException(statusCode));
-                }
-            }
 
-            @Override
-            public void cancelled() {
-                future.cancel(false);
+                    @Override
+                    public void completed(CompletableFuture<T> parsed) {
+                        // The parser might still be busy with the remainder of the body
+                        parsed.whenComplete((result, e) -> {
+                            if (e != null) {
+                                future.completeExceptionally(e);
+                            } else {
+                                future.complete(result);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+
+        // Cancelling the returned future aborts the exchange and releases its connection
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                exchange.cancel(true);
             }
         });
-
         return future;
     }
 
+    /**
+     * Returns the executor to stream the response body into the given parser on, if any.
+     * Parsers requiring streaming get the shared parser executor unless the client has an
+     * executor of its own.
+     */
+    private Optional<Executor> parserExecutor(JsonParser<?> parser) {
+        if (parser.requiresStreaming() && !parserExecutor.isPresent()) {
+            return Optional.of(ClientUtils.sharedParserExecutor());
+        }
+        return parserExecutor;
+    }
+
+    /**
+     * Returns the shorter of a configured timeout, where 0 or less means none, and the
+     * time left until the deadline.
+     */
+    private static int bounded(int timeout, int remaining) {
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Create the appropriate exception for the given HTTP status code.
      *
      * @param statusCode HTTP status code
      * @return {@link SaltException} instance
      */
-    private SaltException createSaltException(int statusCode) {
+    static SaltException createSaltException(int statusCode) {
         if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
             return new SaltUserUnauthorizedException(
                     "Salt user does not have sufficient permissions");
         }
-        return new SaltException("Response code: " + statusCode);
+        return new HttpStatusException(statusCode);
     }
 }
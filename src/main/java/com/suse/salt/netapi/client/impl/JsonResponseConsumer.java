@@ -0,0 +1,245 @@
+package com.suse.salt.netapi.client.impl;
+
+import com.suse.salt.netapi.exception.SaltException;
+import com.suse.salt.netapi.parser.JsonParser;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response consumer parsing the JSON body of a response with a {@link JsonParser}.
+ * <p>
+ * When created with an executor the body is never buffered as a whole: bytes are handed
+ * to the parser running on the executor as they arrive on the I/O reactor, and the
+ * reactor stops reading from the connection whenever the parser falls behind. Without an
+ * executor the body is buffered and parsed on the reactor thread once it is complete.
+ * <p>
+ * Bodies compressed with gzip or deflate are decompressed on the fly while being parsed.
+ *
+ * @param <T> the type the response is parsed into
+ */
+class JsonResponseConsumer<T> extends AbstractAsyncResponseConsumer<CompletableFuture<T>> {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 4096;
+
+    private final JsonParser<T> parser;
+    private final Optional<Executor> executor;
+    private final TransferStats stats;
+    private final CompletableFuture<T> parsed = new CompletableFuture<>();
+
+    private int statusCode;
+    private Optional<String> contentEncoding = Optional.empty();
+    private SharedInputBuffer stream;
+    private SimpleInputBuffer buffer;
+    private ByteBuffer scratch;
+    private boolean completed;
+
+    private volatile IOControl ioControl;
+    private volatile boolean discard;
+
+    /**
+     * Creates a new consumer.
+     *
+     * @param parser the parser for the response body
+     * @param executor executor to parse on while the body arrives, empty to buffer
+     * @param stats counters to add the size of the body to
+     */
+    JsonResponseConsumer(JsonParser<T> parser, Optional<Executor> executor,
+            TransferStats stats) {
+        this.parser = parser;
+        this.executor = executor;
+        this.stats = stats;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        statusCode = response.getStatusLine().getStatusCode();
+        Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && !"identity".equalsIgnoreCase(encoding.getValue().trim())) {
+            contentEncoding = Optional.of(encoding.getValue().trim().toLowerCase(Locale.ROOT));
+            stats.responseCompressed();
+        }
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+        if (!isSuccess()) {
+            discard = true;
+        } else if (executor.isPresent()) {
+            stream = new SharedInputBuffer(STREAM_BUFFER_SIZE);
+            executor.get().execute(this::parseStream);
+        } else {
+            long length = entity.getContentLength();
+            int capacity = length > MIN_BUFFER_SIZE && length < Integer.MAX_VALUE ?
+                    (int) length : MIN_BUFFER_SIZE;
+            buffer = new SimpleInputBuffer(capacity, HeapByteBufferAllocator.INSTANCE);
+        }
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+            throws IOException {
+        ioControl = ioctrl;
+        int read;
+        if (discard) {
+            if (scratch == null) {
+                scratch = ByteBuffer.allocate(MIN_BUFFER_SIZE);
+            }
+            int total = 0;
+            while ((read = decoder.read(scratch)) > 0) {
+                total += read;
+                scratch.clear();
+            }
+            read = total;
+        } else if (stream != null) {
+            read = stream.consumeContent(decoder, ioctrl);
+        } else {
+            read = buffer.consumeContent(decoder);
+        }
+        if (read > 0) {
+            stats.responseWireBytesReceived(read);
+        }
+    }
+
+    @Override
+    protected CompletableFuture<T> buildResult(HttpContext context) {
+        completed = true;
+        if (!isSuccess()) {
+            parsed.completeExceptionally(HttpAsyncClientImpl.createSaltException(statusCode));
+        } else if (stream != null) {
+            // Marks the end of the body, the parser completes on its own
+            stream.close();
+        } else if (buffer != null) {
+            parse(new ContentInputStream(buffer));
+        } else {
+            parsed.completeExceptionally(new SaltException("Response has no content"));
+        }
+        return parsed;
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (!completed) {
+            Exception cause = getException();
+            parsed.completeExceptionally(cause != null ? cause :
+                    new CancellationException("Response consumption was cancelled"));
+            if (stream != null) {
+                stream.shutdown();
+            }
+        }
+        buffer = null;
+    }
+
+    private boolean isSuccess() {
+        return statusCode == HttpStatus.SC_OK || statusCode == HttpStatus.SC_ACCEPTED;
+    }
+
+    private void parseStream() {
+        parse(new ContentInputStream(stream));
+        // Throw away anything the parser did not need and let the reactor read on
+        discard = true;
+        stream.shutdown();
+        IOControl control = ioControl;
+        if (control != null) {
+            control.requestInput();
+        }
+    }
+
+    private void parse(ContentInputStream content) {
+        try (CountingInputStream decoded = new CountingInputStream(decode(content))) {
+            T result;
+            try {
+                result = parser.parse(decoded);
+            } finally {
+                stats.responseBytesDecoded(decoded.count);
+            }
+            parsed.complete(result);
+        } catch (Exception e) {
+            parsed.completeExceptionally(e);
+        }
+    }
+
+    private InputStream decode(InputStream content) throws IOException, SaltException {
+        // Closing the content stream would read the whole remainder of the body
+        InputStream shielded = new FilterInputStream(content) {
+            @Override
+            public void close() {
+            }
+        };
+        if (!contentEncoding.isPresent()) {
+            return shielded;
+        }
+        switch (contentEncoding.get()) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(shielded, MIN_BUFFER_SIZE);
+            case "deflate":
+                // Handles zlib wrapped as well as raw deflate data sent by some servers
+                return new DeflateInputStream(shielded);
+            default:
+                throw new SaltException("Unsupported content encoding: " +
+                        contentEncoding.get());
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
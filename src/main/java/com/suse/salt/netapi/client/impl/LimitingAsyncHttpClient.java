@@ -0,0 +1,387 @@
+package com.suse.salt.netapi.client.impl;
+
+import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.datatypes.cherrypy.HttpServer;
+import com.suse.salt.netapi.datatypes.cherrypy.Stats;
+import com.suse.salt.netapi.exception.HttpStatusException;
+import com.suse.salt.netapi.exception.ParsingException;
+import com.suse.salt.netapi.exception.SaltException;
+import com.suse.salt.netapi.parser.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * AsyncHttpClient decorator limiting the number of requests in flight to salt-api.
+ * Requests beyond the limit wait in a queue on the client side, and are rejected with a
+ * {@link SaltException} once the queue is full.
+ * <p>
+ * The limit adapts to the latency of the responses following TCP Vegas: the lowest latency
+ * seen is taken as the one of an idle server, and the ratio to the latency of every
+ * response gives an estimate of how many requests are waiting for a CherryPy worker. While
+ * that estimate is small the limit grows, once it grows the limit shrinks, though latency
+ * alone does not take it below 6. Connection errors, timeouts and server errors shrink the
+ * limit as well.
+ * <p>
+ * The worker pool size reported by {@link com.suse.salt.netapi.client.SaltClient#stats()}
+ * can be used to bound the limit, see {@link #applyStats(Stats)}.
+ */
+public class LimitingAsyncHttpClient implements AsyncHttpClient {
+
+    /** Number of responses after which the latency of an idle server is measured anew */
+    private static final int PROBE_INTERVAL = 500;
+
+    private final AsyncHttpClient delegate;
+    private final int minLimit;
+    private final int maxQueueSize;
+    private final LongSupplier nanoClock;
+
+    private final Deque<Pending<?>> queue = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+
+    // Guarded by this
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    private long idleLatency;
+    private int samples;
+
+    private LimitingAsyncHttpClient(Builder builder, AsyncHttpClient delegate,
+            LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.limit = builder.initialLimit;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns a builder for a limiting client.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+            JsonParser<T> parser) {
+        return submit(() -> delegate.get(uri, headers, parser));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data,
+            JsonParser<T> parser) {
+        return submit(() -> delegate.post(uri, headers, data, parser));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        return submit(() -> delegate.post(uri, headers, data, parser));
+    }
+
+    /**
+     * Returns a client whose requests wait in the queue of this client and are sent with
+     * the given deadline, see {@link AsyncHttpClient#withDeadline(Deadline)}.
+     *
+     * @param deadline the deadline of the requests
+     * @return the client for the given deadline
+     */
+    @Override
+    public AsyncHttpClient withDeadline(Deadline deadline) {
+        return new QueuedClient(delegate.withDeadline(deadline)) {
+            @Override
+            <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> request) {
+                return LimitingAsyncHttpClient.this.submit(request);
+            }
+
+            @Override
+            public AsyncHttpClient withDeadline(Deadline other) {
+                return LimitingAsyncHttpClient.this.withDeadline(other);
+            }
+        };
+    }
+
+    /**
+     * Bounds the limit by the number of worker threads of the CherryPy server. As long as
+     * no response has been received yet, the limit is also set to the number of idle
+     * worker threads.
+     *
+     * @param stats statistics as returned by {@link
+     * com.suse.salt.netapi.client.SaltClient#stats()}
+     */
+    public void applyStats(Stats stats) {
+        HttpServer server = stats.getHttpServer();
+        if (server == null || server.getThreads() <= 0) {
+            return;
+        }
+        List<Pending<?>> ready;
+        synchronized (this) {
+            maxLimit = Math.max(minLimit, server.getThreads());
+            if (idleLatency == 0) {
+                limit = server.getThreadsIdle();
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, limit));
+            ready = pollReady();
+        }
+        ready.forEach(this::dispatch);
+    }
+
+    /**
+     * @return the current limit of requests in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests waiting to be sent
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of requests rejected because the queue was full
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> request) {
+        Pending<T> pending = new Pending<>(request);
+        boolean send = false;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                send = true;
+            } else if (queue.size() < maxQueueSize) {
+                queue.add(pending);
+            } else {
+                rejected.increment();
+                pending.result.completeExceptionally(new SaltException(
+                        "Too many requests waiting for salt-api: " + queue.size()));
+                return pending.result;
+            }
+        }
+        if (send) {
+            dispatch(pending);
+        } else {
+            // Requests cancelled while waiting are never sent
+            pending.result.whenComplete((result, e) -> {
+                if (pending.result.isCancelled()) {
+                    synchronized (this) {
+                        queue.remove(pending);
+                    }
+                }
+            });
+        }
+        return pending.result;
+    }
+
+    private <T> void dispatch(Pending<T> pending) {
+        if (pending.result.isDone()) {
+            complete(0, false, false);
+            return;
+        }
+        long start = nanoClock.getAsLong();
+        CompletableFuture<T> response;
+        try {
+            response = pending.request.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            complete(0, false, false);
+            pending.result.completeExceptionally(e);
+            return;
+        }
+        pending.result.whenComplete((result, e) -> {
+            if (pending.result.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+        response.whenComplete((result, e) -> {
+            complete(nanoClock.getAsLong() - start, e == null, e != null && isOverload(e));
+            if (e != null) {
+                pending.result.completeExceptionally(e);
+            } else {
+                pending.result.complete(result);
+            }
+        });
+    }
+
+    private void complete(long latency, boolean success, boolean overload) {
+        List<Pending<?>> ready;
+        synchronized (this) {
+            if (success) {
+                onSample(latency, inFlight);
+            } else if (overload) {
+                limit = Math.max(minLimit, limit - step());
+            }
+            inFlight--;
+            ready = pollReady();
+        }
+        ready.forEach(this::dispatch);
+    }
+
+    private void onSample(long latency, int requests) {
+        if (latency <= 0) {
+            return;
+        }
+        if (idleLatency == 0 || latency < idleLatency || ++samples >= PROBE_INTERVAL) {
+            idleLatency = latency;
+            samples = 0;
+        }
+        // Without enough requests in flight the limit is not what holds them back
+        if (requests * 2 < limit) {
+            return;
+        }
+        double waiting = limit * (1 - (double) idleLatency / latency);
+        double step = step();
+        if (waiting <= 3 * step) {
+            limit = Math.min(maxLimit, limit + step);
+        } else if (waiting >= 6 * step) {
+            limit = Math.max(minLimit, limit - step);
+        }
+    }
+
+    private double step() {
+        return Math.max(1, Math.log10(limit));
+    }
+
+    private List<Pending<?>> pollReady() {
+        List<Pending<?>> ready = new ArrayList<>();
+        while (inFlight < (int) limit && !queue.isEmpty()) {
+            ready.add(queue.poll());
+            inFlight++;
+        }
+        return ready;
+    }
+
+    private static boolean isOverload(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ?
+                e.getCause() : e;
+        if (cause instanceof HttpStatusException) {
+            return ((HttpStatusException) cause).isServerError();
+        }
+        // Malformed bodies and client errors say nothing about the load of the server
+        return cause instanceof IOException && !(cause instanceof ParsingException) ||
+                cause instanceof TimeoutException;
+    }
+
+    /**
+     * A request and the future its result is passed on to.
+     *
+     * @param <T> the type of the response
+     */
+    private static class Pending<T> {
+        private final Supplier<CompletionStage<T>> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Pending(Supplier<CompletionStage<T>> request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Helper class for building a {@link LimitingAsyncHttpClient}.
+     */
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueueSize = 1000;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the limit to start with, defaults to 20.
+         *
+         * @param value the initial limit
+         * @return this builder
+         */
+        public Builder withInitialLimit(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.initialLimit = value;
+            return this;
+        }
+
+        /**
+         * Sets the range the limit adapts in, defaults to 1 to 200.
+         *
+         * @param min the lowest limit
+         * @param max the highest limit
+         * @return this builder
+         */
+        public Builder withLimitRange(int min, int max) {
+            if (min <= 0 || max < min) {
+                throw new IllegalArgumentException("Expected 0 < min <= max");
+            }
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests that may wait for being sent, defaults to 1000.
+         *
+         * @param value the maximum queue size
+         * @return this builder
+         */
+        public Builder withMaxQueueSize(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Expected value not less than 0");
+            }
+            this.maxQueueSize = value;
+            return this;
+        }
+
+        /**
+         * Creates a limiting client sending requests with the given client.
+         *
+         * @param delegate the client to send requests with
+         * @return the limiting client
+         */
+        public LimitingAsyncHttpClient build(AsyncHttpClient delegate) {
+            return build(delegate, System::nanoTime);
+        }
+
+        LimitingAsyncHttpClient build(AsyncHttpClient delegate, LongSupplier nanoClock) {
+            initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+            return new LimitingAsyncHttpClient(this, delegate, nanoClock);
+        }
+    }
+}
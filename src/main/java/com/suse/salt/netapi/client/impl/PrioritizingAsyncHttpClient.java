@@ -0,0 +1,424 @@
+package com.suse.salt.netapi.client.impl;
+
+import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.client.Priority;
+import com.suse.salt.netapi.parser.JsonParser;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * AsyncHttpClient decorator admitting requests of different priorities to a shared number
+ * of connections. Every {@link Priority} has a lane with a queue of its own, and whenever a
+ * request completes the next one is taken from the lane of the highest priority. Part of
+ * the connections can be reserved for the higher priorities, so that interactive requests
+ * never wait behind bulk work.
+ * <p>
+ * The client itself sends requests of normal priority, clients for the other lanes are
+ * returned by {@link #withPriority(Priority)}. The number of requests in flight should not
+ * exceed the size of the connection pool of the delegate, otherwise requests queue there
+ * regardless of their priority.
+ */
+public class PrioritizingAsyncHttpClient implements AsyncHttpClient {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final AsyncHttpClient delegate;
+    private final LongSupplier nanoClock;
+    private final Lane[] lanes = new Lane[PRIORITIES.length];
+
+    // Guarded by this
+    private int inFlight;
+
+    private PrioritizingAsyncHttpClient(Builder builder, AsyncHttpClient delegate,
+            LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.nanoClock = nanoClock;
+        int capacity = builder.maxInFlight;
+        for (Priority priority : PRIORITIES) {
+            lanes[priority.ordinal()] = new Lane(priority, capacity);
+            capacity -= builder.reserved.getOrDefault(priority, 0);
+        }
+    }
+
+    /**
+     * Returns a builder for a prioritizing client.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+            JsonParser<T> parser) {
+        return getLane(Priority.NORMAL).get(uri, headers, parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data,
+            JsonParser<T> parser) {
+        return getLane(Priority.NORMAL).post(uri, headers, data, parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        return getLane(Priority.NORMAL).post(uri, headers, data, parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncHttpClient withPriority(Priority priority) {
+        return getLane(priority);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AsyncHttpClient withDeadline(Deadline deadline) {
+        return getLane(Priority.NORMAL).withDeadline(deadline);
+    }
+
+    /**
+     * Returns the lane of the given priority, which also provides its statistics.
+     *
+     * @param priority the priority
+     * @return the lane
+     */
+    public Lane getLane(Priority priority) {
+        return lanes[priority.ordinal()];
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private <T> void dispatch(Lane lane, Pending<T> pending) {
+        if (pending.result.isDone()) {
+            complete();
+            return;
+        }
+        CompletableFuture<T> response;
+        try {
+            response = pending.request.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            complete();
+            pending.result.completeExceptionally(e);
+            return;
+        }
+        pending.result.whenComplete((result, e) -> {
+            if (pending.result.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+        response.whenComplete((result, e) -> {
+            complete();
+            if (e != null) {
+                pending.result.completeExceptionally(e);
+            } else {
+                pending.result.complete(result);
+            }
+        });
+    }
+
+    private void complete() {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            for (Lane lane : lanes) {
+                lane.pollReady(ready);
+            }
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    /**
+     * A request and the future its result is passed on to.
+     *
+     * @param <T> the type of the response
+     */
+    private static class Pending<T> {
+        private final Supplier<CompletionStage<T>> request;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long enqueued;
+
+        Pending(Supplier<CompletionStage<T>> request, long enqueued) {
+            this.request = request;
+            this.enqueued = enqueued;
+        }
+    }
+
+    /**
+     * Client sending requests of one priority, holding the queue and the statistics of
+     * its lane.
+     */
+    public final class Lane implements AsyncHttpClient {
+        private final Priority priority;
+        private final int capacity;
+
+        // Guarded by the enclosing client
+        private final Deque<Pending<?>> queue = new ArrayDeque<>();
+        private long dispatched;
+        private long queueNanos;
+        private long maxQueueNanos;
+
+        private Lane(Priority priority, int capacity) {
+            this.priority = priority;
+            this.capacity = capacity;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+                JsonParser<T> parser) {
+            return submit(() -> delegate.get(uri, headers, parser));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T> CompletionStage<T> post(URI uri, Map<String, String> headers,
+                String data, JsonParser<T> parser) {
+            return submit(() -> delegate.post(uri, headers, data, parser));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T> CompletionStage<T> post(URI uri, Map<String, String> headers,
+                byte[] data, JsonParser<T> parser) {
+            return submit(() -> delegate.post(uri, headers, data, parser));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public AsyncHttpClient withPriority(Priority other) {
+            return getLane(other);
+        }
+
+        /**
+         * Returns a client whose requests wait in this lane and are sent with the given
+         * deadline, see {@link AsyncHttpClient#withDeadline(Deadline)}.
+         *
+         * @param deadline the deadline of the requests
+         * @return the client for the given deadline
+         */
+        @Override
+        public AsyncHttpClient withDeadline(Deadline deadline) {
+            return new QueuedClient(delegate.withDeadline(deadline)) {
+                @Override
+                <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> request) {
+                    return Lane.this.submit(request);
+                }
+
+                @Override
+                public AsyncHttpClient withPriority(Priority other) {
+                    return getLane(other).withDeadline(deadline);
+                }
+
+                @Override
+                public AsyncHttpClient withDeadline(Deadline other) {
+                    return Lane.this.withDeadline(other);
+                }
+            };
+        }
+
+        /**
+         * @return the priority of this lane
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return the number of requests in flight this lane may use at most
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * @return the number of requests waiting to be sent
+         */
+        public int getQueueDepth() {
+            synchronized (PrioritizingAsyncHttpClient.this) {
+                return queue.size();
+            }
+        }
+
+        /**
+         * @return the number of requests sent
+         */
+        public long getDispatched() {
+            synchronized (PrioritizingAsyncHttpClient.this) {
+                return dispatched;
+            }
+        }
+
+        /**
+         * @return the average time in milliseconds requests waited before being sent
+         */
+        public double getAverageQueueTimeMillis() {
+            synchronized (PrioritizingAsyncHttpClient.this) {
+                return dispatched == 0 ? 0 :
+                        (double) queueNanos / dispatched / TimeUnit.MILLISECONDS.toNanos(1);
+            }
+        }
+
+        /**
+         * @return the longest time in milliseconds a request waited before being sent
+         */
+        public long getMaxQueueTimeMillis() {
+            synchronized (PrioritizingAsyncHttpClient.this) {
+                return TimeUnit.NANOSECONDS.toMillis(maxQueueNanos);
+            }
+        }
+
+        private <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> request) {
+            Pending<T> pending = new Pending<>(request, nanoClock.getAsLong());
+            boolean send = false;
+            synchronized (PrioritizingAsyncHttpClient.this) {
+                if (queue.isEmpty() && inFlight < capacity) {
+                    inFlight++;
+                    record(pending);
+                    send = true;
+                } else {
+                    queue.add(pending);
+                }
+            }
+            if (send) {
+                dispatch(this, pending);
+            } else {
+                // Requests cancelled while waiting are never sent
+                pending.result.whenComplete((result, e) -> {
+                    if (pending.result.isCancelled()) {
+                        synchronized (PrioritizingAsyncHttpClient.this) {
+                            queue.remove(pending);
+                        }
+                    }
+                });
+            }
+            return pending.result;
+        }
+
+        // Must be called holding the lock of the enclosing client
+        private void pollReady(List<Runnable> ready) {
+            while (!queue.isEmpty() && inFlight < capacity) {
+                Pending<?> pending = queue.poll();
+                inFlight++;
+                record(pending);
+                ready.add(() -> dispatch(this, pending));
+            }
+        }
+
+        // Must be called holding the lock of the enclosing client
+        private void record(Pending<?> pending) {
+            long waited = nanoClock.getAsLong() - pending.enqueued;
+            dispatched++;
+            queueNanos += waited;
+            maxQueueNanos = Math.max(maxQueueNanos, waited);
+        }
+    }
+
+    /**
+     * Helper class for building a {@link PrioritizingAsyncHttpClient}.
+     */
+    public static class Builder {
+        private int maxInFlight = 20;
+        private final Map<Priority, Integer> reserved = new EnumMap<>(Priority.class);
+
+        private Builder() {
+            reserved.put(Priority.HIGH, 4);
+        }
+
+        /**
+         * Sets the number of requests in flight across all lanes, defaults to 20 like the
+         * connection pool of {@link com.suse.salt.netapi.utils.HttpClientUtils}.
+         *
+         * @param value the maximum number of requests in flight
+         * @return this builder
+         */
+        public Builder withMaxInFlight(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.maxInFlight = value;
+            return this;
+        }
+
+        /**
+         * Reserves a number of requests in flight for the given priority and the ones
+         * above it, which lower priorities can not use. Defaults to 4 for
+         * {@link Priority#HIGH} and none for the others.
+         *
+         * @param priority the priority
+         * @param value the number of requests in flight to reserve
+         * @return this builder
+         */
+        public Builder withReserved(Priority priority, int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Expected value not less than 0");
+            }
+            reserved.put(priority, value);
+            return this;
+        }
+
+        /**
+         * Creates a prioritizing client sending requests with the given client.
+         *
+         * @param delegate the client to send requests with
+         * @return the prioritizing client
+         */
+        public PrioritizingAsyncHttpClient build(AsyncHttpClient delegate) {
+            return build(delegate, System::nanoTime);
+        }
+
+        PrioritizingAsyncHttpClient build(AsyncHttpClient delegate, LongSupplier nanoClock) {
+            int total = 0;
+            for (Priority priority : PRIORITIES) {
+                if (priority != PRIORITIES[PRIORITIES.length - 1]) {
+                    total += reserved.getOrDefault(priority, 0);
+                }
+            }
+            if (total >= maxInFlight) {
+                throw new IllegalArgumentException(
+                        "Reservations leave no capacity for the lowest priority");
+            }
+            return new PrioritizingAsyncHttpClient(this, delegate, nanoClock);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.suse.salt.netapi.client.impl;
+
+import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.parser.JsonParser;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Client queueing its requests in a client it was derived from, and sending them through
+ * a client of its own once they leave the queue. Used by the queueing clients for the
+ * clients returned by {@link AsyncHttpClient#withDeadline}.
+ */
+abstract class QueuedClient implements AsyncHttpClient {
+
+    private final AsyncHttpClient target;
+
+    /**
+     * Creates a client sending requests through the given client.
+     *
+     * @param target the client to send requests through
+     */
+    QueuedClient(AsyncHttpClient target) {
+        this.target = target;
+    }
+
+    /**
+     * Queues a request.
+     *
+     * @param <T> the type of the response
+     * @param request sends the request once it leaves the queue
+     * @return CompletionStage holding the response
+     */
+    abstract <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> request);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+            JsonParser<T> parser) {
+        return submit(() -> target.get(uri, headers, parser));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data,
+            JsonParser<T> parser) {
+        return submit(() -> target.post(uri, headers, data, parser));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        return submit(() -> target.post(uri, headers, data, parser));
+    }
+}
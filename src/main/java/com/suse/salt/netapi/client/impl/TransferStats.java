@@ -0,0 +1,101 @@
+package com.suse.salt.netapi.client.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Byte counters of the requests and responses sent and received by an
+ * {@link HttpAsyncClientImpl}. Bytes on the wire are those of the possibly compressed
+ * message bodies, decoded bytes are those before compression respectively after
+ * decompression. Headers are not counted.
+ */
+public class TransferStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder requestWireBytes = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder responseWireBytes = new LongAdder();
+
+    void requestSent(long bytes, long wireBytes, boolean compressed) {
+        requests.increment();
+        requestBytes.add(bytes);
+        requestWireBytes.add(wireBytes);
+        if (compressed) {
+            compressedRequests.increment();
+        }
+    }
+
+    void responseCompressed() {
+        compressedResponses.increment();
+    }
+
+    void responseWireBytesReceived(long bytes) {
+        responseWireBytes.add(bytes);
+    }
+
+    void responseBytesDecoded(long bytes) {
+        responseBytes.add(bytes);
+    }
+
+    /**
+     * @return the number of requests sent
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of requests sent with a compressed body
+     */
+    public long getCompressedRequests() {
+        return compressedRequests.sum();
+    }
+
+    /**
+     * @return the size of all request bodies before compression
+     */
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    /**
+     * @return the size of all request bodies as sent on the wire
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.sum();
+    }
+
+    /**
+     * @return the number of responses received with a compressed body
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * @return the size of all response bodies read by the parsers after decompression
+     */
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    /**
+     * @return the size of all response bodies as received on the wire
+     */
+    public long getResponseWireBytes() {
+        return responseWireBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TransferStats(requests=" + getRequests() +
+                ", compressedRequests=" + getCompressedRequests() +
+                ", requestBytes=" + getRequestBytes() +
+                ", requestWireBytes=" + getRequestWireBytes() +
+                ", compressedResponses=" + getCompressedResponses() +
+                ", responseBytes=" + getResponseBytes() +
+                ", responseWireBytes=" + getResponseWireBytes() + ")";
+    }
+}
@@ -5,7 +5,7 @@ import com.google.gson.reflect.TypeToken;
 
 import java.util.Map;
 
-import static com.suse.salt.netapi.parser.JsonParser.GSON;
+import static com.suse.salt.netapi.parser.JsonParser.CODEC;
 
 /**
  * Parse events into objects.
@@ -30,7 +30,7 @@ public class Event {
      * @return the data
      */
     public <R> R getData(TypeToken<R> dataType) {
-        return GSON.fromJson(data, dataType.getType());
+        return CODEC.decode(data, dataType.getType());
     }
 
     /**
@@ -40,7 +40,7 @@ public class Event {
      * @return the data
      */
     public <R> R getData(Class<R> dataType) {
-        return GSON.fromJson(data, dataType);
+        return CODEC.decode(data, dataType);
     }
 
     /**
@@ -49,6 +49,6 @@ public class Event {
      */
     public Map<String, Object> getData() {
         TypeToken<Map<String, Object>> typeToken = new TypeToken<Map<String, Object>>() {};
-        return GSON.fromJson(data, typeToken.getType());
+        return CODEC.decode(data, typeToken.getType());
     }
 }
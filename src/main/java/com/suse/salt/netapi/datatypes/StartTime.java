@@ -18,8 +18,11 @@ public class StartTime {
     private transient final Date defaultTzDate;
 
     // StartTime example from API: "2015, Mar 04 19:28:29.724698"
-    private transient final SimpleDateFormat startJobDateFormat =
-            new SimpleDateFormat("yyyy, MMM dd HH:mm:ss.SSS", Locale.US);
+    // Creating the format is expensive and there may be thousands of jobs in a response,
+    // formats are not thread safe however, so every thread gets its own
+    private static final ThreadLocal<SimpleDateFormat> START_JOB_DATE_FORMAT =
+            ThreadLocal.withInitial(() ->
+                    new SimpleDateFormat("yyyy, MMM dd HH:mm:ss.SSS", Locale.US));
 
     /**
      * Construct a {@link StartTime} from a date given as string.
@@ -30,7 +33,7 @@ public class StartTime {
     public StartTime(String dateString) throws ParsingException {
         try {
             if (dateString != null) {
-                this.defaultTzDate = startJobDateFormat.parse(dateString);
+                this.defaultTzDate = parse(dateString, TimeZone.getDefault());
             } else {
                 this.defaultTzDate = null;
             }
@@ -48,14 +51,13 @@ public class StartTime {
      * @param tz TimeZone associated with master.
      * @return {@link Date} representation of StartTime at provided timezone
      */
-    public synchronized Date getDate(TimeZone tz) {
+    public Date getDate(TimeZone tz) {
         if (dateString == null) {
             return null;
         }
 
-        startJobDateFormat.setTimeZone(tz);
         try {
-            return startJobDateFormat.parse(dateString);
+            return parse(dateString, tz);
         } catch (ParseException e) {
             // This exception should not be possible. Even when dealing with TZ DST
             // transitions, all dates exist. Time that does not exist because of
@@ -77,6 +79,12 @@ public class StartTime {
         return defaultTzDate;
     }
 
+    private static Date parse(String dateString, TimeZone tz) throws ParseException {
+        SimpleDateFormat format = START_JOB_DATE_FORMAT.get();
+        format.setTimeZone(tz);
+        return format.parse(dateString);
+    }
+
     /**
      * Returns a string representation of StartTime. This is the same string that is
      * passed to the constructor.
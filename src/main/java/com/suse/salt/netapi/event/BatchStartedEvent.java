@@ -1,11 +1,11 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.List;
@@ -19,7 +19,7 @@ import java.util.regex.Pattern;
 public class BatchStartedEvent {
 
     private static final Pattern PATTERN = Pattern.compile("^salt/batch/([^/]+)/start$");
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     private String jobId;
     private Data data;
@@ -92,7 +92,7 @@ public class BatchStartedEvent {
         public Optional<Object> getMetadata() {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, Object.class));
+                    return Optional.ofNullable(CODEC.decode(md, Object.class));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -102,7 +102,7 @@ public class BatchStartedEvent {
         public <R> Optional<R> getMetadata(Class<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType));
+                    return Optional.ofNullable(CODEC.decode(md, dataType));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -112,7 +112,7 @@ public class BatchStartedEvent {
         public <R> Optional<R> getMetadata(TypeToken<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType.getType()));
+                    return Optional.ofNullable(CODEC.decode(md, dataType.getType()));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
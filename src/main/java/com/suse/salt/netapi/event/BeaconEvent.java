@@ -1,9 +1,9 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.Map;
@@ -18,7 +18,7 @@ public class BeaconEvent {
     private static final Pattern PATTERN =
             Pattern.compile("^salt/beacon/([^/]+)/([^/]+)/(.*)$");
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     private final String beacon;
     private final String minionId;
@@ -74,7 +74,7 @@ public class BeaconEvent {
      * @return the event data
      */
     public <R> R getData(TypeToken<R> type) {
-        return GSON.fromJson(data, type.getType());
+        return CODEC.decode(data, type.getType());
     }
 
     /**
@@ -84,7 +84,7 @@ public class BeaconEvent {
      * @return the data
      */
     public <R> R getData(Class<R> type) {
-        return GSON.fromJson(data, type);
+        return CODEC.decode(data, type);
     }
 
     /**
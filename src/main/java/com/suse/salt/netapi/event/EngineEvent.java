@@ -1,10 +1,10 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.Map;
@@ -18,7 +18,7 @@ import java.util.regex.Pattern;
 public class EngineEvent {
     private static final Pattern PATTERN = Pattern.compile("^salt/engines/([^/]+)/(.*)$");
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     private final String engine;
     private final String timestamp;
@@ -88,7 +88,7 @@ public class EngineEvent {
      * @return the event data
      */
     public <R> R getData(TypeToken<R> type) {
-        return GSON.fromJson(data, type.getType());
+        return CODEC.decode(data, type.getType());
     }
 
     /**
@@ -98,7 +98,7 @@ public class EngineEvent {
      * @return the data
      */
     public <R> R getData(Class<R> type) {
-        return GSON.fromJson(data, type);
+        return CODEC.decode(data, type);
     }
 
     /**
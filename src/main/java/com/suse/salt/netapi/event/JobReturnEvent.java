@@ -1,11 +1,11 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.Optional;
@@ -24,7 +24,7 @@ public class JobReturnEvent {
     private final String minionId;
     private final Data data;
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     /**
      * Data object of the job return event
@@ -84,21 +84,21 @@ public class JobReturnEvent {
         }
 
         public Object getResult() {
-            return GSON.fromJson(result, Object.class);
+            return CODEC.decode(result, Object.class);
         }
 
         public <R> R getResult(Class<R> dataType) {
-            return GSON.fromJson(result, dataType);
+            return CODEC.decode(result, dataType);
         }
 
         public <R> R getResult(TypeToken<R> dataType) {
-            return GSON.fromJson(result, dataType.getType());
+            return CODEC.decode(result, dataType.getType());
         }
 
         public Optional<Object> getMetadata() {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, Object.class));
+                    return Optional.ofNullable(CODEC.decode(md, Object.class));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -108,7 +108,7 @@ public class JobReturnEvent {
         public <R> Optional<R> getMetadata(Class<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType));
+                    return Optional.ofNullable(CODEC.decode(md, dataType));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -118,7 +118,7 @@ public class JobReturnEvent {
         public <R> Optional<R> getMetadata(TypeToken<R> dataType) {
             return metadata.flatMap(md -> {
                 try {
-                    return Optional.ofNullable(GSON.fromJson(md, dataType.getType()));
+                    return Optional.ofNullable(CODEC.decode(md, dataType.getType()));
                 } catch (JsonSyntaxException ex) {
                     return Optional.empty();
                 }
@@ -1,9 +1,9 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.Map;
@@ -19,7 +19,7 @@ public class ResultEvent {
     private static final Pattern PATTERN =
             Pattern.compile("^salt/job/(\\d{20})/ret/([^/]+)$");
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     private final String jid;
     private final String minionId;
@@ -71,7 +71,7 @@ public class ResultEvent {
      * @return the event data
      */
     public <R> R getData(TypeToken<R> type) {
-        return GSON.fromJson(data, type.getType());
+        return CODEC.decode(data, type.getType());
     }
 
     /**
@@ -81,7 +81,7 @@ public class ResultEvent {
      * @return the data
      */
     public <R> R getData(Class<R> type) {
-        return GSON.fromJson(data, type);
+        return CODEC.decode(data, type);
     }
 
     /**
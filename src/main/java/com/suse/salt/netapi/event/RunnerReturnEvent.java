@@ -1,10 +1,10 @@
 package com.suse.salt.netapi.event;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.parser.JsonCodec;
 import com.suse.salt.netapi.parser.JsonParser;
 
 import java.util.Optional;
@@ -22,7 +22,7 @@ public class RunnerReturnEvent {
     private final String jobId;
     private final Data data;
 
-    private static final Gson GSON = JsonParser.GSON;
+    private static final JsonCodec CODEC = JsonParser.CODEC;
 
     /**
      * Data object of the job return event
@@ -58,15 +58,15 @@ public class RunnerReturnEvent {
         }
 
         public Object getResult() {
-            return GSON.fromJson(result, Object.class);
+            return CODEC.decode(result, Object.class);
         }
 
         public <R> R getResult(Class<R> dataType) {
-            return GSON.fromJson(result, dataType);
+            return CODEC.decode(result, dataType);
         }
 
         public <R> R getResult(TypeToken<R> dataType) {
-            return GSON.fromJson(result, dataType.getType());
+            return CODEC.decode(result, dataType.getType());
         }
     }
 
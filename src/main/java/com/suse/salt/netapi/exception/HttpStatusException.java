@@ -0,0 +1,37 @@
+package com.suse.salt.netapi.exception;
+
+/**
+ * Exception to be thrown in case salt-api responds with an unexpected HTTP status code.
+ */
+public class HttpStatusException extends SaltException {
+
+    private final int statusCode;
+
+    /**
+     * Constructor expecting the status code of the response.
+     *
+     * @param statusCode the HTTP status code
+     */
+    public HttpStatusException(int statusCode) {
+        super("Response code: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Return the HTTP status code of the response.
+     *
+     * @return the HTTP status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Return whether the status code denotes an error on the server side.
+     *
+     * @return true for status codes 5xx
+     */
+    public boolean isServerError() {
+        return statusCode >= 500 && statusCode < 600;
+    }
+}
@@ -0,0 +1,41 @@
+package com.suse.salt.netapi.exception;
+
+/**
+ * Exception for when a call is not sent because its principal or tenant exceeded its
+ * rate limit, see {@link com.suse.salt.netapi.client.RateLimiter}.
+ */
+public class RateLimitException extends SaltException {
+
+    private final String key;
+    private final long retryAfterMillis;
+
+    /**
+     * Constructor expecting the throttled key and when to try again.
+     *
+     * @param key the principal or tenant the call was throttled for
+     * @param retryAfterMillis time in milliseconds until the call would be admitted
+     */
+    public RateLimitException(String key, long retryAfterMillis) {
+        super("Rate limit exceeded for " + key + ", retry after " + retryAfterMillis + " ms");
+        this.key = key;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Return the principal or tenant the call was throttled for.
+     *
+     * @return the key of the rate limit
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Return the time until a call of the same size would be admitted.
+     *
+     * @return the time in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
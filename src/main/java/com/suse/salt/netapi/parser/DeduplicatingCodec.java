@@ -0,0 +1,160 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.Optional;
+
+/**
+ * {@link JsonCodec} for responses with many equal values, like inventories of many
+ * minions: names of operating systems, packages, versions, vendors or architectures repeat
+ * across minions and packages. It uses the type adapters of {@link JsonParser#GSON}, but
+ * every string and name decoded from a response is looked up in a {@link StringTable} and
+ * replaced with the equal string decoded before, including strings in maps of objects
+ * without a declared type. Values declared as {@code Optional<String>} share the
+ * {@link Optional} as well. The table is bounded, see {@link #getStringTable()} for the
+ * hit rate and the bytes saved, which leave out names of fields and keys of maps.
+ * <p>
+ * Only documents decoded by this codec are deduplicated, not readers passed to
+ * {@link #read(JsonReader, Type)} or trees passed to
+ * {@link #decode(com.google.gson.JsonElement, Type)}.
+ * <p>
+ * To enable it, register this class as provider of {@link JsonCodec} in
+ * {@code META-INF/services}, or pass it to
+ * {@link JsonParser#JsonParser(com.google.gson.reflect.TypeToken, JsonCodec)}.
+ */
+public class DeduplicatingCodec extends GsonCodec {
+
+    private final StringTable table;
+
+    /**
+     * Creates the codec with a table of the default size.
+     */
+    public DeduplicatingCodec() {
+        this(new StringTable());
+    }
+
+    /**
+     * Creates the codec with the given table, which may be shared with other codecs.
+     *
+     * @param table the table of strings
+     */
+    public DeduplicatingCodec(StringTable table) {
+        super(JsonParser.gsonBuilder()
+                .registerTypeAdapterFactory(new OptionalStringTypeAdapterFactory(table))
+                .create(), new GsonBuilder().create());
+        this.table = table;
+    }
+
+    /**
+     * @return the table of strings of this codec
+     */
+    public StringTable getStringTable() {
+        return table;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(Reader json, Type type) {
+        JsonReader reader = new DeduplicatingReader(json, table);
+        T value = getDecoder().fromJson(reader, type);
+        // Reject trailing data like Gson does
+        try {
+            if (value != null && reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonIOException("JSON document was not fully consumed.");
+            }
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(String json, Type type) {
+        return decode(new StringReader(json), type);
+    }
+
+    /**
+     * Reader replacing strings and names with the equal ones from the table.
+     */
+    private static final class DeduplicatingReader extends JsonReader {
+        private final StringTable table;
+
+        DeduplicatingReader(Reader in, StringTable table) {
+            super(in);
+            this.table = table;
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return table.internName(super.nextName());
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            // Numbers read as strings are usually converted, they are not kept
+            boolean isString = peek() == JsonToken.STRING;
+            String value = super.nextString();
+            return isString ? table.intern(value) : value;
+        }
+    }
+
+    /**
+     * Creates adapters for {@code Optional<String>} sharing the optionals of the table.
+     */
+    private static final class OptionalStringTypeAdapterFactory implements TypeAdapterFactory {
+        private static final TypeToken<?> OPTIONAL_STRING =
+                TypeToken.getParameterized(Optional.class, String.class);
+
+        private final StringTable table;
+
+        OptionalStringTypeAdapterFactory(StringTable table) {
+            this.table = table;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            if (!OPTIONAL_STRING.equals(typeToken)) {
+                return null;
+            }
+            TypeAdapter<Optional<String>> delegate =
+                    (TypeAdapter<Optional<String>>) gson.getDelegateAdapter(this, typeToken);
+            return (TypeAdapter<T>) new TypeAdapter<Optional<String>>() {
+                @Override
+                public Optional<String> read(JsonReader in) throws IOException {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return Optional.empty();
+                    }
+                    return table.optionalOf(in.nextString());
+                }
+
+                @Override
+                public void write(JsonWriter out, Optional<String> value) throws IOException {
+                    delegate.write(out, value);
+                }
+            };
+        }
+    }
+}
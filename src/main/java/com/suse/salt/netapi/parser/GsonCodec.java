@@ -0,0 +1,97 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+/**
+ * Default {@link JsonCodec} delegating to Gson. Responses and events are decoded with the
+ * type adapters of {@link JsonParser#GSON}, requests are encoded with a Gson instance
+ * without them.
+ */
+public class GsonCodec implements JsonCodec {
+
+    private final Gson decoder;
+    private final Gson encoder;
+
+    /**
+     * Creates a codec with the type adapters of {@link JsonParser#GSON}.
+     */
+    public GsonCodec() {
+        this(JsonParser.GSON, new GsonBuilder().create());
+    }
+
+    /**
+     * Creates a codec with the given Gson instances.
+     *
+     * @param decoder Gson instance to decode with
+     * @param encoder Gson instance to encode with
+     */
+    public GsonCodec(Gson decoder, Gson encoder) {
+        this.decoder = decoder;
+        this.encoder = encoder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(Reader json, Type type) {
+        return decoder.fromJson(json, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(String json, Type type) {
+        return decoder.fromJson(json, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(JsonElement json, Type type) {
+        return decoder.fromJson(json, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T read(JsonReader reader, Type type) throws IOException {
+        return (T) decoder.getAdapter(TypeToken.get(type)).read(reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(Object value, Type type, JsonWriter writer) {
+        encoder.toJson(value, type, writer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String encode(Object value) {
+        return encoder.toJson(value);
+    }
+
+    /**
+     * @return the Gson instance decoding responses and events
+     */
+    protected Gson getDecoder() {
+        return decoder;
+    }
+}
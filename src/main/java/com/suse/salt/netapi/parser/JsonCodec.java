@@ -0,0 +1,114 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Service provider interface for turning JSON into objects and back. Responses, request
+ * bodies and events are all handled through the codec of {@link JsonParser#CODEC}, which
+ * is the first implementation registered with {@link java.util.ServiceLoader} or a
+ * {@link GsonCodec} if there is none.
+ * <p>
+ * The datatypes of this library are mapped by Gson type adapters, codecs therefore work
+ * with the streaming and tree types of Gson: they decide how JSON text is read and
+ * written, and how type adapters are looked up and configured. Decoding failures are
+ * reported with the exceptions of Gson, e.g. {@link com.google.gson.JsonSyntaxException}.
+ */
+public interface JsonCodec {
+
+    /**
+     * Reads a JSON document.
+     *
+     * @param <T> the type to decode into
+     * @param json the JSON document
+     * @param type the type to decode into
+     * @return the decoded object, null for an empty document
+     */
+    <T> T decode(Reader json, Type type);
+
+    /**
+     * Reads a JSON document encoded in UTF-8.
+     *
+     * @param <T> the type to decode into
+     * @param json the JSON document
+     * @param type the type to decode into
+     * @return the decoded object, null for an empty document
+     */
+    default <T> T decode(InputStream json, Type type) {
+        return decode(new BufferedReader(new InputStreamReader(json, StandardCharsets.UTF_8)),
+                type);
+    }
+
+    /**
+     * Reads a JSON document given as string.
+     *
+     * @param <T> the type to decode into
+     * @param json the JSON document
+     * @param type the type to decode into
+     * @return the decoded object, null for an empty document
+     */
+    default <T> T decode(String json, Type type) {
+        return decode(new StringReader(json), type);
+    }
+
+    /**
+     * Converts a JSON tree that was kept, e.g. the data of an event.
+     *
+     * @param <T> the type to decode into
+     * @param json the JSON tree
+     * @param type the type to decode into
+     * @return the decoded object
+     */
+    <T> T decode(JsonElement json, Type type);
+
+    /**
+     * Reads the next value of a document read by the caller.
+     *
+     * @param <T> the type to decode into
+     * @param reader the reader positioned at the value
+     * @param type the type to decode into
+     * @return the decoded object
+     * @throws IOException if reading fails
+     */
+    <T> T read(JsonReader reader, Type type) throws IOException;
+
+    /**
+     * Writes a value into a document written by the caller.
+     *
+     * @param value the value
+     * @param type the type to encode the value as
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    void write(Object value, Type type, JsonWriter writer) throws IOException;
+
+    /**
+     * Encodes a value into a JSON document.
+     *
+     * @param value the value
+     * @return the JSON document
+     */
+    default String encode(Object value) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(json);
+            write(value, value == null ? Object.class : value.getClass(), writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+}
@@ -11,15 +11,14 @@ import com.google.gson.reflect.TypeToken;
 import com.suse.salt.netapi.results.Return;
 import com.suse.salt.netapi.results.Result;
 import com.suse.salt.netapi.results.SSHRawResult;
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 
 /**
  * Parser for Salt API responses.
@@ -28,25 +27,10 @@ import java.util.Map;
  */
 public class JsonParser<T> {
 
-    public static final Gson GSON = new GsonBuilder()
-            // null rejecting strict variants for primitives
-            .registerTypeAdapter(String.class, Adapters.STRING)
-            .registerTypeAdapter(Boolean.class, Adapters.BOOLEAN)
-            .registerTypeAdapter(Integer.class, Adapters.INTEGER)
-            .registerTypeAdapter(Long.class, Adapters.LONG)
-            .registerTypeAdapter(Double.class, Adapters.DOUBLE)
-            .registerTypeAdapter(Date.class, new DateAdapter().nullSafe())
-            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeISOAdapter())
-            .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeISOAdapter())
-            .registerTypeAdapter(StartTime.class, new StartTimeAdapter().nullSafe())
-            .registerTypeAdapter(Stats.class, new StatsAdapter())
-            .registerTypeAdapter(Arguments.class, new ArgumentsAdapter())
-            .registerTypeAdapterFactory(new OptionalTypeAdapterFactory())
-            .registerTypeAdapterFactory(new ResultSSHResultTypeAdapterFactory())
-            .registerTypeAdapterFactory(new XorTypeAdapterFactory())
-            .registerTypeAdapterFactory(new ResultTypeAdapterFactory())
-            .registerTypeAdapterFactory(new CollectionTypeAdapterFactory())
-            .create();
+    public static final Gson GSON = gsonBuilder().create();
+
+    /** Codec used for responses, requests and events, see {@link JsonCodec} */
+    public static final JsonCodec CODEC = loadCodec();
 
     public static final JsonParser<Return<String>> STRING =
             new JsonParser<>(new TypeToken<Return<String>>(){});
@@ -65,7 +49,7 @@ public class JsonParser<T> {
             new JsonParser<>(new TypeToken<Event>(){});
 
     private final TypeToken<T> type;
-    private final Gson gson;
+    private final JsonCodec codec;
 
     /**
      * Created a new JsonParser for the given type.
@@ -73,7 +57,7 @@ public class JsonParser<T> {
      * @param type A TypeToken describing the type this parser produces.
      */
     public JsonParser(TypeToken<T> type) {
-        this(type, GSON);
+        this(type, CODEC);
     }
 
     /**
@@ -83,8 +67,45 @@ public class JsonParser<T> {
      * @param gson Gson instance to use for parsing.
      */
     public JsonParser(TypeToken<T> type, Gson gson) {
+        this(type, new GsonCodec(gson, new GsonBuilder().create()));
+    }
+
+    /**
+     * Created a new JsonParser for the given type.
+     *
+     * @param type A TypeToken describing the type this parser produces.
+     * @param codec codec to use for parsing.
+     */
+    public JsonParser(TypeToken<T> type, JsonCodec codec) {
         this.type = type;
-        this.gson = gson;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns a builder holding the type adapters of {@link #GSON}.
+     *
+     * @return a new GsonBuilder
+     */
+    static GsonBuilder gsonBuilder() {
+        return new GsonBuilder()
+                // null rejecting strict variants for primitives
+                .registerTypeAdapter(String.class, Adapters.STRING)
+                .registerTypeAdapter(Boolean.class, Adapters.BOOLEAN)
+                .registerTypeAdapter(Integer.class, Adapters.INTEGER)
+                .registerTypeAdapter(Long.class, Adapters.LONG)
+                .registerTypeAdapter(Double.class, Adapters.DOUBLE)
+                .registerTypeAdapter(Date.class, new DateAdapter().nullSafe())
+                .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeISOAdapter())
+                .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeISOAdapter())
+                .registerTypeAdapter(StartTime.class, new StartTimeAdapter().nullSafe())
+                .registerTypeAdapter(Stats.class, new StatsAdapter())
+                .registerTypeAdapter(Arguments.class, new ArgumentsAdapter())
+                .registerTypeAdapterFactory(new OptionalTypeAdapterFactory())
+                .registerTypeAdapterFactory(new ResultSSHResultTypeAdapterFactory())
+                .registerTypeAdapterFactory(new XorTypeAdapterFactory())
+                .registerTypeAdapterFactory(new ResultTypeAdapterFactory())
+                .registerTypeAdapterFactory(new CollectionTypeAdapterFactory())
+                .registerTypeAdapterFactory(new MapTypeAdapterFactory());
     }
 
     /**
@@ -93,11 +114,8 @@ public class JsonParser<T> {
      * @return The parsed value.
      */
     public T parse(InputStream inputStream) {
-        Reader inputStreamReader = new InputStreamReader(inputStream);
-        Reader streamReader = new BufferedReader(inputStreamReader);
-
         // Parse result type from the returned JSON
-        return gson.fromJson(streamReader, type.getType());
+        return codec.decode(inputStream, type.getType());
     }
 
     /**
@@ -106,7 +124,31 @@ public class JsonParser<T> {
      * @return The parsed object
      */
     public T parse(String jsonString) {
-        return gson.fromJson(jsonString, type.getType());
+        return codec.decode(jsonString, type.getType());
+    }
+
+    /**
+     * Tells whether response bodies must be streamed into this parser while they are
+     * received instead of being buffered as a whole first, because the parser keeps large
+     * bodies off the heap. Clients buffering response bodies by default stream them into
+     * such parsers on {@link com.suse.salt.netapi.utils.ClientUtils#sharedParserExecutor()}.
+     *
+     * @return true if the body must not be buffered before it is parsed
+     */
+    public boolean requiresStreaming() {
+        return false;
+    }
+
+    /**
+     * @return the codec this parser decodes with
+     */
+    protected JsonCodec getCodec() {
+        return codec;
+    }
+
+    private static JsonCodec loadCodec() {
+        Iterator<JsonCodec> codecs = ServiceLoader.load(JsonCodec.class).iterator();
+        return codecs.hasNext() ? codecs.next() : new GsonCodec();
     }
 
 }
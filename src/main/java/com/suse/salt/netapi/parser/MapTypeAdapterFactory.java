@@ -0,0 +1,97 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.internal.ConstructorConstructor;
+import com.google.gson.internal.ObjectConstructor;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adapt maps with string keys from JSON objects, taking the keys straight from the names
+ * of the object. Gson reads the keys through the key adapter instead, turning names into
+ * values in the internals of {@link JsonReader}, which only works with the readers of
+ * Gson. The maps are created and filled like Gson does, other maps and writing are left
+ * to the adapter of Gson.
+ */
+public class MapTypeAdapterFactory implements TypeAdapterFactory {
+    private final ConstructorConstructor constructorConstructor;
+
+    public MapTypeAdapterFactory() {
+        this.constructorConstructor = new ConstructorConstructor(new HashMap<>());
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+        Type type = typeToken.getType();
+
+        Class<? super T> rawType = typeToken.getRawType();
+        if (!Map.class.isAssignableFrom(rawType)) {
+            return null;
+        }
+        Type[] keyAndValueTypes = $Gson$Types.getMapKeyAndValueTypes(type, rawType);
+        if (keyAndValueTypes[0] != String.class) {
+            return null;
+        }
+
+        TypeAdapter<?> valueTypeAdapter = gson.getAdapter(TypeToken.get(keyAndValueTypes[1]));
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, typeToken);
+        ObjectConstructor<T> constructor = constructorConstructor.get(typeToken);
+
+        TypeAdapter<T> result = new Adapter(valueTypeAdapter, delegate, constructor);
+        return result;
+    }
+
+    /**
+     * Adapter for the maps.
+     * @param <V> The type of values in the map
+     */
+    private static final class Adapter<V> extends TypeAdapter<Map<String, V>> {
+        private final TypeAdapter<V> valueTypeAdapter;
+        private final TypeAdapter<Map<String, V>> delegate;
+        private final ObjectConstructor<? extends Map<String, V>> constructor;
+
+        Adapter(TypeAdapter<V> valueTypeAdapter, TypeAdapter<Map<String, V>> delegate,
+                ObjectConstructor<? extends Map<String, V>> constructor) {
+            this.valueTypeAdapter = valueTypeAdapter;
+            this.delegate = delegate;
+            this.constructor = constructor;
+        }
+
+        @Override
+        public Map<String, V> read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                return delegate.read(in);
+            }
+
+            Map<String, V> map = constructor.construct();
+            in.beginObject();
+            while (in.hasNext()) {
+                String key = in.nextName();
+                V value = valueTypeAdapter.read(in);
+                V replaced = map.put(key, value);
+                if (replaced != null) {
+                    throw new JsonSyntaxException("duplicate key: " + key);
+                }
+            }
+            in.endObject();
+            return map;
+        }
+
+        @Override
+        public void write(JsonWriter out, Map<String, V> map) throws IOException {
+            delegate.write(out, map);
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package com.suse.salt.netapi.parser;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
-import com.google.gson.internal.bind.TypeAdapters;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
@@ -43,25 +42,50 @@ public class OptionalTypeAdapterFactory implements TypeAdapterFactory {
                 if (in.peek() == JsonToken.NULL) {
                     in.nextNull();
                     return Optional.empty();
-                } else {
-                    JsonElement json = TypeAdapters.JSON_ELEMENT.read(in);
-                    try {
-                        A value = innerAdapter.fromJsonTree(json);
-                        return Optional.of(value);
+                } else if (in.peek() != JsonToken.STRING || innerAdapter == Adapters.STRING) {
+                    // Only strings need the workaround below
+                    return Optional.of(innerAdapter.read(in));
+                }
+
+                // Read strings while recording them, to tell whether they were empty
+                RecordingReader recorder = RecordingReader.attach(in);
+                if (recorder == null) {
+                    return readString(in.nextString());
+                }
+                int mark = recorder.mark();
+                try {
+                    return Optional.of(innerAdapter.read(recorder));
+                }
+                catch (JsonSyntaxException e) {
+                    if (recorder.getFailure() != null) {
+                        throw recorder.getFailure();
+                    }
+                    recorder.finishValue(mark);
+                    if (recorder.isEmptyString(mark)) {
+                        return Optional.empty();
                     }
-                    catch (JsonSyntaxException e) {
-                        /**
-                         * Note : This is a workaround and it only exists because salt doesn't differentiate between a
-                         * non-existent grain and a grain which exists but has value set to empty String.
-                         *
-                         * If an object is expected but instead empty string comes in then we return empty Optional.
-                         */
-                        if (json.isJsonPrimitive() && json.getAsJsonPrimitive().isString() &&
-                                json.getAsString().isEmpty()) {
-                            return Optional.empty();
-                        }
-                        throw e;
+                    throw e;
+                } finally {
+                    recorder.release();
+                }
+            }
+
+            private Optional<A> readString(String string) {
+                try {
+                    A value = innerAdapter.fromJsonTree(new JsonPrimitive(string));
+                    return Optional.of(value);
+                }
+                catch (JsonSyntaxException e) {
+                    /**
+                     * Note : This is a workaround and it only exists because salt doesn't differentiate between a
+                     * non-existent grain and a grain which exists but has value set to empty String.
+                     *
+                     * If an object is expected but instead empty string comes in then we return empty Optional.
+                     */
+                    if (string.isEmpty()) {
+                        return Optional.empty();
                     }
+                    throw e;
                 }
             }
 
@@ -0,0 +1,227 @@
+package com.suse.salt.netapi.parser;
+
+import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+
+import com.suse.salt.netapi.parser.ReturnScanner.Span;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parser for responses of calls to execution modules decoding the results of the minions
+ * in parallel. The body is scanned for the position of every result while it is received
+ * and kept on the heap, the results are then split into batches of consecutive minions
+ * decoded on the given executor. The thread parsing the response decodes batches as well,
+ * so that parsing completes even if the executor is busy or rejects the work, and it only
+ * waits for batches other threads already started. Small responses are decoded on the
+ * parsing thread only, with a parallelism of 1 responses are decoded while they are read
+ * like any other response.
+ * <p>
+ * The results are returned in maps keeping the order of the response, once all of them
+ * were decoded.
+ *
+ * @param <R> the type of the minion results
+ */
+public class ParallelParser<R> extends JsonParser<List<Map<String, Result<R>>>> {
+
+    private static final long MIN_BATCH_SIZE = 64 * 1024;
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final Type resultType;
+    private final Type responseType;
+    private final Executor executor;
+    private final int parallelism;
+    private final long minBatchSize;
+
+    /**
+     * Creates a parser for results of the given type decoding them on the common
+     * {@link ForkJoinPool}.
+     *
+     * @param returnType the return type of the called function
+     */
+    public ParallelParser(TypeToken<R> returnType) {
+        this(returnType, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a parser for results of the given type decoding them on the given executor.
+     * As many threads as there are processors are used, or as the parallelism of the
+     * executor if it is a {@link ForkJoinPool}.
+     *
+     * @param returnType the return type of the called function
+     * @param executor the executor to decode results on
+     */
+    public ParallelParser(TypeToken<R> returnType, Executor executor) {
+        this(returnType, executor, executor instanceof ForkJoinPool ?
+                ((ForkJoinPool) executor).getParallelism() :
+                Runtime.getRuntime().availableProcessors(), MIN_BATCH_SIZE);
+    }
+
+    ParallelParser(TypeToken<R> returnType, Executor executor, int parallelism,
+            long minBatchSize) {
+        this(returnType, parameterizedType(null, Result.class, returnType.getType()),
+                executor, parallelism, minBatchSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ParallelParser(TypeToken<R> returnType, Type resultType, Executor executor,
+            int parallelism, long minBatchSize) {
+        super((TypeToken<List<Map<String, Result<R>>>>) TypeToken.get(parameterizedType(null,
+                List.class, parameterizedType(null, Map.class, String.class, resultType))));
+        this.resultType = resultType;
+        this.responseType = parameterizedType(null, Return.class, parameterizedType(null,
+                List.class, parameterizedType(null, Map.class, String.class, resultType)));
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.minBatchSize = minBatchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Result<R>>> parse(InputStream inputStream) {
+        if (parallelism == 1) {
+            Return<List<Map<String, Result<R>>>> response =
+                    getCodec().decode(inputStream, responseType);
+            return response.getResult();
+        }
+
+        ScannedResponse response = ScannedResponse.read(inputStream, SpillPolicy.NEVER);
+        List<Span> spans = new ArrayList<>();
+        long size = 0;
+        for (Map<String, Span> chunk : response.getChunks()) {
+            for (Span span : chunk.values()) {
+                spans.add(span);
+                size += span.getLength();
+            }
+        }
+
+        Decoding decoding = new Decoding(response.getBody(), spans,
+                Math.max(minBatchSize, size / ((long) parallelism * BATCHES_PER_THREAD)));
+        int helpers = Math.min(decoding.batchCount(), parallelism) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(decoding::run);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        decoding.run();
+        List<Result<R>> results = decoding.await();
+
+        List<Map<String, Result<R>>> chunks = new ArrayList<>(response.getChunks().size());
+        int index = 0;
+        for (Map<String, Span> chunk : response.getChunks()) {
+            Map<String, Result<R>> map = new LinkedHashMap<>(chunk.size() * 4 / 3 + 1);
+            for (String minion : chunk.keySet()) {
+                map.put(minion, results.get(index++));
+            }
+            chunks.add(map);
+        }
+        return chunks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Result<R>>> parse(String jsonString) {
+        return parse(new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Decoding of the results of a response, shared by the threads decoding them. Every
+     * thread claims the next batch until all batches were claimed.
+     */
+    private final class Decoding {
+        private final ResponseBuffer body;
+        private final List<Span> spans;
+        private final List<Integer> starts = new ArrayList<>();
+        private final Object[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CountDownLatch done;
+
+        Decoding(ResponseBuffer body, List<Span> spans, long batchSize) {
+            this.body = body;
+            this.spans = spans;
+            this.results = new Object[spans.size()];
+            long size = batchSize;
+            for (int i = 0; i < spans.size(); i++) {
+                if (size >= batchSize) {
+                    starts.add(i);
+                    size = 0;
+                }
+                size += spans.get(i).getLength();
+            }
+            starts.add(spans.size());
+            this.done = new CountDownLatch(batchCount());
+        }
+
+        int batchCount() {
+            return starts.size() - 1;
+        }
+
+        void run() {
+            int batch;
+            while ((batch = next.getAndIncrement()) < batchCount()) {
+                try {
+                    for (int i = starts.get(batch); i < starts.get(batch + 1); i++) {
+                        Span span = spans.get(i);
+                        results[i] = getCodec().decode(
+                                body.stream(span.getOffset(), span.getLength()), resultType);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    // Claim the remaining batches, there is no point in decoding them
+                    for (int i = next.getAndSet(batchCount()); i < batchCount(); i++) {
+                        done.countDown();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Result<R>> await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JsonIOException("Interrupted while decoding results", e);
+            }
+            Throwable e = failure.get();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            } else if (e != null) {
+                throw new JsonIOException(e);
+            }
+            List<Result<R>> list = new ArrayList<>(results.length);
+            for (Object result : results) {
+                list.add((Result<R>) result);
+            }
+            return list;
+        }
+    }
+}
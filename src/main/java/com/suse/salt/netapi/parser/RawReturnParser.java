@@ -0,0 +1,85 @@
+package com.suse.salt.netapi.parser;
+
+import com.suse.salt.netapi.parser.ReturnScanner.Span;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parser passing the values of the minions through as they were received, for results
+ * that are only forwarded. The body is scanned for the position of every value without
+ * decoding any of them, every entry in the "return" list is parsed into a map of the
+ * minion ids to the UTF-8 encoded JSON of their value, in the order of the response.
+ * <p>
+ * The returned buffers are read-only slices of the body, they share its memory and are
+ * not copied. Reading a buffer moves its position, use {@link ByteBuffer#duplicate()} to
+ * read it more than once.
+ * <p>
+ * Like {@link SpillingParser}, the parser {@link #requiresStreaming() requires streaming}
+ * unless the policy is {@link SpillPolicy#NEVER}.
+ */
+public class RawReturnParser extends JsonParser<List<Map<String, ByteBuffer>>> {
+
+    private final SpillPolicy policy;
+
+    /**
+     * Creates a parser keeping the body on the heap.
+     */
+    public RawReturnParser() {
+        this(SpillPolicy.NEVER);
+    }
+
+    /**
+     * Creates a parser writing bodies to a temporary file according to the given policy,
+     * see {@link SpillingParser}.
+     *
+     * @param policy the policy for large responses
+     */
+    public RawReturnParser(SpillPolicy policy) {
+        super(new TypeToken<List<Map<String, ByteBuffer>>>() { });
+        this.policy = policy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requiresStreaming() {
+        return policy.getThresholdBytes() != Long.MAX_VALUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, ByteBuffer>> parse(InputStream inputStream) {
+        ScannedResponse response = ScannedResponse.read(inputStream, policy);
+        return response.getChunks().stream()
+                .map(spans -> slices(response.getBody(), spans))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, ByteBuffer>> parse(String jsonString) {
+        return parse(new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Map<String, ByteBuffer> slices(ResponseBuffer body, Map<String, Span> spans) {
+        Map<String, ByteBuffer> slices = new LinkedHashMap<>((int) (spans.size() / 0.75f) + 1);
+        spans.forEach((minion, span) ->
+                slices.put(minion, body.slice(span.getOffset(), span.getLength())));
+        return Collections.unmodifiableMap(slices);
+    }
+}
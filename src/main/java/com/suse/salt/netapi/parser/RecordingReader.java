@@ -0,0 +1,513 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.internal.bind.JsonTreeReader;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Reader passing the tokens of another reader through while recording them, so that a
+ * value that could not be decoded from the stream can be decoded again from its tree
+ * without having read the tree up front. Numbers are taken from the other reader as text
+ * and converted the way {@link JsonReader} does, to record them as they were received.
+ * <p>
+ * A reader is shared by all values decoded from it on a thread, the recording of a value
+ * starts at the {@link #mark()} taken before reading it, and is dropped when the
+ * outermost value using the reader is done.
+ */
+final class RecordingReader extends JsonReader {
+
+    private static final Reader EMPTY = new StringReader("");
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+    private static final JsonToken[] TOKENS = JsonToken.values();
+
+    private static final ThreadLocal<RecordingReader> READERS =
+            ThreadLocal.withInitial(RecordingReader::new);
+
+    private JsonReader in;
+    private int users;
+    private IOException failure;
+
+    /** Value already taken from the other reader by a failed number conversion */
+    private String buffered;
+
+    private byte[] tokens = new byte[INITIAL_CAPACITY];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int size;
+
+    private RecordingReader() {
+        super(EMPTY);
+    }
+
+    /**
+     * Returns a reader recording the tokens of the given reader, or nothing if the value
+     * to be read next can not be recorded. Every reader returned needs to be released.
+     *
+     * @param in the reader to record
+     * @return the recording reader
+     */
+    static RecordingReader attach(JsonReader in) {
+        if (in instanceof RecordingReader) {
+            RecordingReader reader = (RecordingReader) in;
+            if (reader.buffered != null) {
+                return null;
+            }
+            reader.users++;
+            return reader;
+        }
+        if (in instanceof JsonTreeReader) {
+            // The tree is there already
+            return null;
+        }
+        RecordingReader reader = READERS.get();
+        if (reader.users > 0) {
+            // Reading from another reader while decoding a value
+            reader = new RecordingReader();
+        }
+        reader.in = in;
+        reader.users = 1;
+        reader.setLenient(in.isLenient());
+        return reader;
+    }
+
+    /**
+     * Releases a reader returned by {@link #attach(JsonReader)}, dropping the recording
+     * once the reader is not used anymore.
+     */
+    void release() {
+        if (--users > 0) {
+            return;
+        }
+        in = null;
+        failure = null;
+        buffered = null;
+        if (tokens.length > MAX_RETAINED_CAPACITY) {
+            tokens = new byte[INITIAL_CAPACITY];
+            values = new String[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(values, 0, size, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the position in the recording of the value read next
+     */
+    int mark() {
+        return size;
+    }
+
+    /**
+     * @return the exception the other reader failed with, if it did
+     */
+    IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Reads the rest of the value recorded from the given mark from the other reader,
+     * after reading the value failed.
+     *
+     * @param mark the position of the value
+     * @throws IOException if the other reader fails
+     */
+    void finishValue(int mark) throws IOException {
+        buffered = null;
+        int depth = 0;
+        for (int i = mark; i < size; i++) {
+            depth += nesting(TOKENS[tokens[i]]);
+        }
+        if (size == mark) {
+            depth = copyToken();
+        }
+        while (depth > 0) {
+            depth += copyToken();
+        }
+    }
+
+    /**
+     * @param mark the position of the value
+     * @return true if the value recorded from the given mark is an empty string
+     */
+    boolean isEmptyString(int mark) {
+        return size == mark + 1 && tokens[mark] == JsonToken.STRING.ordinal() &&
+                values[mark].isEmpty();
+    }
+
+    /**
+     * Returns the tree of the value recorded from the given mark, the way
+     * {@link com.google.gson.internal.bind.TypeAdapters#JSON_ELEMENT} would have read it.
+     *
+     * @param mark the position of the value
+     * @return the tree of the value
+     */
+    JsonElement toJsonTree(int mark) {
+        Deque<JsonElement> parents = new ArrayDeque<>();
+        String name = null;
+        JsonElement value = null;
+        for (int i = mark; i < size; i++) {
+            JsonToken token = TOKENS[tokens[i]];
+            switch (token) {
+                case NAME:
+                    name = values[i];
+                    continue;
+                case BEGIN_ARRAY:
+                case BEGIN_OBJECT:
+                    JsonElement container =
+                            token == JsonToken.BEGIN_ARRAY ? new JsonArray() : new JsonObject();
+                    add(parents.peek(), name, container);
+                    parents.push(container);
+                    continue;
+                case END_ARRAY:
+                case END_OBJECT:
+                    value = parents.pop();
+                    continue;
+                case STRING:
+                    value = new JsonPrimitive(values[i]);
+                    break;
+                case NUMBER:
+                    value = new JsonPrimitive(new LazilyParsedNumber(values[i]));
+                    break;
+                case BOOLEAN:
+                    value = new JsonPrimitive(Boolean.valueOf(values[i]));
+                    break;
+                default:
+                    value = JsonNull.INSTANCE;
+                    break;
+            }
+            add(parents.peek(), name, value);
+        }
+        return value;
+    }
+
+    private static void add(JsonElement parent, String name, JsonElement value) {
+        if (parent instanceof JsonArray) {
+            ((JsonArray) parent).add(value);
+        } else if (parent != null) {
+            ((JsonObject) parent).add(name, value);
+        }
+    }
+
+    private static int nesting(JsonToken token) {
+        switch (token) {
+            case BEGIN_ARRAY:
+            case BEGIN_OBJECT:
+                return 1;
+            case END_ARRAY:
+            case END_OBJECT:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Copies the next token of the other reader into the recording.
+     *
+     * @return the change of the nesting depth
+     */
+    private int copyToken() throws IOException {
+        JsonToken token = peek();
+        switch (token) {
+            case BEGIN_ARRAY:
+                beginArray();
+                break;
+            case END_ARRAY:
+                endArray();
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                break;
+            case END_OBJECT:
+                endObject();
+                break;
+            case NAME:
+                nextName();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            case STRING:
+            case NUMBER:
+                nextString();
+                break;
+            default:
+                throw new IllegalStateException("Expected a value but was " + token +
+                        " at path " + getPath());
+        }
+        return nesting(token);
+    }
+
+    private void record(JsonToken token, String value) {
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        tokens[size] = (byte) token.ordinal();
+        values[size++] = value;
+    }
+
+    private IOException failed(IOException e) {
+        failure = e;
+        return e;
+    }
+
+    private void expectNotBuffered(JsonToken expected) {
+        if (buffered != null) {
+            throw new IllegalStateException("Expected " + expected + " but was STRING at path " +
+                    getPath());
+        }
+    }
+
+    /**
+     * Takes a string or number from the other reader as text.
+     */
+    private String nextText() throws IOException {
+        if (buffered != null) {
+            String text = buffered;
+            buffered = null;
+            return text;
+        }
+        JsonToken token = peek();
+        String text;
+        try {
+            text = in.nextString();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(token, text);
+        return text;
+    }
+
+    private boolean isText() throws IOException {
+        JsonToken token = peek();
+        return token == JsonToken.STRING || token == JsonToken.NUMBER;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expectNotBuffered(JsonToken.BEGIN_ARRAY);
+        try {
+            in.beginArray();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.BEGIN_ARRAY, null);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expectNotBuffered(JsonToken.END_ARRAY);
+        try {
+            in.endArray();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.END_ARRAY, null);
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expectNotBuffered(JsonToken.BEGIN_OBJECT);
+        try {
+            in.beginObject();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.BEGIN_OBJECT, null);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expectNotBuffered(JsonToken.END_OBJECT);
+        try {
+            in.endObject();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.END_OBJECT, null);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        try {
+            return buffered != null || in.hasNext();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        try {
+            return buffered != null ? JsonToken.STRING : in.peek();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expectNotBuffered(JsonToken.NAME);
+        String name;
+        try {
+            name = in.nextName();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.NAME, name);
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        if (buffered == null && !isText()) {
+            // Let the other reader reject it
+            try {
+                return in.nextString();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        return nextText();
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expectNotBuffered(JsonToken.BOOLEAN);
+        boolean value;
+        try {
+            value = in.nextBoolean();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.BOOLEAN, Boolean.toString(value));
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expectNotBuffered(JsonToken.NULL);
+        try {
+            in.nextNull();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        record(JsonToken.NULL, null);
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        if (buffered == null && !isText()) {
+            try {
+                return in.nextDouble();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        String text = nextText();
+        buffered = text;
+        double value = Double.parseDouble(text);
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new NumberFormatException("JSON forbids NaN and infinities: " + value +
+                    " at path " + getPath());
+        }
+        buffered = null;
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        if (buffered == null && !isText()) {
+            try {
+                return in.nextLong();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        String text = nextText();
+        buffered = text;
+        long value;
+        try {
+            value = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(text);
+            value = (long) asDouble;
+            if (value != asDouble) {
+                throw new NumberFormatException("Expected a long but was " + text +
+                        " at path " + getPath());
+            }
+        }
+        buffered = null;
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        if (buffered == null && !isText()) {
+            try {
+                return in.nextInt();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+        String text = nextText();
+        buffered = text;
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(text);
+            value = (int) asDouble;
+            if (value != asDouble) {
+                throw new NumberFormatException("Expected an int but was " + text +
+                        " at path " + getPath());
+            }
+        }
+        buffered = null;
+        return value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        if (buffered != null) {
+            buffered = null;
+            return;
+        }
+        int depth = copyToken();
+        while (depth > 0) {
+            depth += copyToken();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return in.getPath();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " of " + in;
+    }
+}
@@ -0,0 +1,64 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Adapter for values holding either the expected value or something else, like an error
+ * message. The expected value is decoded straight from the stream while its tokens are
+ * recorded, only if that fails the value is decoded again from the tree of the recorded
+ * tokens. Decoding from the tree works exactly as before, so that the results do not
+ * depend on how far decoding from the stream got.
+ *
+ * @param <T> the type of the values
+ */
+abstract class ReplayingTypeAdapter<T> extends TypeAdapter<T> {
+
+    /**
+     * Decodes the expected value from the stream.
+     *
+     * @param in the reader to read the value from
+     * @return the value
+     * @throws Throwable if the value is not what was expected
+     */
+    protected abstract T readValue(JsonReader in) throws Throwable;
+
+    /**
+     * Decodes a value from its tree, once decoding it from the stream failed.
+     *
+     * @param json the tree of the value
+     * @return the value
+     */
+    protected abstract T readTree(JsonElement json);
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        RecordingReader recorder = RecordingReader.attach(in);
+        if (recorder == null) {
+            return readTree(TypeAdapters.JSON_ELEMENT.read(in));
+        }
+        int mark = recorder.mark();
+        try {
+            return readValue(recorder);
+        } catch (Throwable e) {
+            if (recorder.getFailure() != null) {
+                throw recorder.getFailure();
+            }
+            recorder.finishValue(mark);
+            return readTree(recorder.toJsonTree(mark));
+        } finally {
+            recorder.release();
+        }
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        throw new JsonParseException("Writing Xor is not supported");
+    }
+}
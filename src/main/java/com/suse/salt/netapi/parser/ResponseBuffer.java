@@ -0,0 +1,122 @@
+package com.suse.salt.netapi.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of a response body, either held on the heap or memory mapped from a
+ * file. Slices of the body are handed out without copying.
+ */
+public final class ResponseBuffer {
+
+    private final ByteBuffer[] segments;
+    private final long segmentSize;
+    private final long size;
+
+    private ResponseBuffer(ByteBuffer[] segments, long segmentSize, long size) {
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.size = size;
+    }
+
+    /**
+     * Creates a buffer holding the given bytes, which must not be modified afterwards.
+     *
+     * @param bytes the bytes of the body
+     * @param length the number of bytes used
+     * @return the buffer
+     */
+    public static ResponseBuffer wrap(byte[] bytes, int length) {
+        return new ResponseBuffer(new ByteBuffer[] {ByteBuffer.wrap(bytes, 0, length)},
+                Math.max(length, 1), length);
+    }
+
+    /**
+     * Memory maps a file holding a body. The mappings stay valid once the channel is
+     * closed. Files larger than 2GB are mapped in overlapping segments so that every
+     * slice up to the given length lies within one of them.
+     *
+     * @param channel the channel to map
+     * @param maxSliceLength the length of the longest slice that will be requested
+     * @return the buffer
+     * @throws IOException if mapping fails
+     */
+    public static ResponseBuffer map(FileChannel channel, int maxSliceLength)
+            throws IOException {
+        long size = channel.size();
+        long segmentSize = size <= Integer.MAX_VALUE ? Math.max(size, 1) :
+                Math.max(Integer.MAX_VALUE - (long) maxSliceLength, 1L << 20);
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size - 1) / segmentSize + 1)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * segmentSize;
+            long length = Math.min(Math.min(size - start, segmentSize + maxSliceLength),
+                    Integer.MAX_VALUE);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        return new ResponseBuffer(segments, segmentSize, size);
+    }
+
+    /**
+     * @return the size of the body in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns a part of the body.
+     *
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return a read-only buffer holding the bytes
+     */
+    public ByteBuffer slice(long offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Slice " + offset + "+" + length +
+                    " exceeds body of " + size + " bytes");
+        }
+        ByteBuffer segment = segments[(int) (offset / segmentSize)].duplicate();
+        int start = (int) (offset % segmentSize);
+        // Called on Buffer to run on Java 8, where ByteBuffer does not override them
+        ((Buffer) segment).position(start).limit(start + length);
+        return segment.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream reading a part of the body.
+     *
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return the stream
+     */
+    public InputStream stream(long offset, int length) {
+        ByteBuffer slice = slice(offset, length);
+        return new InputStream() {
+            @Override
+            public int read() {
+                return slice.hasRemaining() ? slice.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!slice.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, slice.remaining());
+                slice.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return slice.remaining();
+            }
+        };
+    }
+}
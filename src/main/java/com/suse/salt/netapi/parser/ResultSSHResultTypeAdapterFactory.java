@@ -2,13 +2,10 @@ package com.suse.salt.netapi.parser;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
-import com.google.gson.internal.bind.TypeAdapters;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
 import com.suse.salt.netapi.errors.JsonParsingError;
 import com.suse.salt.netapi.errors.SaltError;
 import com.suse.salt.netapi.results.Result;
@@ -60,16 +57,16 @@ public class ResultSSHResultTypeAdapterFactory implements TypeAdapterFactory {
 
     private <R> TypeAdapter<Result<SSHResult<R>>> resultAdapter(
             TypeAdapter<SSHResult<R>> innerAdapter) {
-        return new TypeAdapter<Result<SSHResult<R>>>() {
+        return new ReplayingTypeAdapter<Result<SSHResult<R>>>() {
             @Override
-            public Result<SSHResult<R>> read(JsonReader in) throws IOException {
-                JsonElement json = TypeAdapters.JSON_ELEMENT.read(in);
+            protected Result<SSHResult<R>> readValue(JsonReader in) throws IOException {
+                return new Result<>(Xor.right(checked(innerAdapter.read(in))));
+            }
+
+            @Override
+            protected Result<SSHResult<R>> readTree(JsonElement json) {
                 try {
-                    SSHResult<R> value = innerAdapter.fromJsonTree(json);
-                    if (!value.getReturn().isPresent() && value.getRetcode() != 0) {
-                        throw new NullPointerException("No salt ssh return value," +
-                                " return code: " + value.getRetcode());
-                    }
+                    SSHResult<R> value = checked(innerAdapter.fromJsonTree(json));
                     return new Result<>(Xor.right(value));
                 } catch (Throwable e) {
                     Optional<SaltError> saltError =
@@ -79,9 +76,12 @@ public class ResultSSHResultTypeAdapterFactory implements TypeAdapterFactory {
                 }
             }
 
-            @Override
-            public void write(JsonWriter out, Result<SSHResult<R>> xor) throws IOException {
-                throw new JsonParseException("Writing Xor is not supported");
+            private SSHResult<R> checked(SSHResult<R> value) {
+                if (!value.getReturn().isPresent() && value.getRetcode() != 0) {
+                    throw new NullPointerException("No salt ssh return value," +
+                            " return code: " + value.getRetcode());
+                }
+                return value;
             }
 
             private Optional<String> extractStdErr(JsonElement json) {
@@ -0,0 +1,89 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for Salt API responses to requests carrying several lowstate chunks. Salt
+ * returns one entry in the "return" list per chunk, every entry is parsed with the
+ * type given for its position.
+ */
+public class ReturnChunksParser extends JsonParser<List<Object>> {
+
+    private final List<Type> chunkTypes;
+
+    /**
+     * Creates a new parser for the given chunk types.
+     *
+     * @param chunkTypes the expected type of each entry in the "return" list
+     */
+    public ReturnChunksParser(List<Type> chunkTypes) {
+        super(new TypeToken<List<Object>>(){});
+        this.chunkTypes = chunkTypes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> parse(InputStream inputStream) {
+        return read(new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Object> parse(String jsonString) {
+        return read(new StringReader(jsonString));
+    }
+
+    private List<Object> read(Reader input) {
+        JsonReader reader = new JsonReader(input);
+        reader.setLenient(true);
+        try {
+            List<Object> chunks = new ArrayList<>(chunkTypes.size());
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"return".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                for (Type type : chunkTypes) {
+                    if (!reader.hasNext()) {
+                        throw new JsonParseException("Expected " + chunkTypes.size() +
+                                " return chunks but got " + chunks.size());
+                    }
+                    chunks.add(getCodec().read(reader, type));
+                }
+                if (reader.hasNext()) {
+                    throw new JsonParseException("Expected " + chunkTypes.size() +
+                            " return chunks but got more");
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+            if (chunks.size() != chunkTypes.size()) {
+                throw new JsonParseException("Response does not contain a return list");
+            }
+            return chunks;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.suse.salt.netapi.parser;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shallow scanner of Salt API responses finding where the value of each minion starts
+ * and ends, without decoding the values. The response is given in UTF-8 encoded pieces as
+ * it is received. Every entry in the "return" list needs to be an object mapping minion
+ * ids to their values, as it is for calls to execution modules.
+ * <p>
+ * Only the structure of the response is checked, malformed values are reported once they
+ * are decoded.
+ */
+public class ReturnScanner {
+
+    private static final byte OBJECT = 1;
+    private static final byte ARRAY = 2;
+
+    /**
+     * Position of the value of a minion within the response.
+     */
+    public static final class Span {
+
+        private final long offset;
+        private final int length;
+
+        Span(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return the offset of the first byte of the value
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the length of the value in bytes
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final List<Map<String, Span>> chunks = new ArrayList<>();
+    private final ByteArrayOutputStream key = new ByteArrayOutputStream();
+
+    private byte[] containers = new byte[16];
+    private int depth;
+    private long position;
+    private boolean inString;
+    private boolean escaped;
+    private boolean escapedKey;
+    private boolean collectingKey;
+    private boolean expectingKey;
+    private boolean expectingValue;
+    private boolean inReturn;
+    private boolean returnSeen;
+    private boolean done;
+    private String topLevelKey;
+    private Map<String, Span> chunk;
+    private String minion;
+    private long valueStart = -1;
+    private long valueEnd;
+    private int maxLength;
+
+    /**
+     * Scans the next piece of the response.
+     *
+     * @param bytes buffer holding the piece
+     * @param offset offset of the piece in the buffer
+     * @param length length of the piece
+     * @throws JsonParseException if the response does not have the expected structure
+     */
+    public void scan(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        long base = position - offset;
+        for (int i = offset; i < end; i++) {
+            byte b = bytes[i];
+            if (inString) {
+                if (!escaped && !collectingKey) {
+                    // Skip the contents of strings in values up to the next special character
+                    while (b != '"' && b != '\\' && ++i < end) {
+                        b = bytes[i];
+                    }
+                    if (i == end) {
+                        break;
+                    }
+                }
+                position = base + i;
+                scanString(b);
+            } else if (depth > 3 && b != '"' && b != '{' && b != '[' && b != '}' && b != ']') {
+                // Within a minion value only strings and nesting matter
+                continue;
+            } else if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                position = base + i;
+                scanStructure(b);
+            }
+        }
+        position = base + end;
+    }
+
+    /**
+     * Returns the positions of the values found once the whole response was scanned.
+     *
+     * @return one map per entry in the "return" list, with the minion ids in the order of
+     * the response
+     * @throws JsonParseException if the response is incomplete or has no return list
+     */
+    public List<Map<String, Span>> finish() {
+        if (!done) {
+            throw new JsonParseException("Response ended unexpectedly at offset " + position);
+        }
+        if (!returnSeen) {
+            throw new JsonParseException("Response does not contain a return list");
+        }
+        return Collections.unmodifiableList(chunks);
+    }
+
+    /**
+     * @return the length of the longest value found so far
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    private void scanString(byte b) {
+        if (escaped) {
+            escaped = false;
+        } else if (b == '\\') {
+            escaped = true;
+            escapedKey |= collectingKey;
+        } else if (b == '"') {
+            inString = false;
+            valueEnd = position + 1;
+            if (collectingKey) {
+                collectingKey = false;
+                endKey();
+            }
+            return;
+        }
+        if (collectingKey) {
+            key.write(b);
+        }
+    }
+
+    private void scanStructure(byte b) {
+        if (done) {
+            throw new JsonSyntaxException("Unexpected content after the response at offset " +
+                    position);
+        }
+        boolean chunkLevel = depth == 3 && chunk != null;
+        if (depth == 2 && inReturn && b != '{' && b != ',' && b != ']') {
+            throw new JsonSyntaxException("Expected an object in the return list at offset " +
+                    position);
+        }
+        if (chunkLevel && expectingValue && b != ',' && b != '}') {
+            expectingValue = false;
+            valueStart = position;
+        }
+        switch (b) {
+            case '"':
+                inString = true;
+                if (expectingKey) {
+                    expectingKey = false;
+                    collectingKey = depth == 1 || chunkLevel;
+                    escapedKey = false;
+                    key.reset();
+                }
+                return;
+            case '{':
+                push(OBJECT);
+                expectingKey = true;
+                if (depth == 3 && inReturn) {
+                    chunk = new LinkedHashMap<>();
+                }
+                break;
+            case '[':
+                push(ARRAY);
+                if (depth == 2 && "return".equals(topLevelKey)) {
+                    inReturn = true;
+                    returnSeen = true;
+                }
+                break;
+            case '}':
+            case ']':
+                if (depth == 0 || containers[depth - 1] != (b == '}' ? OBJECT : ARRAY)) {
+                    throw new JsonSyntaxException("Unexpected " + (char) b + " at offset " +
+                            position);
+                }
+                if (chunkLevel) {
+                    endValue();
+                    chunks.add(chunk);
+                    chunk = null;
+                } else if (depth == 2 && inReturn) {
+                    inReturn = false;
+                }
+                depth--;
+                expectingKey = false;
+                done = depth == 0;
+                break;
+            case ',':
+                if (chunkLevel) {
+                    endValue();
+                }
+                expectingKey = depth > 0 && containers[depth - 1] == OBJECT;
+                return;
+            case ':':
+                expectingValue = chunkLevel;
+                return;
+            default:
+                if (depth == 0) {
+                    throw new JsonSyntaxException("Expected an object at offset " + position);
+                }
+                break;
+        }
+        valueEnd = position + 1;
+    }
+
+    private void push(byte container) {
+        if (depth == 0 && container != OBJECT) {
+            throw new JsonSyntaxException("Expected an object at offset " + position);
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+
+    private void endKey() {
+        String name = escapedKey ?
+                JsonParser.GSON.fromJson("\"" + new String(key.toByteArray(),
+                        StandardCharsets.UTF_8) + "\"", String.class) :
+                new String(key.toByteArray(), StandardCharsets.UTF_8);
+        if (depth == 1) {
+            topLevelKey = name;
+        } else {
+            minion = name;
+        }
+    }
+
+    private void endValue() {
+        if (minion == null) {
+            // Empty object
+            return;
+        }
+        expectingValue = false;
+        if (valueStart < 0) {
+            throw new JsonSyntaxException("Missing value of " + minion + " at offset " +
+                    position);
+        }
+        long length = valueEnd - valueStart;
+        if (length > Integer.MAX_VALUE) {
+            throw new JsonParseException("Value of " + minion + " is too large");
+        }
+        if (chunk.put(minion, new Span(valueStart, (int) length)) != null) {
+            throw new JsonSyntaxException("duplicate key: " + minion);
+        }
+        maxLength = Math.max(maxLength, (int) length);
+        minion = null;
+        valueStart = -1;
+    }
+}
@@ -0,0 +1,118 @@
+package com.suse.salt.netapi.parser;
+
+import com.suse.salt.netapi.parser.ReturnScanner.Span;
+
+import com.google.gson.JsonIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response body kept as it was received, together with the position of the value of
+ * every minion in it.
+ */
+final class ScannedResponse {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ResponseBuffer body;
+    private final List<Map<String, Span>> chunks;
+
+    private ScannedResponse(ResponseBuffer body, List<Map<String, Span>> chunks) {
+        this.body = body;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return the response body
+     */
+    ResponseBuffer getBody() {
+        return body;
+    }
+
+    /**
+     * @return the positions of the minion values for each entry in the "return" list
+     */
+    List<Map<String, Span>> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Reads and scans a response body, writing it to a temporary file if it exceeds the
+     * threshold of the given policy.
+     *
+     * @param inputStream the body
+     * @param policy the policy for large bodies
+     * @return the scanned response
+     */
+    static ScannedResponse read(InputStream inputStream, SpillPolicy policy) {
+        ReturnScanner scanner = new ReturnScanner();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count = 0;
+        FileChannel file = null;
+        try {
+            int read;
+            while (file == null) {
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer,
+                            (int) Math.min(buffer.length * 2L, MAX_ARRAY_SIZE));
+                }
+                if ((read = inputStream.read(buffer, count, buffer.length - count)) < 0) {
+                    break;
+                }
+                scanner.scan(buffer, count, read);
+                count += read;
+                if (count > policy.getThresholdBytes() || count == MAX_ARRAY_SIZE) {
+                    file = createFile(policy.getDirectory());
+                    write(file, buffer, count);
+                    buffer = new byte[BUFFER_SIZE];
+                }
+            }
+            while (file != null && (read = inputStream.read(buffer)) >= 0) {
+                scanner.scan(buffer, 0, read);
+                write(file, buffer, read);
+            }
+
+            List<Map<String, Span>> chunks = scanner.finish();
+            return new ScannedResponse(file == null ? ResponseBuffer.wrap(buffer, count) :
+                    ResponseBuffer.map(file, scanner.getMaxLength()), chunks);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Failing to delete the file does not affect the parsed response
+                }
+            }
+        }
+    }
+
+    private static FileChannel createFile(Path directory) throws IOException {
+        Path path = Files.createTempFile(directory, "salt-response", ".json");
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    private static void write(FileChannel file, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+}
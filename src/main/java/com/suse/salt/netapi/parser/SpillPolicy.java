@@ -0,0 +1,102 @@
+package com.suse.salt.netapi.parser;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Policy for responses too large to be held on the heap, e.g. of {@code pkg.file_dict}
+ * or {@code state.show_highstate} across many minions. Response bodies exceeding the
+ * threshold are written to a temporary file while they are received, which is then
+ * memory mapped, see {@link SpillingParser}.
+ * <p>
+ * This requires the response body to be streamed into the parser instead of being
+ * buffered on the heap first. {@code HttpAsyncClientImpl} and {@code JdkHttpClientImpl}
+ * do so for parsers with a spill policy even when created without a parser executor,
+ * parsing on {@link com.suse.salt.netapi.utils.ClientUtils#sharedParserExecutor()}.
+ * Other {@link com.suse.salt.netapi.client.AsyncHttpClient} implementations have to
+ * honor {@link JsonParser#requiresStreaming()} for bodies to be kept off the heap.
+ */
+public class SpillPolicy {
+
+    /** Policy keeping all response bodies on the heap */
+    public static final SpillPolicy NEVER = custom().withThreshold(Long.MAX_VALUE).build();
+
+    private final long thresholdBytes;
+    private final Optional<Path> directory;
+
+    private SpillPolicy(Builder builder) {
+        this.thresholdBytes = builder.thresholdBytes;
+        this.directory = builder.directory;
+    }
+
+    /**
+     * Returns a builder for a spill policy.
+     *
+     * @return a Builder instance
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * @return the size in bytes above which response bodies are written to a file
+     */
+    public long getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    /**
+     * @return the directory temporary files are created in
+     */
+    public Path getDirectory() {
+        return directory.orElseGet(() -> Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Builder for {@link SpillPolicy} instances.
+     */
+    public static class Builder {
+        private long thresholdBytes = 64L * 1024 * 1024;
+        private Optional<Path> directory = Optional.empty();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the size above which response bodies are written to a file instead of
+         * being kept on the heap, defaults to 64MB.
+         *
+         * @param bytes the threshold in bytes
+         * @return this builder
+         */
+        public Builder withThreshold(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Expected value not less than 0");
+            }
+            this.thresholdBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the directory to create temporary files in, defaults to the directory
+         * given by the system property "java.io.tmpdir".
+         *
+         * @param value the directory
+         * @return this builder
+         */
+        public Builder withDirectory(Path value) {
+            this.directory = Optional.of(value);
+            return this;
+        }
+
+        /**
+         * Creates the policy.
+         *
+         * @return the policy
+         */
+        public SpillPolicy build() {
+            return new SpillPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.suse.salt.netapi.parser;
+
+import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+
+import com.suse.salt.netapi.results.LazyResultMap;
+import com.suse.salt.netapi.results.Result;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parser for responses of calls to execution modules that does not decode the results
+ * of the minions up front. The body is scanned for the position of every result while it
+ * is received, and kept as it is: on the heap as long as it does not exceed the threshold
+ * of the {@link SpillPolicy}, in a temporary file otherwise. Every entry in the "return"
+ * list is parsed into a {@link LazyResultMap} decoding the result of a minion whenever it
+ * is looked up, or only when it is first looked up if results are cached.
+ * <p>
+ * Temporary files are deleted once the body is memory mapped, their disk space is freed
+ * by the operating system when the mapping is no longer referenced and was garbage
+ * collected.
+ * <p>
+ * Bodies can only be kept off the heap when they are streamed into the parser, so unless
+ * the policy is {@link SpillPolicy#NEVER} the parser {@link #requiresStreaming() requires
+ * streaming}.
+ *
+ * @param <R> the type of the minion results
+ */
+public class SpillingParser<R> extends JsonParser<List<Map<String, Result<R>>>> {
+
+    private final Type resultType;
+    private final SpillPolicy policy;
+    private final boolean cacheResults;
+
+    /**
+     * Creates a parser for results of the given type, not caching decoded results.
+     *
+     * @param returnType the return type of the called function
+     * @param policy the policy for large responses
+     */
+    public SpillingParser(TypeToken<R> returnType, SpillPolicy policy) {
+        this(returnType, policy, false);
+    }
+
+    /**
+     * Creates a parser for results of the given type.
+     *
+     * @param returnType the return type of the called function
+     * @param policy the policy for large responses
+     * @param cacheResults whether results are cached once decoded
+     */
+    @SuppressWarnings("unchecked")
+    public SpillingParser(TypeToken<R> returnType, SpillPolicy policy, boolean cacheResults) {
+        super((TypeToken<List<Map<String, Result<R>>>>) TypeToken.get(parameterizedType(null,
+                List.class, parameterizedType(null, Map.class, String.class,
+                        parameterizedType(null, Result.class, returnType.getType())))));
+        this.resultType = parameterizedType(null, Result.class, returnType.getType());
+        this.policy = policy;
+        this.cacheResults = cacheResults;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requiresStreaming() {
+        return policy.getThresholdBytes() != Long.MAX_VALUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Result<R>>> parse(InputStream inputStream) {
+        ScannedResponse response = ScannedResponse.read(inputStream, policy);
+        return response.getChunks().stream()
+                .map(spans -> new LazyResultMap<R>(response.getBody(), spans, resultType,
+                        getCodec(), cacheResults))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<String, Result<R>>> parse(String jsonString) {
+        return parse(new ByteArrayInputStream(jsonString.getBytes(StandardCharsets.UTF_8)));
+    }
+}
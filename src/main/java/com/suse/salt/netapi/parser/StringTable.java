@@ -0,0 +1,201 @@
+package com.suse.salt.netapi.parser;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded table of strings used to replace strings decoded from responses with an equal
+ * string decoded before, so that values repeated across minions, like names of operating
+ * systems, packages, versions or architectures, are kept in memory only once.
+ * <p>
+ * The table has a fixed number of slots holding one string each, a string replaces the
+ * string in its slot unless they are equal. Lookups do not lock and the table never
+ * grows: strings evicted from it or not found in it are simply kept as they are. Strings
+ * longer than the maximum length are not added.
+ * <p>
+ * The table counts hits and misses of {@link #intern(String)} as well as the bytes saved
+ * by the duplicates it replaced, estimated with the sizes of strings in Java 8 on a 64 bit
+ * JVM with compressed references. Names looked up with {@link #internName(String)} are not
+ * counted.
+ */
+public class StringTable {
+
+    /** Default number of slots */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Default maximum length of strings added to the table */
+    public static final int DEFAULT_MAX_LENGTH = 1024;
+
+    private static final int STRING_SIZE = 24;
+    private static final int ARRAY_HEADER_SIZE = 16;
+    private static final int OPTIONAL_SIZE = 16;
+
+    /**
+     * Slot of the table.
+     */
+    private static final class Entry {
+        private final String value;
+        // Set without synchronization, every thread sees either null or a complete Optional
+        private Optional<String> optional;
+
+        Entry(String value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final int maxLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * Creates a table with the default capacity and maximum length.
+     */
+    public StringTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Creates a table with the given capacity and maximum length.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param maxLength the maximum length of strings added to the table
+     */
+    public StringTable(int capacity, int maxLength) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Invalid maximum length: " + maxLength);
+        }
+        int slots = Integer.highestOneBit(capacity);
+        slots = slots < capacity ? slots << 1 : slots;
+        this.entries = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the string in the table equal to the given string, or the given string after
+     * adding it to the table.
+     *
+     * @param string the string
+     * @return an equal string
+     */
+    public String intern(String string) {
+        return intern(string, true);
+    }
+
+    /**
+     * Returns the string in the table equal to the given name like {@link #intern(String)},
+     * but without counting it. Most names of a document are names of fields that are
+     * dropped once matched, so replacing them saves nothing; only names kept as keys of
+     * maps do.
+     *
+     * @param name the name
+     * @return an equal string
+     */
+    public String internName(String name) {
+        return intern(name, false);
+    }
+
+    private String intern(String string, boolean counted) {
+        if (string.length() > maxLength) {
+            return string;
+        }
+        int index = index(string);
+        Entry entry = entries.get(index);
+        if (entry != null && entry.value.equals(string)) {
+            if (counted) {
+                hits.increment();
+                bytesSaved.add(sizeOf(string));
+            }
+            return entry.value;
+        }
+        if (counted) {
+            misses.increment();
+        }
+        entries.set(index, new Entry(string));
+        return string;
+    }
+
+    /**
+     * Returns an {@link Optional} of the given string, shared with all other callers
+     * passing the same string as long as it is in the table. Strings are only shared if
+     * they were returned by {@link #intern(String)} before.
+     *
+     * @param string the string
+     * @return an optional of the string
+     */
+    public Optional<String> optionalOf(String string) {
+        if (string.length() > maxLength) {
+            return Optional.of(string);
+        }
+        Entry entry = entries.get(index(string));
+        if (entry == null || entry.value != string) {
+            return Optional.of(string);
+        }
+        Optional<String> optional = entry.optional;
+        if (optional == null) {
+            optional = Optional.of(string);
+            entry.optional = optional;
+        } else {
+            bytesSaved.add(OPTIONAL_SIZE);
+        }
+        return optional;
+    }
+
+    /**
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * @return the number of strings replaced by an equal string from the table
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of strings added to the table
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of looked up strings found in the table, 0 if none was looked up
+     */
+    public double getHitRate() {
+        long found = hits.sum();
+        long lookups = found + misses.sum();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+
+    /**
+     * @return the estimated number of bytes of the strings and optionals that were
+     * replaced with the ones from the table
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    private int index(String string) {
+        int hash = string.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static long sizeOf(String string) {
+        return STRING_SIZE + align(ARRAY_HEADER_SIZE + 2L * string.length());
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
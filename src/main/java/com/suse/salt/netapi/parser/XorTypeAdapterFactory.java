@@ -2,13 +2,10 @@ package com.suse.salt.netapi.parser;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
-import com.google.gson.internal.bind.TypeAdapters;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
 
 import com.suse.salt.netapi.errors.JsonParsingError;
 import com.suse.salt.netapi.errors.SaltError;
@@ -56,7 +53,8 @@ public class XorTypeAdapterFactory implements TypeAdapterFactory {
     /**
      * Creates a generic Xor adapter by combining two other adapters - one for each side of
      * the Xor type. It will first try to parse incoming JSON data as the right type and, if
-     * that does not succeed, it will try again with the left type.
+     * that does not succeed, it will try again with the left type. The right type is parsed
+     * straight from the stream, see {@link ReplayingTypeAdapter}.
      *
      * All exceptions besides the possible parsing Exception of the left type are not
      * caught.
@@ -69,10 +67,14 @@ public class XorTypeAdapterFactory implements TypeAdapterFactory {
      */
     private <L, R> TypeAdapter<Xor<L, R>> xorAdapter(TypeAdapter<L> leftAdapter,
             TypeAdapter<R> rightAdapter) {
-        return new TypeAdapter<Xor<L, R>>() {
+        return new ReplayingTypeAdapter<Xor<L, R>>() {
             @Override
-            public Xor<L, R> read(JsonReader in) throws IOException {
-                JsonElement json = TypeAdapters.JSON_ELEMENT.read(in);
+            protected Xor<L, R> readValue(JsonReader in) throws IOException {
+                return Xor.right(rightAdapter.read(in));
+            }
+
+            @Override
+            protected Xor<L, R> readTree(JsonElement json) {
                 try {
                     R value = rightAdapter.fromJsonTree(json);
                     return Xor.right(value);
@@ -81,27 +83,27 @@ public class XorTypeAdapterFactory implements TypeAdapterFactory {
                     return Xor.left(value);
                 }
             }
-
-            @Override
-            public void write(JsonWriter out, Xor<L, R> xor) throws IOException {
-                throw new JsonParseException("Writing Xor is not supported");
-            }
         };
     }
 
     /**
      * Creates a Xor adapter specifically for the case in which the left side is a
-     * SaltError. This is used to catch any Salt-side or JSON parsing errors.
+     * SaltError. This is used to catch any Salt-side or JSON parsing errors. The right
+     * type is parsed straight from the stream, see {@link ReplayingTypeAdapter}.
      *
      * @param <R> the generic type for the right side of the Xor
      * @param innerAdapter the inner adapter
      * @return the Xor type adapter
      */
     private <R> TypeAdapter<Xor<SaltError, R>> errorAdapter(TypeAdapter<R> innerAdapter) {
-        return new TypeAdapter<Xor<SaltError, R>>() {
+        return new ReplayingTypeAdapter<Xor<SaltError, R>>() {
             @Override
-            public Xor<SaltError, R> read(JsonReader in) throws IOException {
-                JsonElement json = TypeAdapters.JSON_ELEMENT.read(in);
+            protected Xor<SaltError, R> readValue(JsonReader in) throws IOException {
+                return Xor.right(innerAdapter.read(in));
+            }
+
+            @Override
+            protected Xor<SaltError, R> readTree(JsonElement json) {
                 try {
                     R value = innerAdapter.fromJsonTree(json);
                     return Xor.right(value);
@@ -118,11 +120,6 @@ public class XorTypeAdapterFactory implements TypeAdapterFactory {
                 }
                 return Optional.empty();
             }
-
-            @Override
-            public void write(JsonWriter out, Xor<SaltError, R> xor) throws IOException {
-                throw new JsonParseException("Writing Xor is not supported");
-            }
         };
     }
 }
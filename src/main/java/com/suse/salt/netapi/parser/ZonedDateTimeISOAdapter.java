@@ -7,6 +7,8 @@ import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 
 /**
@@ -14,6 +16,8 @@ import java.time.ZonedDateTime;
  */
 public class ZonedDateTimeISOAdapter extends TypeAdapter<ZonedDateTime> {
 
+    private static final String UTC_FORMAT = "dddd-dd-ddTdd:dd:ddZ";
+
     @Override
     public void write(JsonWriter jsonWriter, ZonedDateTime date) throws IOException {
         if (date == null) {
@@ -29,6 +33,46 @@ public class ZonedDateTimeISOAdapter extends TypeAdapter<ZonedDateTime> {
             throw new JsonParseException("null is not a valid value for ZonedDateTime");
         }
         String dateStr = jsonReader.nextString();
-        return ZonedDateTime.parse(dateStr);
+        return parse(dateStr);
+    }
+
+    /**
+     * Parses an ISO formatted date, taking a shortcut for dates in UTC without fractions
+     * of seconds, like "2015-08-24T05:58:22Z", as returned for packages. Other dates and
+     * invalid values are left to {@link ZonedDateTime#parse(CharSequence)}.
+     *
+     * @param date the date
+     * @return the parsed date
+     */
+    static ZonedDateTime parse(String date) {
+        if (date.length() == UTC_FORMAT.length() && matchesUtcFormat(date)) {
+            try {
+                return ZonedDateTime.of(digits(date, 0, 4), digits(date, 5, 2),
+                        digits(date, 8, 2), digits(date, 11, 2), digits(date, 14, 2),
+                        digits(date, 17, 2), 0, ZoneOffset.UTC);
+            } catch (DateTimeException e) {
+                // Out of range, let the parser report it
+            }
+        }
+        return ZonedDateTime.parse(date);
+    }
+
+    private static boolean matchesUtcFormat(String date) {
+        for (int i = 0; i < UTC_FORMAT.length(); i++) {
+            char expected = UTC_FORMAT.charAt(i);
+            char c = date.charAt(i);
+            if (expected == 'd' ? c < '0' || c > '9' : c != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(String date, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = value * 10 + date.charAt(i) - '0';
+        }
+        return value;
     }
 }
@@ -0,0 +1,149 @@
+package com.suse.salt.netapi.results;
+
+import com.suse.salt.netapi.parser.JsonCodec;
+import com.suse.salt.netapi.parser.ResponseBuffer;
+import com.suse.salt.netapi.parser.ReturnScanner.Span;
+
+import java.lang.reflect.Type;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read-only map of minion results decoding the result of a minion from the response body
+ * whenever it is looked up. Only the body and the position of every result in it are
+ * kept, by default results are not cached: iterating over all of them needs memory for a
+ * single result at a time. Maps caching the results decode every result at most once, on
+ * the first lookup, so that decoding scales with the results looked up rather than with
+ * the number of minions.
+ *
+ * @param <R> the type of the minion results
+ */
+public class LazyResultMap<R> extends AbstractMap<String, Result<R>> {
+
+    private final ResponseBuffer body;
+    private final Map<String, Span> spans;
+    private final Type resultType;
+    private final JsonCodec codec;
+    private final Optional<ConcurrentMap<String, Result<R>>> cache;
+
+    /**
+     * Creates a map of the results at the given positions.
+     *
+     * @param body the response body
+     * @param spans the position of the result of each minion in the body
+     * @param resultType the type of the results, a {@link Result} type
+     * @param codec the codec to decode the results with
+     */
+    public LazyResultMap(ResponseBuffer body, Map<String, Span> spans, Type resultType,
+            JsonCodec codec) {
+        this(body, spans, resultType, codec, false);
+    }
+
+    /**
+     * Creates a map of the results at the given positions.
+     *
+     * @param body the response body
+     * @param spans the position of the result of each minion in the body
+     * @param resultType the type of the results, a {@link Result} type
+     * @param codec the codec to decode the results with
+     * @param cacheResults whether decoded results are cached
+     */
+    public LazyResultMap(ResponseBuffer body, Map<String, Span> spans, Type resultType,
+            JsonCodec codec, boolean cacheResults) {
+        this.body = body;
+        this.spans = Collections.unmodifiableMap(spans);
+        this.resultType = resultType;
+        this.codec = codec;
+        this.cache = cacheResults ? Optional.of(new ConcurrentHashMap<>()) : Optional.empty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Result<R> get(Object minion) {
+        Span span = spans.get(minion);
+        return span == null ? null : decode((String) minion, span);
+    }
+
+    /**
+     * Returns the number of results decoded and cached so far, 0 for maps not caching
+     * results.
+     *
+     * @return the number of cached results
+     */
+    public int getCachedCount() {
+        return cache.map(Map::size).orElse(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object minion) {
+        return spans.containsKey(minion);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> keySet() {
+        return spans.keySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return spans.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Entry<String, Result<R>>> entrySet() {
+        return new AbstractSet<Entry<String, Result<R>>>() {
+            @Override
+            public Iterator<Entry<String, Result<R>>> iterator() {
+                Iterator<Entry<String, Span>> entries = spans.entrySet().iterator();
+                return new Iterator<Entry<String, Result<R>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Result<R>> next() {
+                        Entry<String, Span> entry = entries.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(),
+                                decode(entry.getKey(), entry.getValue()));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return spans.size();
+            }
+        };
+    }
+
+    private Result<R> decode(String minion, Span span) {
+        return cache.map(results -> results.computeIfAbsent(minion, m -> decode(span)))
+                .orElseGet(() -> decode(span));
+    }
+
+    private Result<R> decode(Span span) {
+        return codec.decode(body.stream(span.getOffset(), span.getLength()), resultType);
+    }
+}
@@ -12,6 +12,21 @@ public class Return<T> {
     @SerializedName("return")
     private T result;
 
+    /**
+     * Default constructor used by the JSON parser.
+     */
+    public Return() {
+    }
+
+    /**
+     * Constructor wrapping the given value.
+     *
+     * @param result the value this result holds
+     */
+    public Return(T result) {
+        this.result = result;
+    }
+
     /**
      * Returns the value of this result.
      *
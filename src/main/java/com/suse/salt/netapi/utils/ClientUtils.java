@@ -6,6 +6,18 @@ import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.gson.internal.$Gson$Types.newParameterizedTypeWithOwner;
 
@@ -16,6 +28,54 @@ import com.suse.salt.netapi.client.SaltClient;
  */
 public class ClientUtils {
 
+    /**
+     * Lazily created holder of the shared scheduler.
+     */
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService INSTANCE =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "salt-netapi-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Lazily created holder of the shared parser executor.
+     */
+    private static final class ParserExecutorHolder {
+        private static final ExecutorService INSTANCE =
+                Executors.newCachedThreadPool(runnable -> {
+                    Thread thread = new Thread(runnable, "salt-netapi-parser");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Returns a scheduler shared by all clients for short timer tasks like flushing
+     * pipelined calls. The scheduler runs on a single daemon thread, tasks submitted to
+     * it must not block.
+     *
+     * @return the shared scheduler
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return SchedulerHolder.INSTANCE;
+    }
+
+    /**
+     * Returns an executor shared by all clients for streaming response bodies into parsers
+     * that {@link com.suse.salt.netapi.parser.JsonParser#requiresStreaming() require it}
+     * when the client was created without a parser executor. Every such response occupies
+     * one of its daemon threads while it is being received, threads are created as needed
+     * and kept for a minute once idle.
+     *
+     * @return the shared parser executor
+     */
+    public static Executor sharedParserExecutor() {
+        return ParserExecutorHolder.INSTANCE;
+    }
+
     /**
      * Quietly close a given stream, suppressing exceptions.
      *
@@ -82,4 +142,91 @@ public class ClientUtils {
         }
         return function.split("\\.");
     }
+
+    /**
+     * Makes cancelling a stage derived from another one (e.g. via thenApply) cancel the
+     * original stage as well, which by default only happens the other way round.
+     *
+     * @param <T> the result type of the derived stage
+     * @param derived the derived stage
+     * @param source the stage it was derived from
+     * @return the derived stage
+     */
+    public static <T> CompletionStage<T> propagateCancellation(CompletionStage<T> derived,
+            CompletionStage<?> source) {
+        CompletableFuture<T> future = derived.toCompletableFuture();
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                source.toCompletableFuture().cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns a stage completing like the given one, or exceptionally with a
+     * {@link TimeoutException} if it did not complete within the given time. In the
+     * latter case, as well as when the returned stage is cancelled, the given stage is
+     * cancelled, aborting any HTTP request behind it.
+     * <p>
+     * The returned stage completes on the thread completing the given stage, or on a
+     * thread of the {@link ForkJoinPool#commonPool() common pool} when timing out.
+     *
+     * @param <T> the result type
+     * @param stage the stage to wait for
+     * @param timeoutMillis the time to wait in milliseconds
+     * @return a stage completing within the given time
+     */
+    public static <T> CompletionStage<T> withTimeout(CompletionStage<T> stage,
+            long timeoutMillis) {
+        return withTimeout(stage, timeoutMillis, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a stage completing like the given one, or exceptionally with a
+     * {@link TimeoutException} if it did not complete within the given time. In the
+     * latter case, as well as when the returned stage is cancelled, the given stage is
+     * cancelled, aborting any HTTP request behind it.
+     * <p>
+     * The returned stage completes on the thread completing the given stage, or on a
+     * thread of the given executor when timing out, which then runs the dependent stages
+     * and cancels the given stage. The {@link #sharedScheduler() shared scheduler} only
+     * triggers the timeout. Should the executor reject the task, the timeout is
+     * signalled on the scheduler thread.
+     *
+     * @param <T> the result type
+     * @param stage the stage to wait for
+     * @param timeoutMillis the time to wait in milliseconds
+     * @param executor the executor signalling the timeout
+     * @return a stage completing within the given time
+     */
+    public static <T> CompletionStage<T> withTimeout(CompletionStage<T> stage,
+            long timeoutMillis, Executor executor) {
+        CompletableFuture<T> source = stage.toCompletableFuture();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable timeout = () -> {
+            if (result.completeExceptionally(new TimeoutException(
+                    "No response within " + timeoutMillis + " ms"))) {
+                source.cancel(true);
+            }
+        };
+        ScheduledFuture<?> timer = sharedScheduler().schedule(() -> {
+            try {
+                executor.execute(timeout);
+            } catch (RejectedExecutionException e) {
+                timeout.run();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        source.whenComplete((value, e) -> {
+            timer.cancel(false);
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException &&
+                        e.getCause() != null ? e.getCause() : e);
+            } else {
+                result.complete(value);
+            }
+        });
+        return propagateCancellation(result, source);
+    }
 }
@@ -2,9 +2,18 @@ package com.suse.salt.netapi.utils;
 
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helpers for creating an async http client
@@ -16,18 +25,186 @@ public class HttpClientUtils {
      * @return HttpAsyncClient
      */
     public static CloseableHttpAsyncClient defaultClient() {
-        RequestConfig requestConfig = RequestConfig.custom()
+        HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClients.custom();
+        httpClientBuilder.setDefaultRequestConfig(defaultRequestConfig());
+
+        CloseableHttpAsyncClient asyncHttpClient = httpClientBuilder.build();
+        asyncHttpClient.start();
+        return asyncHttpClient;
+    }
+
+    /**
+     * Returns the default request config of the client created by {@link #defaultClient()}
+     * @return RequestConfig
+     */
+    public static RequestConfig defaultRequestConfig() {
+        return RequestConfig.custom()
                 .setConnectionRequestTimeout(0)
                 .setConnectTimeout(10000)
                 .setSocketTimeout(20000)
                 .setCookieSpec(CookieSpecs.STANDARD)
                 .build();
-        HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClients.custom();
-        httpClientBuilder.setDefaultRequestConfig(requestConfig);
+    }
 
-        CloseableHttpAsyncClient asyncHttpClient = httpClientBuilder.build();
-        asyncHttpClient.start();
-        return asyncHttpClient;
+    /**
+     * Returns a builder for an http client with a configurable connection pool and I/O
+     * reactor. Timeouts default to those of {@link #defaultClient()}.
+     *
+     * @return a PooledClientBuilder instance
+     */
+    public static PooledClientBuilder custom() {
+        return new PooledClientBuilder();
     }
 
+    /**
+     * Helper class for building a {@link PooledHttpClient}.
+     */
+    public static class PooledClientBuilder {
+        private int maxConnectionsPerRoute = 2;
+        private int maxConnectionsTotal = 20;
+        private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+        private int connectTimeout = 10000;
+        private int socketTimeout = 20000;
+        private int connectionRequestTimeout = 0;
+        private long keepAliveMillis = 30000;
+        private Optional<Long> evictIdleAfterMillis = Optional.empty();
+
+        private PooledClientBuilder() {
+        }
+
+        /**
+         * Sets the maximum number of connections to a single salt-api host.
+         *
+         * @param value the maximum number of connections per route
+         * @return this builder
+         */
+        public PooledClientBuilder withMaxConnectionsPerRoute(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.maxConnectionsPerRoute = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections in the pool.
+         *
+         * @param value the maximum number of connections
+         * @return this builder
+         */
+        public PooledClientBuilder withMaxConnectionsTotal(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.maxConnectionsTotal = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of I/O dispatcher threads, defaults to the number of cores.
+         *
+         * @param value the number of I/O threads
+         * @return this builder
+         */
+        public PooledClientBuilder withIoThreadCount(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.ioThreadCount = value;
+            return this;
+        }
+
+        /**
+         * Sets the timeouts of the client in milliseconds, 0 means no timeout.
+         *
+         * @param connect timeout for opening a connection
+         * @param socket timeout for waiting for data on an open connection
+         * @param connectionRequest timeout for leasing a connection from the pool
+         * @return this builder
+         */
+        public PooledClientBuilder withTimeouts(int connect, int socket, int connectionRequest) {
+            this.connectTimeout = connect;
+            this.socketTimeout = socket;
+            this.connectionRequestTimeout = connectionRequest;
+            return this;
+        }
+
+        /**
+         * Sets how long idle connections are kept alive if the server does not say
+         * otherwise in a Keep-Alive header.
+         *
+         * @param millis keep alive duration in milliseconds
+         * @return this builder
+         */
+        public PooledClientBuilder withKeepAlive(long millis) {
+            this.keepAliveMillis = millis;
+            return this;
+        }
+
+        /**
+         * Enables a background task closing connections that have been idle for longer
+         * than the given time, as well as expired ones.
+         *
+         * @param millis idle time in milliseconds after which connections are closed
+         * @return this builder
+         */
+        public PooledClientBuilder withIdleConnectionEviction(long millis) {
+            if (millis <= 0) {
+                throw new IllegalArgumentException("Expected value greater than 0");
+            }
+            this.evictIdleAfterMillis = Optional.of(millis);
+            return this;
+        }
+
+        /**
+         * Creates and starts the http client.
+         *
+         * @return the started client
+         */
+        public PooledHttpClient build() {
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(ioThreadCount)
+                    .setConnectTimeout(connectTimeout)
+                    .setSoTimeout(socketTimeout)
+                    .setSoKeepAlive(true)
+                    .setTcpNoDelay(true)
+                    .build();
+            PoolingNHttpClientConnectionManager connectionManager;
+            try {
+                connectionManager = new PoolingNHttpClientConnectionManager(
+                        new DefaultConnectingIOReactor(ioReactorConfig));
+            } catch (IOReactorException e) {
+                throw new IllegalStateException(e);
+            }
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            connectionManager.setMaxTotal(maxConnectionsTotal);
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectionRequestTimeout(connectionRequestTimeout)
+                    .setConnectTimeout(connectTimeout)
+                    .setSocketTimeout(socketTimeout)
+                    .setCookieSpec(CookieSpecs.STANDARD)
+                    .build();
+            long keepAlive = keepAliveMillis;
+            CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy((response, context) -> {
+                        long announced = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                .getKeepAliveDuration(response, context);
+                        return announced > 0 ? announced : keepAlive;
+                    })
+                    .build();
+            httpClient.start();
+
+            Optional<ScheduledFuture<?>> evictor = evictIdleAfterMillis.map(idle ->
+                    ClientUtils.sharedScheduler().scheduleWithFixedDelay(() -> {
+                        connectionManager.closeExpiredConnections();
+                        connectionManager.closeIdleConnections(idle, TimeUnit.MILLISECONDS);
+                    }, idle, idle, TimeUnit.MILLISECONDS));
+
+            return new PooledHttpClient(httpClient, connectionManager, requestConfig,
+                    connectTimeout, keepAliveMillis, evictor);
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package com.suse.salt.netapi.utils;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Async http client backed by a connection pool, as created by
+ * {@link HttpClientUtils#custom()}. Gives access to live statistics of the pool and allows
+ * to open connections ahead of the first requests.
+ */
+public class PooledHttpClient implements Closeable {
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final RequestConfig requestConfig;
+    private final long connectTimeoutMillis;
+    private final long keepAliveMillis;
+    private final Optional<ScheduledFuture<?>> evictor;
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient the started http client
+     * @param connectionManager the connection manager used by the client
+     * @param requestConfig the default request config of the client
+     * @param connectTimeoutMillis timeout for opening connections
+     * @param keepAliveMillis time connections are kept alive when idle
+     * @param evictor task closing idle connections, if any
+     */
+    PooledHttpClient(CloseableHttpAsyncClient httpClient,
+            PoolingNHttpClientConnectionManager connectionManager, RequestConfig requestConfig,
+            long connectTimeoutMillis, long keepAliveMillis,
+            Optional<ScheduledFuture<?>> evictor) {
+        this.httpClient = httpClient;
+        this.connectionManager = connectionManager;
+        this.requestConfig = requestConfig;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        this.evictor = evictor;
+    }
+
+    /**
+     * Returns the http client to be passed to
+     * {@link com.suse.salt.netapi.client.impl.HttpAsyncClientImpl}.
+     *
+     * @return the http client
+     */
+    public CloseableHttpAsyncClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the default request config of the http client, to be passed to
+     * {@link com.suse.salt.netapi.client.impl.HttpAsyncClientImpl#withRequestConfig}.
+     *
+     * @return the request config
+     */
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * Returns the statistics of the whole pool: leased, pending and available connections
+     * as well as the maximum number of connections.
+     *
+     * @return the pool statistics
+     */
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Returns the statistics of the connections to the host of the given URI.
+     *
+     * @param uri URI of the host
+     * @return the pool statistics for the host
+     */
+    public PoolStats getStats(URI uri) {
+        return connectionManager.getStats(route(uri));
+    }
+
+    /**
+     * Opens connections to the host of the given URI and returns them to the pool, so the
+     * first requests do not need to wait for TCP (and TLS) connection setup.
+     *
+     * @param uri URI of the host to connect to
+     * @param connections number of connections to open, capped by the per route limit
+     * @return CompletionStage completing once all connections are open
+     */
+    public CompletionStage<Void> prewarm(URI uri, int connections) {
+        HttpRoute route = route(uri);
+        int count = Math.min(connections, connectionManager.getMaxPerRoute(route));
+        List<CompletableFuture<NHttpClientConnection>> opened = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<NHttpClientConnection> future = new CompletableFuture<>();
+            connectionManager.requestConnection(route, null, connectTimeoutMillis, 0,
+                    TimeUnit.MILLISECONDS, new FutureCallback<NHttpClientConnection>() {
+                        @Override
+                        public void completed(NHttpClientConnection connection) {
+                            future.complete(connection);
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            future.completeExceptionally(e);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            future.cancel(false);
+                        }
+                    });
+            opened.add(future);
+        }
+
+        // Connections are released only after all of them are open, otherwise the pool
+        // would hand out the same connection again. The pool completes leases before it
+        // has registered them as leased, so releasing happens on another thread.
+        return CompletableFuture.allOf(opened.toArray(new CompletableFuture<?>[0]))
+                .whenCompleteAsync((v, e) -> opened.forEach(future ->
+                        future.thenAccept(connection -> release(route, connection))),
+                        ClientUtils.sharedScheduler());
+    }
+
+    private void release(HttpRoute route, NHttpClientConnection connection) {
+        try {
+            if (!connectionManager.isRouteComplete(connection)) {
+                HttpContext context = new BasicHttpContext();
+                connectionManager.startRoute(connection, route, context);
+                connectionManager.routeComplete(connection, route, context);
+            }
+            connectionManager.releaseConnection(connection, null, keepAliveMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops closing idle connections and shuts down the http client.
+     *
+     * @throws IOException in case of an error while shutting down
+     */
+    @Override
+    public void close() throws IOException {
+        evictor.ifPresent(task -> task.cancel(false));
+        httpClient.close();
+    }
+
+    // Needs to match the routes created by the default route planner of the client
+    private static HttpRoute route(URI uri) {
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+}
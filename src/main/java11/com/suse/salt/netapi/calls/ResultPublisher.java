@@ -0,0 +1,392 @@
+package com.suse.salt.netapi.calls;
+
+import com.google.gson.reflect.TypeToken;
+import com.suse.salt.netapi.calls.runner.Jobs;
+import com.suse.salt.netapi.client.SaltClient;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.Batch;
+import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.errors.GenericError;
+import com.suse.salt.netapi.event.EventListener;
+import com.suse.salt.netapi.event.EventStream;
+import com.suse.salt.netapi.event.JobReturnEvent;
+import com.suse.salt.netapi.event.RunnerReturnEvent;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Publisher of the results of a local call, emitting a minion id and its result as each
+ * minion returns. It is the streaming counterpart of
+ * {@link LocalCall#callAsync(SaltClient, Target, AuthMethod, EventStream,
+ * java.util.concurrent.CompletionStage, Optional)}, available when running on Java 11 or
+ * later: instead of a future per targeted minion only the ids of the minions yet to
+ * return are kept.
+ * <p>
+ * The call is sent when a subscriber subscribes, a publisher only accepts one subscriber.
+ * Results are emitted as requested by the subscriber. Results arriving without demand are
+ * buffered, since the event stream can not be slowed down. The publisher completes once
+ * every targeted minion returned, or was given an error result because the timeout
+ * elapsed or the event stream was closed. It fails if the call could not be sent.
+ * Cancelling the subscription stops listening for results.
+ * <p>
+ * Like {@link java.util.concurrent.SubmissionPublisher}, results, completion and errors
+ * are delivered to the subscriber by tasks run on an executor, the
+ * {@link ForkJoinPool#commonPool() common pool} by default, rather than on the threads
+ * receiving events or timing out. Only onSubscribe is called on the subscribing thread.
+ * Should the executor reject a task, the subscription is cancelled and the subscriber is
+ * given the {@link RejectedExecutionException} on the rejected thread.
+ *
+ * @param <R> the return type of the call
+ */
+public class ResultPublisher<R> implements Flow.Publisher<Map.Entry<String, Result<R>>> {
+
+    private final LocalCall<R> call;
+    private final SaltClient client;
+    private final Target<?> target;
+    private final AuthMethod auth;
+    private final EventStream events;
+    private final Optional<Batch> batch;
+    private final long timeoutMillis;
+    private final Executor executor;
+    private final TypeToken<Result<R>> resultType;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * Creates a publisher waiting for all minions to return.
+     *
+     * @param call the call to send
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param events the event stream to receive results from
+     * @param batch parameter for enabling and configuring batching
+     */
+    public ResultPublisher(LocalCall<R> call, SaltClient client, Target<?> target,
+            AuthMethod auth, EventStream events, Optional<Batch> batch) {
+        this(call, client, target, auth, events, batch, 0);
+    }
+
+    /**
+     * Creates a publisher waiting the given time for minions to return. Minions that
+     * did not return by then are emitted with an error result.
+     *
+     * @param call the call to send
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param events the event stream to receive results from
+     * @param batch parameter for enabling and configuring batching
+     * @param timeoutMillis time in milliseconds to wait for results once the call was
+     * sent, 0 to wait forever
+     */
+    public ResultPublisher(LocalCall<R> call, SaltClient client, Target<?> target,
+            AuthMethod auth, EventStream events, Optional<Batch> batch, long timeoutMillis) {
+        this(call, client, target, auth, events, batch, timeoutMillis,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher waiting the given time for minions to return, delivering
+     * results to the subscriber on the given executor. Minions that did not return by
+     * then are emitted with an error result.
+     *
+     * @param call the call to send
+     * @param client SaltClient instance
+     * @param target the target for the function
+     * @param auth authentication credentials to use
+     * @param events the event stream to receive results from
+     * @param batch parameter for enabling and configuring batching
+     * @param timeoutMillis time in milliseconds to wait for results once the call was
+     * sent, 0 to wait forever
+     * @param executor the executor delivering results to the subscriber
+     */
+    @SuppressWarnings("unchecked")
+    public ResultPublisher(LocalCall<R> call, SaltClient client, Target<?> target,
+            AuthMethod auth, EventStream events, Optional<Batch> batch, long timeoutMillis,
+            Executor executor) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Expected timeout not less than 0");
+        }
+        this.call = call;
+        this.client = client;
+        this.target = target;
+        this.auth = auth;
+        this.events = events;
+        this.batch = batch;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Objects.requireNonNull(executor);
+        this.resultType = (TypeToken<Result<R>>) TypeToken.get(ClientUtils.parameterizedType(
+                null, Result.class, call.getReturnType().getType()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Map.Entry<String, Result<R>>> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "Results can only be published to a single subscriber"));
+            return;
+        }
+        new Subscription(subscriber).start();
+    }
+
+    /**
+     * Subscription passing results on to the subscriber. Emitting is serialized by the
+     * executor task submitted when the work counter is incremented from zero.
+     */
+    private final class Subscription implements Flow.Subscription, EventListener {
+        private final Flow.Subscriber<? super Map.Entry<String, Result<R>>> subscriber;
+        private final Queue<Map.Entry<String, Result<R>>> buffer =
+                new ConcurrentLinkedQueue<>();
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger remaining = new AtomicInteger();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+        private volatile String jid;
+        private volatile CompletableFuture<?> response;
+        private volatile ScheduledFuture<?> timeout;
+
+        Subscription(Flow.Subscriber<? super Map.Entry<String, Result<R>>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            if (cancelled) {
+                return;
+            }
+            CompletableFuture<Optional<LocalAsyncResult<R>>> sent =
+                    call.callAsync(client, target, auth, batch).toCompletableFuture();
+            response = sent;
+            sent.whenComplete((lar, e) -> {
+                if (e != null) {
+                    fail(e);
+                } else if (lar.isPresent() && !lar.get().getMinions().isEmpty()) {
+                    listen(lar.get());
+                } else {
+                    finish();
+                }
+            });
+        }
+
+        private void listen(LocalAsyncResult<R> lar) {
+            jid = lar.getJid();
+            pending.addAll(lar.getMinions());
+            remaining.set(pending.size());
+            events.addEventListener(this);
+            if (timeoutMillis > 0) {
+                // The shared scheduler only triggers the expiry, it must not run it
+                timeout = ClientUtils.sharedScheduler().schedule(() -> execute(() -> expire(
+                        new GenericError("No result within " + timeoutMillis + " ms"))),
+                        timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (cancelled) {
+                cleanUp();
+                return;
+            }
+            // Look up results of minions that returned before the listener was added
+            Jobs.lookupJid(lar).callAsync(client, auth);
+        }
+
+        @Override
+        public void notify(Event event) {
+            Optional<JobReturnEvent> jobReturnEvent = JobReturnEvent.parse(event);
+            if (jobReturnEvent.isPresent()) {
+                JobReturnEvent e = jobReturnEvent.get();
+                if (e.getJobId().contentEquals(jid)) {
+                    emit(e.getMinionId(), () -> e.getData().getResult(resultType));
+                }
+            } else {
+                RunnerReturnEvent.parse(event).ifPresent(e -> {
+                    RunnerReturnEvent.Data data = e.getData();
+                    if (data.getFun().contentEquals("runner.jobs.list_job")) {
+                        Jobs.Info info = data.getResult(Jobs.Info.class);
+                        if (info.getJid().equals(jid)) {
+                            new ArrayList<>(pending).forEach(mid -> info
+                                    .getResult(mid, resultType)
+                                    .ifPresent(result -> emit(mid, () -> result)));
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void eventStreamClosed(int code, String phrase) {
+            expire(new GenericError("EventStream closed with reason " + phrase));
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Expected a positive number of items"));
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            stop();
+            drain();
+        }
+
+        /**
+         * Emits the result of a minion unless it was emitted before.
+         */
+        private void emit(String minionId, Supplier<Result<R>> result) {
+            if (pending.remove(minionId)) {
+                buffer.offer(new SimpleImmutableEntry<>(minionId, result.get()));
+                // Counted after buffering, so that no result is left behind on completion
+                if (remaining.decrementAndGet() == 0) {
+                    finish();
+                } else {
+                    drain();
+                }
+            }
+        }
+
+        private void expire(GenericError reason) {
+            Result<R> result = Result.error(reason);
+            new ArrayList<>(pending).forEach(mid -> emit(mid, () -> result));
+        }
+
+        private void finish() {
+            cleanUp();
+            done = true;
+            drain();
+        }
+
+        private void fail(Throwable e) {
+            error = e instanceof CompletionException &&
+                    e.getCause() != null ? e.getCause() : e;
+            finish();
+        }
+
+        private void stop() {
+            cancelled = true;
+            cleanUp();
+            CompletableFuture<?> sent = response;
+            if (sent != null) {
+                sent.cancel(true);
+            }
+        }
+
+        private void cleanUp() {
+            events.removeEventListener(this);
+            ScheduledFuture<?> timer = timeout;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        private void execute(Runnable task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                stop();
+                buffer.clear();
+                if (finished.compareAndSet(false, true)) {
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() == 0) {
+                execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            int missed = 1;
+            do {
+                long requested = demand.get();
+                long emitted = 0;
+                while (!cancelled) {
+                    boolean terminated = done;
+                    if (terminated && error != null) {
+                        terminate();
+                        return;
+                    }
+                    if (emitted == requested) {
+                        if (terminated && buffer.isEmpty()) {
+                            terminate();
+                        }
+                        break;
+                    }
+                    Map.Entry<String, Result<R>> item = buffer.poll();
+                    if (item == null) {
+                        if (terminated) {
+                            terminate();
+                        }
+                        break;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (cancelled) {
+                    buffer.clear();
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            cancelled = true;
+            buffer.clear();
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
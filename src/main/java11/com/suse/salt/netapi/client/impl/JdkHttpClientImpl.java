@@ -0,0 +1,235 @@
+package com.suse.salt.netapi.client.impl;
+
+import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * AsyncHttpClient implemented with the HTTP client of the JDK, available when running on
+ * Java 11 or later.
+ * <p>
+ * When the client prefers HTTP/2 and salt-api is reached through an HTTP/2 capable proxy,
+ * concurrent calls are multiplexed over a single connection instead of each of them
+ * occupying a connection of its own. As with {@link HttpAsyncClientImpl}, response bodies
+ * are either buffered and then parsed, or streamed into a parser running on a given
+ * executor while they arrive.
+ * <p>
+ * Cancelling a returned future only aborts the HTTP exchange when running on Java 16 or
+ * later. Before that the JDK client ignores the cancellation: the request still runs to
+ * its end, and its response body is closed once it has arrived. Requests of a client
+ * returned by {@link #withDeadline(Deadline)} time out on their own instead.
+ */
+public class JdkHttpClientImpl implements AsyncHttpClient {
+
+    /** HTTP client instance */
+    private final HttpClient httpClient;
+
+    /** Executor responses are parsed on while they are received */
+    private final Optional<Executor> parserExecutor;
+
+    /** Timeout for whole requests, if any */
+    private final Optional<Duration> requestTimeout;
+
+    /** Deadline of the requests, if any */
+    private final Optional<Deadline> deadline;
+
+    /**
+     * Init a connection to a given Salt API endpoint. Response bodies are buffered and
+     * parsed on a thread of the HTTP client once they are complete, unless the parser
+     * {@link JsonParser#requiresStreaming() requires streaming}: those bodies are streamed
+     * into the parser on {@link ClientUtils#sharedParserExecutor()}.
+     *
+     * @param httpClientIn the HTTP client
+     */
+    public JdkHttpClientImpl(HttpClient httpClientIn) {
+        this(httpClientIn, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * Init a connection to a given Salt API endpoint streaming response bodies into the
+     * parser as they arrive instead of buffering them. Every response occupies a thread
+     * of the given executor while it is being received, so the executor should not
+     * limit the number of concurrent requests.
+     *
+     * @param httpClientIn the HTTP client
+     * @param parserExecutorIn executor to run the parsers on
+     */
+    public JdkHttpClientImpl(HttpClient httpClientIn, Executor parserExecutorIn) {
+        this(httpClientIn, Optional.of(parserExecutorIn), Optional.empty());
+    }
+
+    /**
+     * Init a connection to a given Salt API endpoint.
+     *
+     * @param httpClientIn the HTTP client
+     * @param parserExecutorIn executor to stream responses into the parsers on, empty to
+     * buffer them
+     * @param requestTimeoutIn timeout for whole requests, empty for none
+     */
+    public JdkHttpClientImpl(HttpClient httpClientIn, Optional<Executor> parserExecutorIn,
+            Optional<Duration> requestTimeoutIn) {
+        this(httpClientIn, parserExecutorIn, requestTimeoutIn, Optional.empty());
+    }
+
+    private JdkHttpClientImpl(HttpClient httpClientIn, Optional<Executor> parserExecutorIn,
+            Optional<Duration> requestTimeoutIn, Optional<Deadline> deadlineIn) {
+        httpClient = httpClientIn;
+        parserExecutor = parserExecutorIn;
+        requestTimeout = requestTimeoutIn;
+        deadline = deadlineIn;
+    }
+
+    /**
+     * Returns a client sharing the HTTP client of this one whose requests time out at the
+     * given deadline: the timeout of every request is set to the time left when it is
+     * sent, or to the request timeout of this client if that is shorter. Unlike cancelling,
+     * this also ends exchanges before Java 16.
+     *
+     * @param deadlineIn the deadline of the requests
+     * @return a new client for the given deadline
+     */
+    @Override
+    public JdkHttpClientImpl withDeadline(Deadline deadlineIn) {
+        return new JdkHttpClientImpl(httpClient, parserExecutor, requestTimeout,
+                Optional.of(deadlineIn));
+    }
+
+    /**
+     * Creates an HTTP client preferring HTTP/2 with the same connect timeout as
+     * {@link com.suse.salt.netapi.utils.HttpClientUtils#defaultClient()}.
+     *
+     * @param executor executor for the asynchronous tasks of the client
+     * @return the HTTP client
+     */
+    public static HttpClient defaultClient(Executor executor) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
+                .cookieHandler(new CookieManager())
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data,
+            JsonParser<T> parser) {
+        return post(uri, headers, data.getBytes(StandardCharsets.UTF_8), parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, byte[] data,
+            JsonParser<T> parser) {
+        HttpRequest.Builder request = prepareRequest(uri, headers)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(data));
+        return executeRequest(request.build(), parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+            JsonParser<T> parser) {
+        return executeRequest(prepareRequest(uri, headers).GET().build(), parser);
+    }
+
+    private HttpRequest.Builder prepareRequest(URI uri, Map<String, String> headers) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .header("Accept", "application/json");
+        Optional<Duration> timeout = deadline
+                .map(d -> Duration.ofMillis(Math.max(1, d.remainingMillis())))
+                .map(left -> requestTimeout.filter(t -> t.compareTo(left) < 0).orElse(left))
+                .or(() -> requestTimeout);
+        timeout.ifPresent(request::timeout);
+        headers.forEach(request::header);
+        return request;
+    }
+
+    /**
+     * Sends the request and parses the response body. Cancelling the returned future
+     * cancels the exchange on Java 16 or later.
+     */
+    private <T> CompletionStage<T> executeRequest(HttpRequest request,
+            JsonParser<T> parser) {
+        Optional<Executor> executor = parser.requiresStreaming() && parserExecutor.isEmpty() ?
+                Optional.of(ClientUtils.sharedParserExecutor()) : parserExecutor;
+        CompletableFuture<HttpResponse<InputStream>> response =
+                httpClient.sendAsync(request, info -> bodySubscriber(info, executor));
+        CompletableFuture<T> result = executor
+                .map(e -> response.thenApplyAsync(r -> parse(r, parser), e))
+                .orElseGet(() -> response.thenApply(r -> parse(r, parser)));
+        result.whenComplete((parsed, e) -> {
+            if (result.isCancelled()) {
+                response.cancel(true);
+                response.thenAccept(r -> close(r.body()));
+            }
+        });
+        return result;
+    }
+
+    private static BodySubscriber<InputStream> bodySubscriber(ResponseInfo info,
+            Optional<Executor> executor) {
+        if (!isSuccess(info.statusCode())) {
+            return BodySubscribers.replacing(null);
+        } else if (executor.isPresent()) {
+            return BodySubscribers.ofInputStream();
+        }
+        return BodySubscribers.mapping(BodySubscribers.ofByteArray(),
+                ByteArrayInputStream::new);
+    }
+
+    private static <T> T parse(HttpResponse<InputStream> response, JsonParser<T> parser) {
+        if (!isSuccess(response.statusCode())) {
+            throw new CompletionException(
+                    HttpAsyncClientImpl.createSaltException(response.statusCode()));
+        }
+        try (InputStream body = response.body()) {
+            return parser.parse(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(InputStream body) {
+        if (body != null) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode == 200 || statusCode == 202;
+    }
+}
@@ -11,6 +11,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
@@ -27,6 +28,9 @@ import com.suse.salt.netapi.datatypes.Token;
 import com.suse.salt.netapi.datatypes.target.Glob;
 import com.suse.salt.netapi.datatypes.target.SSHTarget;
 import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.parser.SpillPolicy;
+import com.suse.salt.netapi.results.LazyResultMap;
+import com.suse.salt.netapi.results.Result;
 import com.suse.salt.netapi.utils.ClientUtils;
 import com.suse.salt.netapi.utils.TestUtils;
 import org.junit.Before;
@@ -35,7 +39,15 @@ import org.junit.Test;
 
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Tests for LocalCall
@@ -156,6 +168,90 @@ public class LocalCallTest {
                 .withRequestBody(equalToJson(JSON_CALL_SYNC_PING_REQUEST)));
     }
 
+    /**
+     * Verify a synchronous call spilling its response to a file.
+     */
+    @Test
+    public void testCallSyncSpilling() throws Exception {
+        stubFor(any(urlMatching("/run"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_CALL_SYNC_PING_RESPONSE)));
+
+        LocalCall<Boolean> run = com.suse.salt.netapi.calls.modules.Test.ping();
+        Path directory = Files.createTempDirectory("spill");
+        Map<String, Result<Boolean>> results = run.callSync(client, new Glob("*"), AUTH,
+                SpillPolicy.custom().withThreshold(0).withDirectory(directory).build())
+                .toCompletableFuture().join();
+
+        assertEquals(Arrays.asList("minion1", "minion2"), new ArrayList<>(results.keySet()));
+        assertTrue(results.get("minion2").result().get());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withRequestBody(equalToJson(JSON_CALL_SYNC_PING_REQUEST)));
+    }
+
+    /**
+     * Verify a synchronous call passing the results through undecoded.
+     */
+    @Test
+    public void testCallSyncRaw() {
+        stubFor(any(urlMatching("/run"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_CALL_SYNC_PING_RESPONSE)));
+
+        Map<String, ByteBuffer> results = com.suse.salt.netapi.calls.modules.Test.ping()
+                .callSyncRaw(client, new Glob("*"), AUTH).toCompletableFuture().join();
+
+        assertEquals(Arrays.asList("minion1", "minion2"), new ArrayList<>(results.keySet()));
+        assertEquals(StandardCharsets.UTF_8.encode("true"), results.get("minion1"));
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withRequestBody(equalToJson(JSON_CALL_SYNC_PING_REQUEST)));
+    }
+
+    @Test
+    public void testCallSyncLazy() {
+        stubFor(any(urlMatching("/run"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_CALL_SYNC_PING_RESPONSE)));
+
+        Map<String, Result<Boolean>> results = com.suse.salt.netapi.calls.modules.Test.ping()
+                .callSyncLazy(client, new Glob("*"), AUTH).toCompletableFuture().join();
+
+        assertEquals(Arrays.asList("minion1", "minion2"), new ArrayList<>(results.keySet()));
+        assertSame(results.get("minion1"), results.get("minion1"));
+        assertTrue(results.get("minion1").result().get());
+        assertEquals(1, ((LazyResultMap<Boolean>) results).getCachedCount());
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withRequestBody(equalToJson(JSON_CALL_SYNC_PING_REQUEST)));
+    }
+
+    @Test
+    public void testCallSyncParallel() {
+        stubFor(any(urlMatching("/run"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_CALL_SYNC_PING_RESPONSE)));
+
+        Map<String, Result<Boolean>> results = com.suse.salt.netapi.calls.modules.Test.ping()
+                .callSyncParallel(client, new Glob("*"), AUTH, Runnable::run)
+                .toCompletableFuture().join();
+
+        assertEquals(Arrays.asList("minion1", "minion2"), new ArrayList<>(results.keySet()));
+        assertTrue(results.get("minion1").result().get());
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withRequestBody(equalToJson(JSON_CALL_SYNC_PING_REQUEST)));
+    }
+
     /**
      * Verify correctness of the request body with an exemplary synchronous batch call.
      */
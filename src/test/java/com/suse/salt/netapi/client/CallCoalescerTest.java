@@ -0,0 +1,91 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Grains;
+import com.suse.salt.netapi.calls.modules.Pkg;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.results.Result;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tests for CallCoalescer.
+ */
+public class CallCoalescerTest {
+
+    private static final AuthMethod AUTH =
+            new AuthMethod(new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+
+    private final ManualClient http = new ManualClient();
+    private final SaltClient client =
+            new SaltClient(URI.create("http://localhost/"), http).withCoalescing();
+
+    private CompletableFuture<Map<String, Result<Map<String, Object>>>> items(
+            SaltClient saltClient, MinionList target) {
+        return Grains.items(false).callSync(saltClient, target, AUTH).toCompletableFuture();
+    }
+
+    @Test
+    public void testIdenticalCallsShareRequest() {
+        CompletableFuture<Map<String, Result<Map<String, Object>>>> first =
+                items(client, new MinionList("minion1"));
+        CompletableFuture<Map<String, Result<Map<String, Object>>>> second =
+                items(client, new MinionList("minion1"));
+        assertEquals(1, http.getRequests().size());
+
+        http.request(0).answer("{\"return\": [{\"minion1\": {\"os\": \"SUSE\"}}]}");
+        assertSame(first.join(), second.join());
+
+        // Completed calls are not kept
+        items(client, new MinionList("minion1"));
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @Test
+    public void testDifferentCallsNotShared() {
+        items(client, new MinionList("minion1"));
+        items(client, new MinionList("minion2"));
+        Grains.items(true).callSync(client, new MinionList("minion1"), AUTH);
+        assertEquals(3, http.getRequests().size());
+    }
+
+    @Test
+    public void testNonIdempotentCallsNotShared() {
+        Pkg.install(true, Arrays.asList("vim")).callSync(client, new Glob("*"), AUTH);
+        Pkg.install(true, Arrays.asList("vim")).callSync(client, new Glob("*"), AUTH);
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @Test
+    public void testWithoutCoalescing() {
+        SaltClient plain = client.withoutCoalescing();
+        items(plain, new MinionList("minion1"));
+        items(plain, new MinionList("minion1"));
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @Test
+    public void testCancel() {
+        CompletableFuture<?> first = items(client, new MinionList("minion1"));
+        CompletableFuture<?> second = items(client, new MinionList("minion1"));
+
+        first.cancel(true);
+        assertFalse(http.request(0).getResponse().isCancelled());
+        assertFalse(second.isDone());
+
+        second.cancel(true);
+        assertTrue(http.request(0).getResponse().isCancelled());
+    }
+}
@@ -0,0 +1,121 @@
+package com.suse.salt.netapi.client;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.gson.reflect.TypeToken;
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.Client;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.calls.runner.Manage;
+import com.suse.salt.netapi.client.impl.HttpAsyncClientImpl;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.ClientUtils;
+import com.suse.salt.netapi.utils.TestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Tests for CallPipeline.
+ */
+public class CallPipelineTest {
+
+    private static final int MOCK_HTTP_PORT = 8888;
+
+    static final AuthMethod AUTH = new AuthMethod(
+            new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    private SaltClient client;
+
+    @Before
+    public void init() {
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+        client = new SaltClient(uri, new HttpAsyncClientImpl(TestUtils.defaultClient()))
+                .withPipelining(2, 10000);
+    }
+
+    @org.junit.Test
+    public void testCallsSharingOneRequest() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true}, [\"minion1\"]]}")));
+
+        CompletionStage<Map<String, Result<Boolean>>> ping =
+                Test.ping().callSync(client, new Glob("*"), AUTH);
+        CompletionStage<Result<List<String>>> up = Manage.present().callSync(client, AUTH);
+
+        Map<String, Result<Boolean>> pingResult = ping.toCompletableFuture().join();
+        Result<List<String>> upResult = up.toCompletableFuture().join();
+
+        assertEquals(Boolean.TRUE, pingResult.get("minion1").result().get());
+        assertEquals(Collections.singletonList("minion1"), upResult.result().get());
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withRequestBody(equalToJson("[" +
+                        "{\"client\": \"local\", \"fun\": \"test.ping\", \"tgt\": \"*\"," +
+                        " \"tgt_type\": \"glob\", \"username\": \"user\"," +
+                        " \"password\": \"pa55wd\", \"eauth\": \"auto\"}," +
+                        "{\"client\": \"runner\", \"fun\": \"manage.present\"," +
+                        " \"username\": \"user\", \"password\": \"pa55wd\"," +
+                        " \"eauth\": \"auto\"}]")));
+    }
+
+    @org.junit.Test
+    public void testFlush() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true}]}")));
+
+        CallPipeline pipeline = new CallPipeline(client.withoutPipelining(), 10, 10000,
+                ClientUtils.sharedScheduler());
+        CompletionStage<Return<List<Map<String, Result<Boolean>>>>> pipelined =
+                pipeline.call(Test.ping(), Client.LOCAL, Optional.of(new Glob("*")),
+                        Collections.emptyMap(),
+                        new TypeToken<Return<List<Map<String, Result<Boolean>>>>>(){}, AUTH);
+        assertFalse(pipelined.toCompletableFuture().isDone());
+        pipeline.flush();
+
+        Return<List<Map<String, Result<Boolean>>>> result =
+                pipelined.toCompletableFuture().join();
+        assertTrue(result.getResult().get(0).get("minion1").result().get());
+    }
+
+    @org.junit.Test
+    public void testSupports() {
+        TypeToken<Return<List<Boolean>>> listType = new TypeToken<Return<List<Boolean>>>(){};
+        assertTrue(CallPipeline.supports(Client.LOCAL, Collections.emptyMap(), listType));
+        assertFalse(CallPipeline.supports(Client.LOCAL_BATCH, Collections.emptyMap(),
+                listType));
+        assertFalse(CallPipeline.supports(Client.SSH, Collections.emptyMap(), listType));
+        assertFalse(CallPipeline.supports(Client.LOCAL, Collections.emptyMap(),
+                new TypeToken<Return<String>>(){}));
+    }
+}
@@ -0,0 +1,113 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.parser.JsonParser;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests for Deadline.
+ */
+public class DeadlineTest {
+
+    private static final AuthMethod AUTH =
+            new AuthMethod(new PasswordAuth("user", "pa55wd", AuthModule.PAM));
+
+    private long now;
+
+    private Deadline after(long millis) {
+        return Deadline.after(millis, () -> now);
+    }
+
+    private static JsonObject lowstate(String body) {
+        JsonArray chunks = JsonParser.GSON.fromJson(body, JsonArray.class);
+        return chunks.get(0).getAsJsonObject();
+    }
+
+    @org.junit.Test
+    public void testRemaining() {
+        Deadline deadline = after(1500);
+        assertEquals(1500, deadline.remainingMillis());
+        assertFalse(deadline.isExpired());
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertEquals(500, deadline.remainingMillis());
+
+        now += TimeUnit.MILLISECONDS.toNanos(600);
+        assertEquals(0, deadline.remainingMillis());
+        assertTrue(deadline.isExpired());
+    }
+
+    @org.junit.Test
+    public void testSaltTimeouts() {
+        // 60s left: 5s margin, 55s for Salt split into 45s + 10s
+        Map<String, Object> timeouts = after(60000).saltTimeouts();
+        assertEquals(45, timeouts.get("timeout"));
+        assertEquals(10, timeouts.get("gather_job_timeout"));
+
+        // 20s left: 2s margin, 18s for Salt split into 14s + 4s
+        timeouts = after(20000).saltTimeouts();
+        assertEquals(14, timeouts.get("timeout"));
+        assertEquals(4, timeouts.get("gather_job_timeout"));
+
+        // Salt gets at least one second each
+        timeouts = after(800).saltTimeouts();
+        assertEquals(1, timeouts.get("timeout"));
+        assertEquals(1, timeouts.get("gather_job_timeout"));
+    }
+
+    @org.junit.Test
+    public void testPropagation() {
+        Deadline deadline = after(60000);
+        ManualClient http = new ManualClient();
+        SaltClient client = new SaltClient(URI.create("http://localhost/"), http);
+
+        CompletableFuture<?> result =
+                Test.ping().callSync(client, new Glob("*"), AUTH, deadline).toCompletableFuture();
+        assertFalse(result.isDone());
+        assertEquals(1, http.getBodies().size());
+        assertSame(deadline, http.request(0).getDeadline().get());
+
+        JsonObject lowstate = lowstate(http.getBodies().get(0));
+        assertEquals("local", lowstate.get("client").getAsString());
+        assertEquals(45, lowstate.get("timeout").getAsInt());
+        assertEquals(10, lowstate.get("gather_job_timeout").getAsInt());
+    }
+
+    @org.junit.Test
+    public void testExpired() {
+        Deadline deadline = after(100);
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        ManualClient http = new ManualClient();
+        SaltClient client = new SaltClient(URI.create("http://localhost/"), http);
+
+        CompletableFuture<?> result =
+                Test.ping().callSync(client, new Glob("*"), AUTH, deadline).toCompletableFuture();
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(http.getBodies().isEmpty());
+        try {
+            result.join();
+            fail("Expected a timeout");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+}
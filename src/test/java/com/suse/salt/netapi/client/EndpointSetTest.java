@@ -0,0 +1,123 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.parser.JsonParser;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for EndpointSet.
+ */
+public class EndpointSetTest {
+
+    private static final URI FIRST = URI.create("http://salt1:8000/");
+    private static final URI SECOND = URI.create("http://salt2:8000/");
+
+    private final ManualClient http = new ManualClient();
+    private long now = TimeUnit.SECONDS.toNanos(1);
+
+    private EndpointSet endpoints() {
+        return EndpointSet.custom()
+                .withDecay(10000)
+                .withEjection(1000, 8000)
+                .build(Arrays.asList(FIRST, SECOND), () -> now);
+    }
+
+    private CompletableFuture<Object> send(EndpointSet endpoints) {
+        return endpoints.send(uri -> http.get(uri.resolve("stats"), JsonParser.STATS))
+                .thenApply(stats -> (Object) stats).toCompletableFuture();
+    }
+
+    private long count(URI base) {
+        return http.getRequests().stream()
+                .filter(request -> request.getUri().toString().startsWith(base.toString()))
+                .count();
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        EndpointSet endpoints = endpoints();
+        for (int i = 0; i < 10; i++) {
+            send(endpoints);
+        }
+        assertEquals(5, count(FIRST));
+        assertEquals(5, count(SECOND));
+        assertEquals(5, endpoints.getEndpoints().get(0).getOutstanding());
+    }
+
+    @Test
+    public void testSlowEndpointAvoided() {
+        EndpointSet endpoints = endpoints();
+        send(endpoints);
+        send(endpoints);
+        // The first request stalls while the second one is answered quickly
+        now += TimeUnit.MILLISECONDS.toNanos(10);
+        http.request(1).getResponse().complete(null);
+        now += TimeUnit.MILLISECONDS.toNanos(2000);
+        http.request(0).getResponse().complete(null);
+
+        URI slowUri = http.request(0).getUri().resolve("/");
+        EndpointSet.Endpoint slow = endpoints.getEndpoints().get(slowUri.equals(FIRST) ? 0 : 1);
+        long before = count(slowUri);
+        for (int i = 0; i < 10; i++) {
+            send(endpoints);
+            http.last().getResponse().complete(null);
+        }
+        assertEquals(before, count(slowUri));
+        assertEquals(2010, slow.getLatencyMillis(), 0.1);
+    }
+
+    @Test
+    public void testEjectionOnConnectionError() {
+        EndpointSet endpoints = endpoints();
+        send(endpoints);
+        URI failing = http.request(0).getUri().resolve("/");
+        http.request(0).getResponse().completeExceptionally(new ConnectException("refused"));
+        EndpointSet.Endpoint endpoint = endpoints.getEndpoints().get(
+                failing.equals(FIRST) ? 0 : 1);
+        assertTrue(endpoint.isEjected());
+
+        for (int i = 0; i < 10; i++) {
+            send(endpoints);
+        }
+        assertEquals(1, count(failing));
+
+        // Back in service once the ejection is over
+        now += TimeUnit.MILLISECONDS.toNanos(1001);
+        assertFalse(endpoint.isEjected());
+        send(endpoints);
+        assertEquals(2, count(failing));
+    }
+
+    @Test
+    public void testAllEjected() {
+        EndpointSet endpoints = endpoints();
+        send(endpoints);
+        send(endpoints);
+        http.request(0).getResponse().completeExceptionally(new ConnectException("refused"));
+        now += TimeUnit.MILLISECONDS.toNanos(10);
+        http.request(1).getResponse().completeExceptionally(new ConnectException("refused"));
+
+        send(endpoints);
+        assertEquals(http.request(0).getUri(), http.request(2).getUri());
+    }
+
+    @Test
+    public void testSaltClient() {
+        SaltClient client = new SaltClient(endpoints(), http);
+        client.stats();
+        client.stats();
+        assertEquals(1, count(FIRST));
+        assertEquals(1, count(SECOND));
+        assertTrue(http.getRequests().stream()
+                .anyMatch(request -> request.getUri().equals(FIRST.resolve("stats"))));
+    }
+}
@@ -0,0 +1,94 @@
+package com.suse.salt.netapi.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.Client;
+import com.suse.salt.netapi.calls.LocalCall;
+import com.suse.salt.netapi.calls.modules.Cmd;
+import com.suse.salt.netapi.client.impl.HttpAsyncClientImpl;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.utils.TestUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * JMH benchmark comparing LowstateWriter with serializing the lowstate map with Gson,
+ * as SaltClient did before, for a cmd.run call with password authentication targeting
+ * a list of minions. Run the main method with the test classpath; it adds the GC
+ * profiler, so the allocation per request body is reported as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LowstateWriterBenchmark {
+
+    private static final AuthMethod PASSWORD = new AuthMethod(
+            new PasswordAuth("user", "password", AuthModule.PAM));
+
+    @Param({"1", "100", "5000"})
+    private int minions;
+
+    private final SaltClient client = new SaltClient(URI.create("http://localhost"),
+            new HttpAsyncClientImpl(TestUtils.defaultClient()));
+    private final Gson gson = new GsonBuilder().create();
+    private final LocalCall<String> call = Cmd.run("uptime");
+    private final Map<String, Object> custom = Collections.emptyMap();
+    private Optional<Target<?>> target;
+
+    /**
+     * Builds the target list of the configured number of minions.
+     */
+    @Setup
+    public void setUp() {
+        target = Optional.of(new MinionList(IntStream.range(0, minions)
+                .mapToObj(i -> "minion" + i + ".example.com")
+                .collect(Collectors.toList())));
+    }
+
+    @Benchmark
+    public byte[] gsonMap() {
+        List<Map<String, Object>> list = Collections.singletonList(
+                client.lowstate(call, Client.LOCAL, target, custom, PASSWORD));
+        return gson.toJson(list).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] lowstateWriter() {
+        return LowstateWriter.write(call, Client.LOCAL, target, custom, PASSWORD);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LowstateWriterBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
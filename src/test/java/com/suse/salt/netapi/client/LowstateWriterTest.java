@@ -0,0 +1,105 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.Call;
+import com.suse.salt.netapi.calls.Client;
+import com.suse.salt.netapi.calls.modules.Cmd;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.client.impl.HttpAsyncClientImpl;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.Token;
+import com.suse.salt.netapi.datatypes.target.Grains;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.utils.TestUtils;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tests for LowstateWriter.
+ */
+public class LowstateWriterTest {
+
+    private static final AuthMethod PASSWORD = new AuthMethod(
+            new PasswordAuth("user", "pa55<wd>", AuthModule.PAM));
+    private static final AuthMethod TOKEN = new AuthMethod(new Token());
+
+    private final SaltClient client = new SaltClient(URI.create("http://localhost"),
+            new HttpAsyncClientImpl(TestUtils.defaultClient()));
+
+    private void assertSameAsMap(Call<?> call, Client clientType, Optional<Target<?>> target,
+            Map<String, Object> custom, AuthMethod auth) {
+        JsonElement expected = new JsonParser().parse(new Gson().toJson(Collections
+                .singletonList(client.lowstate(call, clientType, target, custom, auth))));
+        byte[] written = LowstateWriter.write(call, clientType, target, custom, auth);
+        JsonElement actual = new JsonParser().parse(
+                new String(written, StandardCharsets.UTF_8));
+        assertEquals(expected, actual);
+    }
+
+    @org.junit.Test
+    public void testPasswordAuth() {
+        assertSameAsMap(Cmd.run("echo '<&>' \u00e4 \uD83D\uDE00 \u2028"), Client.LOCAL,
+                Optional.of(new MinionList("minion1", "minion2")), Collections.emptyMap(),
+                PASSWORD);
+    }
+
+    @org.junit.Test
+    public void testTokenAuth() {
+        assertSameAsMap(Test.ping(), Client.LOCAL_ASYNC,
+                Optional.of(new Grains("os", "SLES", ':')), Collections.emptyMap(), TOKEN);
+    }
+
+    @org.junit.Test
+    public void testWithoutTarget() {
+        assertSameAsMap(Test.ping().withMetadata(Collections.singletonMap("id", 1)),
+                Client.RUNNER, Optional.empty(), Collections.emptyMap(), PASSWORD);
+    }
+
+    @org.junit.Test
+    public void testOverridesAndNulls() {
+        Map<String, Object> custom = new HashMap<>();
+        custom.put("batch", "10%");
+        custom.put("fun", "test.echo");
+        custom.put("tgt", Arrays.asList("a", "b"));
+        custom.put("eauth", "ldap");
+        custom.put("ignored", null);
+        assertSameAsMap(Test.ping().withTimeouts(Optional.of(5), Optional.empty()),
+                Client.LOCAL_BATCH, Optional.of(new MinionList("minion1")), custom,
+                PASSWORD);
+    }
+
+    @org.junit.Test
+    public void testBufferReuse() {
+        MinionList large = new MinionList(Collections.nCopies(20000, "minion"));
+        assertSameAsMap(Test.ping(), Client.LOCAL, Optional.of(large),
+                Collections.emptyMap(), PASSWORD);
+        assertSameAsMap(Test.ping(), Client.LOCAL, Optional.of(new MinionList("minion1")),
+                Collections.emptyMap(), PASSWORD);
+    }
+
+    @org.junit.Test
+    public void testChunks() {
+        Map<String, Object> first = client.lowstate(Test.ping(), Client.LOCAL,
+                Optional.of(new MinionList("minion1")), Collections.emptyMap(), TOKEN);
+        Map<String, Object> second = client.lowstate(Cmd.run("uptime"), Client.LOCAL,
+                Optional.of(new MinionList("minion2")), Collections.emptyMap(), TOKEN);
+        JsonElement expected = new JsonParser().parse(
+                new Gson().toJson(Arrays.asList(first, second)));
+        JsonElement actual = new JsonParser().parse(new String(
+                LowstateWriter.write(Arrays.asList(first, second)), StandardCharsets.UTF_8));
+        assertEquals(expected, actual);
+    }
+}
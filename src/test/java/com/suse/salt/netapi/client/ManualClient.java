@@ -0,0 +1,175 @@
+package com.suse.salt.netapi.client;
+
+import com.suse.salt.netapi.parser.JsonParser;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Client for tests recording all requests and answering them only when told so, or
+ * right away by a given responder.
+ */
+public class ManualClient implements AsyncHttpClient {
+
+    /**
+     * A request sent through the client, waiting for its response.
+     */
+    public static class Request {
+        private final URI uri;
+        private final Map<String, String> headers;
+        private final Optional<String> body;
+        private final JsonParser<?> parser;
+        private final Optional<Deadline> deadline;
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+
+        Request(URI uri, Map<String, String> headers, Optional<String> body,
+                JsonParser<?> parser, Optional<Deadline> deadline) {
+            this.uri = uri;
+            this.headers = headers;
+            this.body = body;
+            this.parser = parser;
+            this.deadline = deadline;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public Optional<String> getBody() {
+            return body;
+        }
+
+        public Optional<Deadline> getDeadline() {
+            return deadline;
+        }
+
+        public CompletableFuture<Object> getResponse() {
+            return response;
+        }
+
+        /**
+         * Completes the request with the given response parsed by its parser.
+         *
+         * @param json the response body
+         */
+        public void answer(String json) {
+            response.complete(parser.parse(json));
+        }
+    }
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final Consumer<Request> responder;
+
+    /**
+     * Creates a client leaving all requests pending.
+     */
+    public ManualClient() {
+        this(request -> { });
+    }
+
+    /**
+     * Creates a client passing each request to the given responder once it is recorded.
+     *
+     * @param responder consumer that may answer requests right away
+     */
+    public ManualClient(Consumer<Request> responder) {
+        this.responder = responder;
+    }
+
+    @Override
+    public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+            JsonParser<T> parser) {
+        return send(uri, headers, Optional.empty(), parser, Optional.empty());
+    }
+
+    @Override
+    public <T> CompletionStage<T> post(URI uri, Map<String, String> headers, String data,
+            JsonParser<T> parser) {
+        return send(uri, headers, Optional.of(data), parser, Optional.empty());
+    }
+
+    @Override
+    public AsyncHttpClient withDeadline(Deadline deadline) {
+        return new AsyncHttpClient() {
+            @Override
+            public <T> CompletionStage<T> get(URI uri, Map<String, String> headers,
+                    JsonParser<T> parser) {
+                return send(uri, headers, Optional.empty(), parser, Optional.of(deadline));
+            }
+
+            @Override
+            public <T> CompletionStage<T> post(URI uri, Map<String, String> headers,
+                    String data, JsonParser<T> parser) {
+                return send(uri, headers, Optional.of(data), parser, Optional.of(deadline));
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<T> send(URI uri, Map<String, String> headers,
+            Optional<String> body, JsonParser<T> parser, Optional<Deadline> deadline) {
+        Request request = new Request(uri, headers, body, parser, deadline);
+        requests.add(request);
+        responder.accept(request);
+        return (CompletionStage<T>) request.response;
+    }
+
+    /**
+     * @return all requests sent so far, in the order they were sent
+     */
+    public List<Request> getRequests() {
+        return Collections.unmodifiableList(requests);
+    }
+
+    /**
+     * @return the requests still waiting for their response, in the order they were sent
+     */
+    public List<Request> getPending() {
+        return requests.stream().filter(request -> !request.response.isDone())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the bodies of all posted requests, in the order they were sent
+     */
+    public List<String> getBodies() {
+        return requests.stream().filter(request -> request.body.isPresent())
+                .map(request -> request.body.get()).collect(Collectors.toList());
+    }
+
+    /**
+     * @param index the index of the request in the order they were sent
+     * @return the request at the given index
+     */
+    public Request request(int index) {
+        return requests.get(index);
+    }
+
+    /**
+     * @return the request sent last
+     */
+    public Request last() {
+        return requests.get(requests.size() - 1);
+    }
+
+    /**
+     * Completes the request sent last with the given response.
+     *
+     * @param json the response body
+     */
+    public void answer(String json) {
+        last().answer(json);
+    }
+}
@@ -0,0 +1,166 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.calls.wheel.Key;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.Token;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.datatypes.target.Target;
+import com.suse.salt.netapi.exception.RateLimitException;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for RateLimiter.
+ */
+public class RateLimiterTest {
+
+    private static final AuthMethod ALICE =
+            new AuthMethod(new PasswordAuth("alice", "pa55wd", AuthModule.PAM));
+    private static final AuthMethod BOB =
+            new AuthMethod(new PasswordAuth("bob", "pa55wd", AuthModule.PAM));
+
+    private final ManualClient http = new ManualClient();
+    private long now;
+
+    private SaltClient client(RateLimiter limiter) {
+        return new SaltClient(URI.create("http://localhost/"), http).withRateLimiter(limiter);
+    }
+
+    private CompletableFuture<?> ping(SaltClient client, Target<?> target, AuthMethod auth) {
+        return Test.ping().callSync(client, target, auth).toCompletableFuture();
+    }
+
+    private static RateLimitException rejection(CompletableFuture<?> result) {
+        assertTrue(result.isCompletedExceptionally());
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            return (RateLimitException) e.getCause();
+        }
+        throw new AssertionError("Expected a rejection");
+    }
+
+    @org.junit.Test
+    public void testCallRate() {
+        RateLimiter limiter = RateLimiter.custom().withCallRate(1, 2).build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new Glob("*"), ALICE);
+        ping(client, new Glob("*"), ALICE);
+        RateLimitException e = rejection(ping(client, new Glob("*"), ALICE));
+        assertEquals("pam:alice", e.getKey());
+        assertEquals(1000, e.getRetryAfterMillis());
+        assertEquals(2, http.getRequests().size());
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        assertFalse(ping(client, new Glob("*"), ALICE).isDone());
+        assertEquals(3, http.getRequests().size());
+        assertEquals(3, limiter.getAdmitted());
+        assertEquals(1, limiter.getThrottled("pam:alice"));
+    }
+
+    @org.junit.Test
+    public void testFanOut() {
+        RateLimiter limiter = RateLimiter.custom()
+                .withCallRate(1, 2)
+                .withFanOutRate(10, 5)
+                .build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new MinionList("m1", "m2", "m3"), ALICE);
+        RateLimitException e = rejection(ping(client, new MinionList("m4", "m5", "m6"), ALICE));
+        assertEquals(100, e.getRetryAfterMillis());
+
+        // The rejected call did not use up the call budget, calls without target are free
+        Key.listAll().callSync(client, ALICE);
+        assertEquals(2, http.getRequests().size());
+        assertEquals(1, limiter.getThrottled());
+    }
+
+    @org.junit.Test
+    public void testLargeTargetAdmittedWhenFull() {
+        RateLimiter limiter = RateLimiter.custom().withFanOutRate(1, 2).build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new MinionList("m1", "m2", "m3"), ALICE);
+        rejection(ping(client, new MinionList("m1"), ALICE));
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        ping(client, new MinionList("m1"), ALICE);
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @org.junit.Test
+    public void testPrincipalsIndependent() {
+        RateLimiter limiter = RateLimiter.custom().withCallRate(1, 1).build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new Glob("*"), ALICE);
+        ping(client, new Glob("*"), BOB);
+        rejection(ping(client, new Glob("*"), BOB));
+
+        assertEquals(2, http.getRequests().size());
+        assertEquals(0, limiter.getThrottled("pam:alice"));
+        assertEquals(1, limiter.getThrottled("pam:bob"));
+    }
+
+    @org.junit.Test
+    public void testTenant() {
+        RateLimiter limiter = RateLimiter.custom().withCallRate(1, 1).build(() -> now);
+        SaltClient client = client(limiter.forTenant("team-a"));
+        ping(client, new Glob("*"), ALICE);
+        rejection(ping(client, new Glob("*"), BOB));
+
+        // Other clients keep charging the principal
+        ping(client(limiter), new Glob("*"), BOB);
+        assertEquals(2, http.getRequests().size());
+        assertEquals(1, limiter.getThrottled("team-a"));
+        assertEquals(0, limiter.getThrottled("pam:bob"));
+    }
+
+    @org.junit.Test
+    public void testTokensWithoutUserShareQuota() {
+        RateLimiter limiter = RateLimiter.custom().withCallRate(1, 1).build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new Glob("*"), new AuthMethod(new Token("secret1")));
+        RateLimitException e = rejection(
+                ping(client, new Glob("*"), new AuthMethod(new Token("secret2"))));
+
+        // The session tokens are not revealed, and a new one does not get a fresh budget
+        assertEquals("token", e.getKey());
+        assertEquals(1, limiter.getThrottled("token"));
+        assertEquals(0, limiter.getThrottled("secret2"));
+    }
+
+    @org.junit.Test
+    public void testIdleQuotasExpire() {
+        RateLimiter limiter = RateLimiter.custom()
+                .withCallRate(1, 1)
+                .withIdleExpiry(60000)
+                .build(() -> now);
+        SaltClient client = client(limiter);
+        ping(client, new Glob("*"), ALICE);
+        rejection(ping(client, new Glob("*"), ALICE));
+
+        // Quotas are dropped when a new principal shows up after the expiry
+        now += TimeUnit.SECONDS.toNanos(30);
+        ping(client, new Glob("*"), BOB);
+        rejection(ping(client, new Glob("*"), BOB));
+        assertEquals(1, limiter.getThrottled("pam:alice"));
+        now += TimeUnit.SECONDS.toNanos(30);
+        ping(client, new Glob("*"), new AuthMethod(new Token("secret")));
+        assertEquals(0, limiter.getThrottled("pam:alice"));
+
+        // Bob sent a call within the expiry, the totals still count Alice's calls
+        assertEquals(1, limiter.getThrottled("pam:bob"));
+        assertEquals(2, limiter.getThrottled());
+        assertEquals(3, limiter.getAdmitted());
+    }
+}
@@ -0,0 +1,148 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Grains;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.datatypes.target.MinionList;
+import com.suse.salt.netapi.results.Result;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for ResultCache.
+ */
+public class ResultCacheTest {
+
+    private static final AuthMethod AUTH =
+            new AuthMethod(new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+
+    private final ManualClient http = new ManualClient();
+    private long now;
+
+    private SaltClient client(ResultCache cache) {
+        return new SaltClient(URI.create("http://localhost/"), http).withResultCache(cache);
+    }
+
+    private ResultCache cache(int maxSize) {
+        return ResultCache.custom()
+                .withTtl("test.ping", 1000)
+                .withMaxSize(maxSize)
+                .build(() -> now);
+    }
+
+    private CompletableFuture<Map<String, Result<Boolean>>> ping(SaltClient client,
+            String... minions) {
+        return Test.ping().callSync(client, new MinionList(minions), AUTH)
+                .toCompletableFuture();
+    }
+
+    @org.junit.Test
+    public void testNarrowedToMissingMinions() {
+        ResultCache cache = cache(100);
+        SaltClient client = client(cache);
+        ping(client, "minion1", "minion2");
+        http.answer("{\"return\": [{\"minion1\": true, \"minion2\": true}]}");
+
+        CompletableFuture<Map<String, Result<Boolean>>> result =
+                ping(client, "minion1", "minion2", "minion3");
+        assertEquals(2, http.getRequests().size());
+        assertTrue(http.getBodies().get(1).contains("\"tgt\":[\"minion3\"]"));
+        http.answer("{\"return\": [{\"minion3\": false}]}");
+
+        Map<String, Result<Boolean>> results = result.join();
+        assertEquals(3, results.size());
+        assertEquals(Boolean.FALSE, results.get("minion3").result().get());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @org.junit.Test
+    public void testFullyCached() {
+        ResultCache cache = cache(100);
+        SaltClient client = client(cache);
+        ping(client, "minion1");
+        http.answer("{\"return\": [{\"minion1\": true}]}");
+
+        CompletableFuture<Map<String, Result<Boolean>>> result = ping(client, "minion1");
+        assertEquals(1, http.getRequests().size());
+        assertTrue(result.join().get("minion1").result().get());
+    }
+
+    @org.junit.Test
+    public void testWrongPassword() {
+        ResultCache cache = cache(100);
+        SaltClient client = client(cache);
+        ping(client, "minion1");
+        http.answer("{\"return\": [{\"minion1\": true}]}");
+
+        AuthMethod wrongPassword =
+                new AuthMethod(new PasswordAuth("user", "wrong", AuthModule.AUTO));
+        CompletableFuture<Map<String, Result<Boolean>>> result = Test.ping()
+                .callSync(client, new MinionList("minion1"), wrongPassword)
+                .toCompletableFuture();
+        assertEquals(2, http.getRequests().size());
+        assertTrue(http.getBodies().get(1).contains("\"password\":\"wrong\""));
+        assertEquals(0, cache.getHits());
+        http.answer("{\"return\": [{\"minion1\": false}]}");
+        assertEquals(Boolean.FALSE, result.join().get("minion1").result().get());
+
+        assertTrue(ping(client, "minion1").join().get("minion1").result().get());
+        assertEquals(2, http.getRequests().size());
+        assertEquals(1, cache.getHits());
+    }
+
+    @org.junit.Test
+    public void testExpiry() {
+        SaltClient client = client(cache(100));
+        ping(client, "minion1");
+        http.answer("{\"return\": [{\"minion1\": true}]}");
+
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        ping(client, "minion1");
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @org.junit.Test
+    public void testErrorsNotCached() {
+        SaltClient client = client(cache(100));
+        ping(client, "minion1");
+        http.answer("{\"return\": [{\"minion1\": \"'test.ping' is not available.\"}]}");
+
+        ping(client, "minion1");
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @org.junit.Test
+    public void testEviction() {
+        ResultCache cache = cache(2);
+        SaltClient client = client(cache);
+        ping(client, "minion1", "minion2", "minion3");
+        http.answer("{\"return\": [{\"minion1\": true, \"minion2\": true," +
+                " \"minion3\": true}]}");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @org.junit.Test
+    public void testUncachedCalls() {
+        SaltClient client = client(cache(100));
+        // Other targets can not be narrowed, other functions have no time to live
+        Test.ping().callSync(client, new Glob("*"), AUTH);
+        http.answer("{\"return\": [{\"minion1\": true}]}");
+        Test.ping().callSync(client, new Glob("*"), AUTH);
+        Grains.items(false).callSync(client, new MinionList("minion1"), AUTH);
+        http.answer("{\"return\": [{\"minion1\": {}}]}");
+        Grains.items(false).callSync(client, new MinionList("minion1"), AUTH);
+        assertEquals(4, http.getRequests().size());
+    }
+}
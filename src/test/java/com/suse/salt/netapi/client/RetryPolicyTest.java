@@ -0,0 +1,149 @@
+package com.suse.salt.netapi.client;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Pkg;
+import com.suse.salt.netapi.calls.runner.Manage;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.exception.HttpStatusException;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.utils.ClientUtils;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests for RetryPolicy.
+ */
+public class RetryPolicyTest {
+
+    private static final AuthMethod AUTH =
+            new AuthMethod(new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+    private static final String RUNNER_RESPONSE = "{\"return\": [[\"minion1\"]]}";
+    private static final String STATS_RESPONSE = ClientUtils.streamToString(
+            RetryPolicyTest.class.getResourceAsStream("/stats_response.json"));
+
+    private final ManualClient http = new ManualClient();
+
+    private SaltClient client(RetryPolicy policy) {
+        return new SaltClient(URI.create("http://localhost/"), http).withRetryPolicy(policy);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testRetryOnServerError() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom().withBackoff(1, 10).build();
+        CompletableFuture<Result<List<String>>> result = Manage.present()
+                .callSync(client(policy), AUTH).toCompletableFuture();
+
+        http.last().getResponse().completeExceptionally(new HttpStatusException(503));
+        waitFor(() -> http.getRequests().size() == 2);
+        http.last().getResponse().completeExceptionally(new HttpStatusException(502));
+        waitFor(() -> http.getRequests().size() == 3);
+        http.answer(RUNNER_RESPONSE);
+
+        assertEquals(2, policy.getRetries());
+        assertTrue(result.isDone());
+        assertFalse(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom()
+                .withMaxAttempts(2).withBackoff(1, 10).build();
+        CompletableFuture<Result<List<String>>> result = Manage.present()
+                .callSync(client(policy), AUTH).toCompletableFuture();
+
+        http.last().getResponse().completeExceptionally(new HttpStatusException(503));
+        waitFor(() -> http.getRequests().size() == 2);
+        http.last().getResponse().completeExceptionally(new HttpStatusException(503));
+        try {
+            result.get();
+            fail("Expected the last error");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(HttpStatusException.class));
+        }
+        assertEquals(2, http.getRequests().size());
+    }
+
+    @Test
+    public void testNoRetryOnClientError() {
+        RetryPolicy policy = RetryPolicy.custom().withBackoff(1, 10).build();
+        CompletableFuture<Result<List<String>>> result = Manage.present()
+                .callSync(client(policy), AUTH).toCompletableFuture();
+
+        http.last().getResponse().completeExceptionally(new HttpStatusException(400));
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, policy.getRetries());
+    }
+
+    @Test
+    public void testNoRetryOfNonIdempotentCall() {
+        RetryPolicy policy = RetryPolicy.custom().withBackoff(1, 10).build();
+        CompletableFuture<?> result = Pkg.install(true, Arrays.asList("vim"))
+                .callSync(client(policy), new Glob("*"), AUTH).toCompletableFuture();
+
+        http.last().getResponse().completeExceptionally(new HttpStatusException(503));
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1, http.getRequests().size());
+        assertEquals(0, policy.getRetries());
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom().withHedging(0.95, 20).build();
+        SaltClient client = client(policy);
+        // Latencies are only known after enough responses
+        for (int i = 0; i < 20; i++) {
+            client.stats();
+            http.answer(STATS_RESPONSE);
+        }
+        assertEquals(0, policy.getHedges());
+
+        CompletableFuture<?> result = client.stats().toCompletableFuture();
+        CompletableFuture<Object> stalled = http.last().getResponse();
+        waitFor(() -> http.getRequests().size() == 22);
+        http.answer(STATS_RESPONSE);
+
+        assertTrue(result.isDone());
+        assertTrue(stalled.isCancelled());
+        assertEquals(1, policy.getHedges());
+        assertEquals(1, policy.getHedgeWins());
+    }
+
+    @Test
+    public void testCancelCancelsAllAttempts() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom().withHedging(0.95, 20).build();
+        SaltClient client = client(policy);
+        for (int i = 0; i < 20; i++) {
+            client.stats();
+            http.answer(STATS_RESPONSE);
+        }
+
+        CompletableFuture<?> result = client.stats().toCompletableFuture();
+        waitFor(() -> http.getRequests().size() == 22);
+        result.cancel(true);
+
+        assertTrue(http.request(20).getResponse().isCancelled());
+        assertTrue(http.request(21).getResponse().isCancelled());
+    }
+}
@@ -0,0 +1,171 @@
+package com.suse.salt.netapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.exception.SaltUserUnauthorizedException;
+import com.suse.salt.netapi.results.Result;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for TokenManager.
+ */
+public class TokenManagerTest {
+
+    private static final PasswordAuth CREDENTIALS =
+            new PasswordAuth("user", "pa55wd", AuthModule.AUTO);
+    private static final long LIFETIME = 3600000;
+    private static final String PING_RESPONSE = "{\"return\": [{\"minion1\": true}]}";
+
+    private final ManualClient http = new ManualClient(this::login);
+    private final SaltClient baseClient = new SaltClient(URI.create("http://localhost/"), http);
+    private volatile int logins;
+    private volatile long firstLifetime = LIFETIME;
+    private long now = 1500000000000L;
+
+    /**
+     * Answers logins right away, other requests are answered only when told so.
+     */
+    private void login(ManualClient.Request request) {
+        if (request.getUri().getPath().equals("/login")) {
+            logins++;
+            request.answer("{\"return\": [{\"token\": \"token" + logins + "\", " +
+                    "\"start\": " + now / 1000.0 + ", " +
+                    "\"expire\": " + (now + (logins == 1 ? firstLifetime : LIFETIME)) /
+                    1000.0 + "}]}");
+        }
+    }
+
+    private List<ManualClient.Request> requests() {
+        return http.getRequests().stream()
+                .filter(request -> !request.getUri().getPath().equals("/login"))
+                .collect(Collectors.toList());
+    }
+
+    private void reject(ManualClient.Request request) {
+        request.getResponse().completeExceptionally(new SaltUserUnauthorizedException(
+                "Salt user does not have sufficient permissions"));
+    }
+
+    private TokenManager manager() {
+        return TokenManager.custom()
+                .withRefreshMargin(60000)
+                .build(baseClient, CREDENTIALS, () -> now);
+    }
+
+    private CompletableFuture<Map<String, Result<Boolean>>> ping(SaltClient client,
+            PasswordAuth auth) {
+        return Test.ping().callSync(client, new Glob("*"), new AuthMethod(auth))
+                .toCompletableFuture();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @org.junit.Test
+    public void testLoginOnce() {
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        ping(client, CREDENTIALS);
+        // Equal credentials in a different object are managed as well
+        ping(client, new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+
+        assertEquals(1, manager.getLogins());
+        assertEquals(2, requests().size());
+        for (ManualClient.Request request : requests()) {
+            assertEquals("/", request.getUri().getPath());
+            assertEquals("token1", request.getHeaders().get("X-Auth-Token"));
+        }
+        manager.close();
+    }
+
+    @org.junit.Test
+    public void testOtherCredentialsPassThrough() {
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        ping(client, new PasswordAuth("admin", "pa55wd", AuthModule.AUTO));
+
+        assertEquals(0, manager.getLogins());
+        assertEquals("/run", requests().get(0).getUri().getPath());
+    }
+
+    @org.junit.Test
+    public void testReplayOnUnauthorized() {
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        CompletableFuture<Map<String, Result<Boolean>>> first = ping(client, CREDENTIALS);
+        CompletableFuture<Map<String, Result<Boolean>>> second = ping(client, CREDENTIALS);
+
+        // Both requests are rejected, but only one of them logs in again
+        reject(requests().get(0));
+        reject(requests().get(1));
+        assertEquals(2, manager.getLogins());
+        assertEquals(2, manager.getReplays());
+        assertEquals(4, requests().size());
+        assertEquals("token2", requests().get(2).getHeaders().get("X-Auth-Token"));
+        assertEquals("token2", requests().get(3).getHeaders().get("X-Auth-Token"));
+
+        requests().get(2).answer(PING_RESPONSE);
+        requests().get(3).answer(PING_RESPONSE);
+        assertTrue(first.join().get("minion1").result().get());
+        assertTrue(second.isDone());
+        manager.close();
+    }
+
+    @org.junit.Test
+    public void testReplayedOnlyOnce() {
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        CompletableFuture<Map<String, Result<Boolean>>> result = ping(client, CREDENTIALS);
+
+        reject(requests().get(0));
+        reject(requests().get(1));
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(2, requests().size());
+        manager.close();
+    }
+
+    @org.junit.Test
+    public void testRefreshBeforeExpiry() throws Exception {
+        // The first token is due for renewal right away
+        firstLifetime = 30000;
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        ping(client, CREDENTIALS);
+        waitFor(() -> "token2".equals(manager.getAuthMethod().toCompletableFuture().join()
+                .getInternal().left().get().getToken()));
+
+        ping(client, CREDENTIALS);
+        assertEquals("token1", requests().get(0).getHeaders().get("X-Auth-Token"));
+        assertEquals("token2", requests().get(1).getHeaders().get("X-Auth-Token"));
+        manager.close();
+    }
+
+    @org.junit.Test
+    public void testLoginAfterExpiry() {
+        TokenManager manager = manager();
+        SaltClient client = baseClient.withTokenManager(manager);
+        ping(client, CREDENTIALS);
+        manager.close();
+
+        now += LIFETIME;
+        ping(client, CREDENTIALS);
+        assertEquals(2, manager.getLogins());
+        assertEquals("token2", requests().get(1).getHeaders().get("X-Auth-Token"));
+    }
+}
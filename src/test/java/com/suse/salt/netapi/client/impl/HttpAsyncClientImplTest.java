@@ -0,0 +1,400 @@
+package com.suse.salt.netapi.client.impl;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.exception.SaltException;
+import com.suse.salt.netapi.exception.SaltUserUnauthorizedException;
+import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.parser.RawReturnParser;
+import com.suse.salt.netapi.parser.SpillPolicy;
+import com.suse.salt.netapi.parser.SpillingParser;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.ClientUtils;
+import com.suse.salt.netapi.utils.HttpClientUtils;
+import com.suse.salt.netapi.utils.PooledHttpClient;
+import com.suse.salt.netapi.utils.TestUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tests for HttpAsyncClientImpl.
+ */
+public class HttpAsyncClientImplTest {
+
+    private static final int MOCK_HTTP_PORT = 8888;
+    private static final int MINIONS = 20000;
+
+    private static final JsonParser<Return<List<Map<String, String>>>> PARSER =
+            new JsonParser<>(new TypeToken<Return<List<Map<String, String>>>>(){});
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private URI uri;
+
+    @Before
+    public void init() {
+        uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT) + "/run");
+    }
+
+    private static String largeResponse() {
+        StringBuilder json = new StringBuilder("{\"return\": [{");
+        for (int i = 0; i < MINIONS; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"minion").append(i).append("\": \"SUSE Linux Enterprise\"");
+        }
+        return json.append("}]}").toString();
+    }
+
+    @Test
+    public void testStreamingParse() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        HttpAsyncClientImpl client =
+                new HttpAsyncClientImpl(TestUtils.defaultClient(), executor);
+        Map<String, String> result = client.post(uri, "[]", PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+        assertEquals("SUSE Linux Enterprise", result.get("minion" + (MINIONS - 1)));
+    }
+
+    @Test
+    public void testSpillingParseStreamed() throws IOException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        Path directory = Files.createTempDirectory("spill");
+        AtomicReference<String> thread = new AtomicReference<>();
+        SpillingParser<String> parser = new SpillingParser<String>(new TypeToken<String>(){},
+                SpillPolicy.custom().withThreshold(0).withDirectory(directory).build()) {
+            @Override
+            public List<Map<String, Result<String>>> parse(InputStream inputStream) {
+                thread.set(Thread.currentThread().getName());
+                return super.parse(inputStream);
+            }
+        };
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient());
+        Map<String, Result<String>> result = client.post(uri, "[]", parser)
+                .toCompletableFuture().join().get(0);
+
+        assertEquals(MINIONS, result.size());
+        assertEquals("SUSE Linux Enterprise", result.get("minion1").result().get());
+        // The client buffers other bodies, spilled ones are parsed while they arrive
+        assertEquals("salt-netapi-parser", thread.get());
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRawParseStreamed() throws IOException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        Path directory = Files.createTempDirectory("spill");
+        AtomicReference<String> thread = new AtomicReference<>();
+        RawReturnParser parser = new RawReturnParser(
+                SpillPolicy.custom().withThreshold(0).withDirectory(directory).build()) {
+            @Override
+            public List<Map<String, ByteBuffer>> parse(InputStream inputStream) {
+                thread.set(Thread.currentThread().getName());
+                return super.parse(inputStream);
+            }
+        };
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient());
+        Map<String, ByteBuffer> result = client.post(uri, "[]", parser)
+                .toCompletableFuture().join().get(0);
+
+        assertEquals(MINIONS, result.size());
+        assertEquals("\"SUSE Linux Enterprise\"",
+                StandardCharsets.UTF_8.decode(result.get("minion1")).toString());
+        assertEquals("salt-netapi-parser", thread.get());
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testDeadlineExceeded() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(SocketTimeoutException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withFixedDelay(10000)
+                .withBody("{\"return\": [{}]}")));
+
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient())
+                .withDeadline(Deadline.after(200));
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @Test
+    public void testDeadlineKeepsRequestConfig() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": \"proxied\"}]}")));
+
+        // The host can only be reached through the proxy of the request config
+        RequestConfig config = RequestConfig.copy(HttpClientUtils.defaultRequestConfig())
+                .setProxy(new HttpHost("localhost", MOCK_HTTP_PORT))
+                .build();
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient())
+                .withRequestConfig(config)
+                .withDeadline(Deadline.after(10000));
+        Map<String, String> result = client.post(URI.create("http://salt.invalid/run"), "[]",
+                PARSER).toCompletableFuture().join().getResult().get(0);
+
+        assertEquals("proxied", result.get("minion1"));
+    }
+
+    @Test
+    public void testBufferedParse() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient());
+        Map<String, String> result = client.post(uri, "[]", PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+    }
+
+    @Test
+    public void testStreamingParseError() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(JsonSyntaxException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": [1, 2, 3]}]} " + largeResponse())));
+
+        HttpAsyncClientImpl client =
+                new HttpAsyncClientImpl(TestUtils.defaultClient(), executor);
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @Test
+    public void testStreamingUnauthorized() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(SaltUserUnauthorizedException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_UNAUTHORIZED)
+                .withBody("<html>401 Unauthorized</html>")));
+
+        HttpAsyncClientImpl client =
+                new HttpAsyncClientImpl(TestUtils.defaultClient(), executor);
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @Test
+    public void testServerError() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(SaltException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_INTERNAL_ERROR)));
+
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient());
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @Test
+    public void testGzipResponse() throws IOException {
+        String body = largeResponse();
+        byte[] compressed = gzip(body);
+        stubFor(any(urlMatching(".*"))
+                .withHeader("Accept-Encoding", equalTo("gzip, deflate"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Content-Encoding", "gzip")
+                .withBody(compressed)));
+
+        HttpAsyncClientImpl client = new HttpAsyncClientImpl(TestUtils.defaultClient(),
+                executor).withResponseCompression();
+        Map<String, String> result = client.post(uri, "[]", PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+        TransferStats stats = client.getTransferStats();
+        assertEquals(1, stats.getCompressedResponses());
+        assertEquals(compressed.length, stats.getResponseWireBytes());
+        assertEquals(body.length(), stats.getResponseBytes());
+    }
+
+    @Test
+    public void testDeflateResponse() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed)) {
+            deflate.write(largeResponse().getBytes(StandardCharsets.UTF_8));
+        }
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withHeader("Content-Encoding", "deflate")
+                .withBody(compressed.toByteArray())));
+
+        HttpAsyncClientImpl client =
+                new HttpAsyncClientImpl(TestUtils.defaultClient()).withResponseCompression();
+        Map<String, String> result = client.post(uri, "[]", PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+    }
+
+    @Test
+    public void testRequestCompression() throws IOException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{}]}")));
+
+        HttpAsyncClientImpl client =
+                new HttpAsyncClientImpl(TestUtils.defaultClient()).withRequestCompression(100);
+        String small = "[{\"tgt\": \"minion1\"}]";
+        String large = "[{\"tgt\": \"" + String.join(",", Collections.nCopies(100, "minion"))
+                + "\"}]";
+        client.post(uri, small, PARSER).toCompletableFuture().join();
+        client.post(uri, large, PARSER).toCompletableFuture().join();
+
+        verify(1, anyRequestedFor(urlMatching(".*"))
+                .withHeader("Content-Encoding", equalTo("gzip")));
+        // WireMock decompresses request bodies before handing them out
+        String received = wireMockRule.findAll(anyRequestedFor(urlMatching(".*"))
+                .withHeader("Content-Encoding", equalTo("gzip"))).get(0).getBodyAsString();
+        assertEquals(large, received);
+
+        TransferStats stats = client.getTransferStats();
+        assertEquals(2, stats.getRequests());
+        assertEquals(1, stats.getCompressedRequests());
+        assertEquals(small.length() + large.length(), stats.getRequestBytes());
+        assertEquals(small.length() + gzip(large).length, stats.getRequestWireBytes());
+    }
+
+    @Test
+    public void testCancelAbortsExchange() throws IOException, InterruptedException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withFixedDelay(10000)
+                .withBody("{\"return\": [{}]}")));
+
+        try (PooledHttpClient pooled = HttpClientUtils.custom().build()) {
+            HttpAsyncClientImpl client = new HttpAsyncClientImpl(pooled.getHttpClient());
+            CompletableFuture<Return<List<Map<String, String>>>> future =
+                    client.post(uri, "[]", PARSER).toCompletableFuture();
+            waitFor(() -> pooled.getTotalStats().getLeased() == 1);
+
+            assertTrue(future.cancel(true));
+            waitFor(() -> pooled.getTotalStats().getLeased() == 0);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws IOException, InterruptedException {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(TimeoutException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withFixedDelay(10000)
+                .withBody("{\"return\": [{}]}")));
+
+        try (PooledHttpClient pooled = HttpClientUtils.custom().build()) {
+            HttpAsyncClientImpl client = new HttpAsyncClientImpl(pooled.getHttpClient());
+            CompletionStage<Return<List<Map<String, String>>>> result =
+                    ClientUtils.withTimeout(client.post(uri, "[]", PARSER), 200);
+            try {
+                result.toCompletableFuture().join();
+            } finally {
+                waitFor(() -> pooled.getTotalStats().getLeased() == 0);
+            }
+        }
+    }
+
+    private static byte[] gzip(String data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.suse.salt.netapi.client.impl;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.client.ManualClient;
+import com.suse.salt.netapi.datatypes.cherrypy.Stats;
+import com.suse.salt.netapi.exception.HttpStatusException;
+import com.suse.salt.netapi.exception.ParsingException;
+import com.suse.salt.netapi.exception.SaltException;
+import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.utils.ClientUtils;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tests for LimitingAsyncHttpClient.
+ */
+public class LimitingAsyncHttpClientTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/");
+
+    private long now;
+    private final Map<ManualClient.Request, Long> sent = new HashMap<>();
+    private final ManualClient http = new ManualClient(request -> sent.put(request, now));
+
+    private LimitingAsyncHttpClient limiting(int initial, int min, int max, int queue) {
+        return LimitingAsyncHttpClient.custom()
+                .withInitialLimit(initial)
+                .withLimitRange(min, max)
+                .withMaxQueueSize(queue)
+                .build(http, () -> now);
+    }
+
+    private CompletableFuture<Map<String, Object>> request(LimitingAsyncHttpClient client) {
+        return client.get(URI, JsonParser.MAP).toCompletableFuture();
+    }
+
+    private void answer(long latency) {
+        ManualClient.Request request = http.getPending().get(0);
+        now = Math.max(now, sent.get(request) + latency);
+        request.getResponse().complete(null);
+    }
+
+    private void fail(Throwable error) {
+        http.getPending().get(0).getResponse().completeExceptionally(error);
+    }
+
+    @Test
+    public void testQueueAndReject() throws Exception {
+        LimitingAsyncHttpClient client = limiting(2, 1, 10, 1);
+        CompletableFuture<Map<String, Object>> first = request(client);
+        request(client);
+        CompletableFuture<Map<String, Object>> queued = request(client);
+        CompletableFuture<Map<String, Object>> rejected = request(client);
+
+        assertEquals(2, http.getPending().size());
+        assertEquals(2, client.getInFlight());
+        assertEquals(1, client.getQueueDepth());
+        assertEquals(1, client.getRejected());
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(SaltException.class));
+        }
+
+        answer(1000);
+        assertTrue(first.isDone());
+        assertEquals(2, http.getPending().size());
+        assertEquals(0, client.getQueueDepth());
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    public void testDeadlineSharesQueue() {
+        LimitingAsyncHttpClient client = limiting(1, 1, 10, 10);
+        Deadline deadline = Deadline.after(60000);
+        request(client);
+        CompletableFuture<Map<String, Object>> queued = client.withDeadline(deadline)
+                .get(URI, JsonParser.MAP).toCompletableFuture();
+        assertEquals(1, http.getPending().size());
+        assertEquals(1, client.getQueueDepth());
+        assertFalse(http.last().getDeadline().isPresent());
+
+        answer(10);
+        assertEquals(1, http.getPending().size());
+        assertEquals(Optional.of(deadline), http.last().getDeadline());
+        answer(10);
+        assertTrue(queued.isDone());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void testCancelWhileQueued() {
+        LimitingAsyncHttpClient client = limiting(1, 1, 10, 10);
+        request(client);
+        CompletableFuture<Map<String, Object>> queued = request(client);
+        queued.cancel(true);
+
+        assertEquals(0, client.getQueueDepth());
+        answer(1000);
+        assertEquals(0, client.getInFlight());
+        assertTrue(http.getPending().isEmpty());
+    }
+
+    @Test
+    public void testCancelInFlight() {
+        LimitingAsyncHttpClient client = limiting(1, 1, 10, 10);
+        request(client).cancel(true);
+
+        assertTrue(http.request(0).getResponse().isCancelled());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void testLimitGrowsWithSteadyLatency() {
+        LimitingAsyncHttpClient client = limiting(4, 1, 10, 100);
+        for (int i = 0; i < 50; i++) {
+            request(client);
+        }
+        for (int i = 0; i < 20; i++) {
+            answer(1000);
+        }
+        assertEquals(10, client.getLimit());
+        assertEquals(10, client.getInFlight());
+    }
+
+    @Test
+    public void testLimitShrinksWithRisingLatency() {
+        LimitingAsyncHttpClient client = limiting(10, 2, 10, 100);
+        for (int i = 0; i < 50; i++) {
+            request(client);
+        }
+        answer(1000);
+        long latency = 1000;
+        for (int i = 0; i < 20; i++) {
+            latency *= 2;
+            answer(latency);
+        }
+        // The estimated queue can not exceed the limit, so latency alone stops shrinking
+        // the limit once it comes down to the upper threshold
+        assertEquals(6, client.getLimit());
+    }
+
+    @Test
+    public void testErrorsShrinkLimit() {
+        LimitingAsyncHttpClient client = limiting(10, 1, 10, 100);
+        request(client);
+        fail(new HttpStatusException(503));
+        assertEquals(9, client.getLimit());
+    }
+
+    @Test
+    public void testClientErrorsKeepLimit() {
+        LimitingAsyncHttpClient client = limiting(10, 1, 10, 100);
+        for (int i = 0; i < 3; i++) {
+            request(client);
+        }
+        fail(new HttpStatusException(400));
+        fail(new ParsingException("Malformed body"));
+        fail(new SaltException("Queue is full"));
+        assertEquals(10, client.getLimit());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void testApplyStats() {
+        LimitingAsyncHttpClient client = limiting(20, 1, 200, 100);
+        Stats stats = JsonParser.STATS.parse(ClientUtils.streamToString(
+                getClass().getResourceAsStream("/stats_response.json")));
+        client.applyStats(stats);
+
+        // The fixture reports more idle threads than threads, the latter bound the limit
+        assertEquals(stats.getHttpServer().getThreads(), client.getLimit());
+    }
+}
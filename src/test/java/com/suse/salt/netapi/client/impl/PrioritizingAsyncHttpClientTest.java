@@ -0,0 +1,125 @@
+package com.suse.salt.netapi.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.client.AsyncHttpClient;
+import com.suse.salt.netapi.client.ManualClient;
+import com.suse.salt.netapi.client.Priority;
+import com.suse.salt.netapi.client.SaltClient;
+import com.suse.salt.netapi.parser.JsonParser;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for PrioritizingAsyncHttpClient.
+ */
+public class PrioritizingAsyncHttpClientTest {
+
+    private static final URI URI = java.net.URI.create("http://localhost/");
+
+    private final ManualClient http = new ManualClient();
+    private long now;
+
+    private PrioritizingAsyncHttpClient client(int maxInFlight, int reservedHigh) {
+        return PrioritizingAsyncHttpClient.custom()
+                .withMaxInFlight(maxInFlight)
+                .withReserved(Priority.HIGH, reservedHigh)
+                .build(http, () -> now);
+    }
+
+    private CompletableFuture<Map<String, Object>> request(AsyncHttpClient client,
+            String path) {
+        return client.get(URI.resolve(path), JsonParser.MAP).toCompletableFuture();
+    }
+
+    @Test
+    public void testHighPriorityFirst() {
+        PrioritizingAsyncHttpClient client = client(2, 0);
+        AsyncHttpClient low = client.withPriority(Priority.LOW);
+        AsyncHttpClient high = client.withPriority(Priority.HIGH);
+        request(low, "low1");
+        request(low, "low2");
+        request(low, "low3");
+        request(high, "high1");
+        assertEquals(2, http.getRequests().size());
+        assertEquals(1, client.getLane(Priority.HIGH).getQueueDepth());
+
+        http.request(0).getResponse().complete(null);
+        assertEquals(3, http.getRequests().size());
+        assertEquals(URI.resolve("high1"), http.request(2).getUri());
+    }
+
+    @Test
+    public void testReservedCapacity() {
+        PrioritizingAsyncHttpClient client = client(3, 1);
+        AsyncHttpClient low = client.withPriority(Priority.LOW);
+        for (int i = 0; i < 5; i++) {
+            request(low, "low");
+        }
+        assertEquals(2, http.getRequests().size());
+        assertEquals(3, client.getLane(Priority.LOW).getQueueDepth());
+
+        // Bulk requests never take the last connection
+        request(client.withPriority(Priority.HIGH), "high");
+        assertEquals(3, http.getRequests().size());
+        assertEquals(3, client.getInFlight());
+        assertEquals(2, client.getLane(Priority.NORMAL).getCapacity());
+        assertEquals(3, client.getLane(Priority.HIGH).getCapacity());
+    }
+
+    @Test
+    public void testQueueTime() {
+        PrioritizingAsyncHttpClient client = client(1, 0);
+        request(client, "first");
+        request(client, "second");
+        now += TimeUnit.MILLISECONDS.toNanos(300);
+        http.request(0).getResponse().complete(null);
+
+        PrioritizingAsyncHttpClient.Lane lane = client.getLane(Priority.NORMAL);
+        assertEquals(2, lane.getDispatched());
+        assertEquals(150, lane.getAverageQueueTimeMillis(), 0.1);
+        assertEquals(300, lane.getMaxQueueTimeMillis());
+    }
+
+    @Test
+    public void testCancelWhileQueued() {
+        PrioritizingAsyncHttpClient client = client(1, 0);
+        request(client, "first");
+        CompletableFuture<Map<String, Object>> queued = request(client, "second");
+        queued.cancel(true);
+
+        assertEquals(0, client.getLane(Priority.NORMAL).getQueueDepth());
+        http.request(0).getResponse().complete(null);
+        assertEquals(1, http.getRequests().size());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void testCancelInFlight() {
+        PrioritizingAsyncHttpClient client = client(1, 0);
+        request(client, "first").cancel(true);
+
+        assertTrue(http.request(0).getResponse().isCancelled());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    public void testSaltClientWithPriority() {
+        PrioritizingAsyncHttpClient client = client(2, 1);
+        SaltClient saltClient = new SaltClient(URI, client).withPriority(Priority.HIGH);
+        saltClient.stats();
+
+        assertEquals(1, client.getLane(Priority.HIGH).getDispatched());
+        assertEquals(0, client.getLane(Priority.NORMAL).getDispatched());
+        assertSame(client.getLane(Priority.LOW),
+                client.getLane(Priority.HIGH).withPriority(Priority.LOW));
+        assertFalse(http.request(0).getResponse().isDone());
+    }
+}
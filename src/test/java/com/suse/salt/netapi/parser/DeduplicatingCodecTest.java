@@ -0,0 +1,131 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tests for DeduplicatingCodec.
+ */
+public class DeduplicatingCodecTest {
+
+    /**
+     * Package with optional fields.
+     */
+    private static class Package {
+        private Optional<String> version = Optional.empty();
+        private Optional<String> arch = Optional.empty();
+        private Optional<Integer> size = Optional.empty();
+
+        @Override
+        public String toString() {
+            return "Package(" + version + ", " + arch + ", " + size + ")";
+        }
+    }
+
+    private static final String GRAINS = "{\"return\": [{" +
+            "\"minion1\": {\"os\": \"SLES\", \"cpu\": {\"arch\": \"x86_64\", \"n\": 4}}," +
+            "\"minion2\": {\"os\": \"SLES\", \"cpu\": {\"arch\": \"x86_64\", \"n\": 8}}}]}";
+
+    private static final String PACKAGES = "{\"return\": [{" +
+            "\"minion1\": {\"vim\": {\"version\": \"9.0\", \"arch\": \"x86_64\"}, " +
+            "\"zypper\": {\"version\": \"1.14\", \"arch\": \"x86_64\", \"size\": 12}}," +
+            "\"minion2\": {\"vim\": {\"version\": \"9.0\", \"arch\": \"x86_64\"}, " +
+            "\"zypper\": {\"version\": null, \"arch\": \"\", \"size\": null}}}]}";
+
+    @Test
+    public void testUntypedValues() {
+        DeduplicatingCodec codec = new DeduplicatingCodec();
+        Type type = new TypeToken<Return<List<Map<String, Result<Map<String, Object>>>>>>() { }
+                .getType();
+        Return<List<Map<String, Result<Map<String, Object>>>>> grains =
+                codec.decode(GRAINS, type);
+        assertEquals(JsonParser.GSON.<Return<?>>fromJson(GRAINS, type).getResult().toString(),
+                grains.getResult().toString());
+
+        Map<String, Object> minion1 = grains.getResult().get(0).get("minion1").result().get();
+        Map<String, Object> minion2 = grains.getResult().get(0).get("minion2").result().get();
+        assertSame(minion1.get("os"), minion2.get("os"));
+        Map<?, ?> cpu1 = (Map<?, ?>) minion1.get("cpu");
+        Map<?, ?> cpu2 = (Map<?, ?>) minion2.get("cpu");
+        assertSame(cpu1.get("arch"), cpu2.get("arch"));
+        assertSame(cpu1.keySet().iterator().next(), cpu2.keySet().iterator().next());
+
+        StringTable table = codec.getStringTable();
+        assertTrue(table.getHits() > 0);
+        assertTrue(table.getBytesSaved() > 0);
+        assertTrue(table.getHitRate() > 0 && table.getHitRate() < 1);
+    }
+
+    @Test
+    public void testOptionals() {
+        DeduplicatingCodec codec = new DeduplicatingCodec();
+        Type type = new TypeToken<Return<List<Map<String, Result<Map<String, Package>>>>>>() { }
+                .getType();
+        Return<List<Map<String, Result<Map<String, Package>>>>> packages =
+                codec.decode(PACKAGES, type);
+        assertEquals(JsonParser.GSON.<Return<?>>fromJson(PACKAGES, type).getResult().toString(),
+                packages.getResult().toString());
+
+        Map<String, Package> minion1 =
+                packages.getResult().get(0).get("minion1").result().get();
+        Map<String, Package> minion2 =
+                packages.getResult().get(0).get("minion2").result().get();
+        assertSame(minion1.get("vim").version, minion2.get("vim").version);
+        assertSame(minion1.get("vim").arch, minion1.get("zypper").arch);
+        assertNotSame(minion1.get("vim").version, minion1.get("zypper").version);
+        assertFalse(minion2.get("zypper").version.isPresent());
+        assertEquals(Optional.of(""), minion2.get("zypper").arch);
+        assertFalse(minion2.get("zypper").size.isPresent());
+    }
+
+    @Test
+    public void testNamesNotCounted() {
+        DeduplicatingCodec codec = new DeduplicatingCodec();
+        Type type = new TypeToken<List<Package>>() { }.getType();
+        List<Package> packages =
+                codec.decode("[{\"version\": \"9.0\"}, {\"version\": \"1.14\"}]", type);
+        assertEquals(Optional.of("1.14"), packages.get(1).version);
+
+        // Only the two versions are counted, not the repeated name of their field
+        StringTable table = codec.getStringTable();
+        assertEquals(0, table.getHits());
+        assertEquals(2, table.getMisses());
+        assertEquals(0, table.getBytesSaved());
+    }
+
+    @Test
+    public void testTrailingData() {
+        for (String json : new String[] {"{} {}", "{} x"}) {
+            try {
+                new DeduplicatingCodec().decode(json, Map.class);
+                fail("Expected trailing data to be rejected");
+            } catch (JsonSyntaxException e) {
+                try {
+                    JsonParser.GSON.fromJson(json, Map.class);
+                    fail("Expected trailing data to be rejected");
+                } catch (JsonSyntaxException expected) {
+                    assertEquals(expected.getMessage(), e.getMessage());
+                }
+            }
+        }
+        assertNull(new DeduplicatingCodec().decode("", Map.class));
+    }
+}
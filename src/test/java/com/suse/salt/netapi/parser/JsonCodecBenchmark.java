@@ -0,0 +1,127 @@
+package com.suse.salt.netapi.parser;
+
+import static com.suse.salt.netapi.utils.ClientUtils.parameterizedType;
+
+import com.suse.salt.netapi.calls.modules.Grains;
+import com.suse.salt.netapi.calls.modules.Pkg;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.ClientUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMH benchmark comparing the throughput of the JSON codecs decoding responses of calls
+ * targeting many minions, built from the recorded responses of the module tests. Run the
+ * main method with the test classpath; it adds the GC profiler, so the allocation per
+ * response is reported as gc.alloc.rate.norm next to the responses per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"test.ping", "grains.items", "pkg.list_pkgs", "pkg.info_installed"})
+    private String payload;
+
+    @Param({"gson", "throughput", "deduplicating"})
+    private String codec;
+
+    private JsonCodec jsonCodec;
+    private byte[] json;
+    private Type type;
+
+    private static String resource(String name) {
+        return ClientUtils.streamToString(
+                JsonCodecBenchmark.class.getResourceAsStream(name));
+    }
+
+    private void payload(int minions, String minionReturn, Type returnType) {
+        StringBuilder json = new StringBuilder("{\"return\": [{");
+        for (int i = 0; i < minions; i++) {
+            json.append(i == 0 ? "" : ", ").append("\"minion").append(i)
+                    .append(".example.com\": ").append(minionReturn);
+        }
+        json.append("}]}");
+        this.json = json.toString().getBytes(StandardCharsets.UTF_8);
+        this.type = parameterizedType(null, Return.class, parameterizedType(null,
+                List.class, parameterizedType(null, Map.class, String.class,
+                        parameterizedType(null, Result.class, returnType))));
+    }
+
+    /**
+     * Builds the response of the configured payload and the codec decoding it.
+     */
+    @Setup
+    public void setUp() {
+        switch (payload) {
+            case "test.ping":
+                payload(20000, "true", Boolean.class);
+                break;
+            case "grains.items":
+                String grains = resource("/modules/grains/items.json");
+                grains = grains.substring(grains.indexOf("{\"kernelrelease\""),
+                        grains.lastIndexOf('}', grains.lastIndexOf('}') - 1));
+                payload(5000, grains, Grains.items(false).getReturnType().getType());
+                break;
+            case "pkg.list_pkgs":
+                payload(200, resource("/modules/pkg/list_pkgs_full.json"),
+                        Pkg.listPkgs(new ArrayList<>()).getReturnType().getType());
+                break;
+            case "pkg.info_installed":
+                payload(2000, resource("/modules/pkg/info_installed_full.json"),
+                        Pkg.infoInstalledAllVersions(new ArrayList<>(), false)
+                                .getReturnType().getType());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + payload);
+        }
+        switch (codec) {
+            case "gson":
+                jsonCodec = new GsonCodec();
+                break;
+            case "throughput":
+                jsonCodec = new ThroughputCodec();
+                break;
+            case "deduplicating":
+                jsonCodec = new DeduplicatingCodec();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    @Benchmark
+    public Object decode() {
+        return jsonCodec.decode(new ByteArrayInputStream(json), type);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonCodecBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.Xor;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the JSON codecs.
+ */
+public class JsonCodecTest {
+
+    private static final Type RESULTS =
+            new TypeToken<Return<List<Map<String, Result<Boolean>>>>>() { }.getType();
+
+    @Test
+    public void testDefaultCodec() {
+        assertTrue(JsonParser.CODEC instanceof GsonCodec);
+        assertSame(JsonParser.GSON, ((GsonCodec) JsonParser.CODEC).getDecoder());
+    }
+
+    private void assertSameResults(String resource, Type type) {
+        Object gson = new GsonCodec().decode(getClass().getResourceAsStream(resource), type);
+        Object throughput = new ThroughputCodec().decode(
+                getClass().getResourceAsStream(resource), type);
+        assertEquals(gson, throughput);
+    }
+
+    @Test
+    public void testSameResults() {
+        Type map = new TypeToken<Map<String, Object>>() { }.getType();
+        assertSameResults("/modules/grains/items.json", map);
+        assertSameResults("/modules/pkg/list_pkgs_full.json", map);
+        assertSameResults("/modules/pkg/list_pkgs_full.json",
+                new TypeToken<Map<String, List<Xor<String, Object>>>>() { }.getType());
+    }
+
+    @Test
+    public void testResponseOrder() {
+        String json = "{\"return\": [{\"minion2\": true, \"minion1\": false, " +
+                "\"minion3\": true}]}";
+        Return<List<Map<String, Result<Boolean>>>> result =
+                new ThroughputCodec().decode(json, RESULTS);
+        Map<String, Result<Boolean>> minions = result.getResult().get(0);
+        assertTrue(minions instanceof LinkedHashMap);
+        assertEquals(Arrays.asList("minion2", "minion1", "minion3"),
+                new ArrayList<>(minions.keySet()));
+        assertEquals(false, minions.get("minion1").result().get());
+    }
+
+    @Test
+    public void testDuplicateKey() {
+        String json = "{\"return\": [{\"minion1\": true, \"minion1\": false}]}";
+        for (JsonCodec codec : Arrays.asList(new GsonCodec(), new ThroughputCodec())) {
+            try {
+                codec.decode(json, RESULTS);
+                throw new AssertionError("duplicate key accepted by " + codec);
+            } catch (JsonSyntaxException e) {
+                assertTrue(e.getMessage().contains("duplicate key"));
+            }
+        }
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testTrailingContent() {
+        new ThroughputCodec().decode("{\"return\": []} {", RESULTS);
+    }
+
+    @Test
+    public void testEmptyDocument() {
+        assertNull(new ThroughputCodec().decode("", RESULTS));
+        Map<String, Object> map = new ThroughputCodec().decode("{\"return\": null}",
+                new TypeToken<Map<String, Object>>() { }.getType());
+        assertTrue(map.containsKey("return"));
+        assertNull(map.get("return"));
+    }
+
+    @Test
+    public void testEncode() {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("client", "local");
+        request.put("arg", Collections.singletonList("1"));
+        request.put("kwarg", null);
+        String expected = new GsonBuilder().create().toJson(request);
+        assertEquals(expected, new GsonCodec().encode(request));
+        assertEquals(expected, new ThroughputCodec().encode(request));
+    }
+
+    @Test
+    public void testParserCodec() {
+        JsonParser<Return<List<Map<String, Result<Boolean>>>>> parser = new JsonParser<>(
+                new TypeToken<Return<List<Map<String, Result<Boolean>>>>>() { },
+                new ThroughputCodec());
+        Return<List<Map<String, Result<Boolean>>>> result =
+                parser.parse("{\"return\": [{\"minion1\": true}]}");
+        assertTrue(parser.getCodec() instanceof ThroughputCodec);
+        assertTrue(result.getResult().get(0).get("minion1").result().get());
+    }
+}
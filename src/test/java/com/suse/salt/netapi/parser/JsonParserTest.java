@@ -1,5 +1,6 @@
 package com.suse.salt.netapi.parser;
 
+import com.suse.salt.netapi.datatypes.StartTime;
 import com.suse.salt.netapi.datatypes.Token;
 import com.suse.salt.netapi.datatypes.cherrypy.Applications;
 import com.suse.salt.netapi.datatypes.cherrypy.HttpServer;
@@ -14,7 +15,11 @@ import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.TimeZone;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.LinkedList;
@@ -164,6 +169,48 @@ public class JsonParserTest {
         assertEquals(expected, result.maybeInts);
     }
 
+    @Test
+    public void testZonedDateTimeParser() {
+        String[] dates = {"2015-08-24T05:58:22Z", "2016-02-29T23:59:59Z",
+                "2015-08-24T05:58:22.5Z", "2015-08-24T05:58:22+02:00", "2015-08-24t05:58:22z",
+                "2015-02-29T00:00:00Z", "2015-13-01T00:00:00Z", "2015-08-24T24:00:00Z",
+                "2015-08-24T05:58:60Z", "2015-08-24 05:58:22Z", "2015-08-2405:58:22Z"};
+        for (String date : dates) {
+            Object expected;
+            try {
+                expected = ZonedDateTime.parse(date);
+            } catch (DateTimeException e) {
+                expected = e.getClass();
+            }
+            Object parsed;
+            try {
+                parsed = ZonedDateTimeISOAdapter.parse(date);
+            } catch (DateTimeException e) {
+                parsed = e.getClass();
+            }
+            assertEquals(date, expected, parsed);
+        }
+        ZonedDateTime date = ZonedDateTimeISOAdapter.parse("2015-08-24T05:58:22Z");
+        assertEquals(ZoneOffset.UTC, date.getZone());
+        assertEquals(1440395902L, date.toEpochSecond());
+    }
+
+    @Test
+    public void testStartTime() throws Exception {
+        StartTime startTime = new StartTime("2015, Mar 04 19:28:29.724");
+        assertEquals(1425497309724L, startTime.getDate(TimeZone.getTimeZone("UTC")).getTime());
+        assertEquals(1425497309724L - 3600000,
+                startTime.getDate(TimeZone.getTimeZone("GMT+1")).getTime());
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("GMT+2"));
+            assertEquals(1425497309724L - 7200000,
+                    new StartTime("2015, Mar 04 19:28:29.724").getDate().getTime());
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
     @Test
     public void testOptionalSingleValue() {
         JsonParser<Optional<Integer>> parser =
@@ -0,0 +1,110 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.Xor;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tests for ParallelParser.
+ */
+public class ParallelParserTest {
+
+    private static final TypeToken<Map<String, Xor<String, List<Integer>>>> TYPE =
+            new TypeToken<Map<String, Xor<String, List<Integer>>>>() { };
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    private static String response(int minions) {
+        StringBuilder json = new StringBuilder("{\"return\": [{");
+        for (int i = 0; i < minions; i++) {
+            json.append(i == 0 ? "" : ", ").append("\"minion").append(i).append("\": ");
+            if (i % 7 == 3) {
+                json.append("\"Minion did not return. [No response]\"");
+            } else if (i % 11 == 5) {
+                json.append("{\"a\": \"not a list\", \"b\": [").append(i).append("]}");
+            } else {
+                json.append("{\"a\": [").append(i).append(", 2], \"b\": []}");
+            }
+        }
+        return json.append("}, {\"minion0\": {}}]}").toString();
+    }
+
+    private static String eager(String json) {
+        Return<List<Map<String, Result<Map<String, Xor<String, List<Integer>>>>>>> parsed =
+                JsonParser.GSON.fromJson(json, new TypeToken<Return<List<Map<String,
+                        Result<Map<String, Xor<String, List<Integer>>>>>>>>() { }.getType());
+        return parsed.getResult().toString();
+    }
+
+    @Test
+    public void testSameAsEager() {
+        String json = response(500);
+        List<Map<String, Result<Map<String, Xor<String, List<Integer>>>>>> chunks =
+                new ParallelParser<>(TYPE, executor, 3, 100).parse(json);
+
+        assertEquals(eager(json), chunks.toString());
+        assertEquals(2, chunks.size());
+        assertEquals("minion0", chunks.get(0).keySet().iterator().next());
+        assertTrue(chunks.get(0).get("minion3").error().isPresent());
+    }
+
+    @Test
+    public void testDefaultExecutor() {
+        String json = response(50);
+        assertEquals(eager(json), new ParallelParser<>(TYPE).parse(json).toString());
+    }
+
+    @Test
+    public void testRejectingExecutor() {
+        String json = response(100);
+        ParallelParser<Map<String, Xor<String, List<Integer>>>> parser =
+                new ParallelParser<>(TYPE, task -> {
+                    throw new RejectedExecutionException();
+                }, 4, 100);
+        assertEquals(eager(json), parser.parse(json).toString());
+    }
+
+    @Test
+    public void testIdleExecutor() {
+        // Tasks are never run, the parsing thread has to decode all batches
+        List<Runnable> tasks = new ArrayList<>();
+        String json = response(100);
+        assertEquals(eager(json),
+                new ParallelParser<>(TYPE, tasks::add, 4, 100).parse(json).toString());
+        assertEquals(3, tasks.size());
+    }
+
+    @Test
+    public void testMalformedResult() {
+        String json = "{\"return\": [{\"minion1\": [1], \"minion2\": {\"a\": [1 2]}, " +
+                "\"minion3\": [3]}]}";
+        try {
+            new ParallelParser<>(TYPE, executor, 3, 1).parse(json);
+            fail("Expected malformed JSON to be rejected");
+        } catch (JsonSyntaxException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for RawReturnParser.
+ */
+public class RawReturnParserTest {
+
+    private static final String RESPONSE = "{\"return\": [{\"minion1\": {\"pkgs\": " +
+            "[\"vim\", \"grün\"]}, \"minion2\":\"Minion did not return. [No response]\"," +
+            "\n  \"minion3\" : 42 }]}";
+
+    private static String utf8(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void assertSlices(List<Map<String, ByteBuffer>> chunks) {
+        assertEquals(1, chunks.size());
+        Map<String, ByteBuffer> slices = chunks.get(0);
+        assertEquals(Arrays.asList("minion1", "minion2", "minion3"),
+                new ArrayList<>(slices.keySet()));
+        assertEquals("{\"pkgs\": [\"vim\", \"grün\"]}", utf8(slices.get("minion1")));
+        assertEquals("\"Minion did not return. [No response]\"", utf8(slices.get("minion2")));
+        assertEquals("42", utf8(slices.get("minion3")));
+        assertTrue(slices.get("minion3").isReadOnly());
+    }
+
+    @Test
+    public void testSlices() {
+        assertSlices(new RawReturnParser().parse(RESPONSE));
+    }
+
+    @Test
+    public void testSpilledSlices() throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        try {
+            assertSlices(new RawReturnParser(SpillPolicy.custom().withThreshold(0)
+                    .withDirectory(directory).build()).parse(RESPONSE));
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        List<Map<String, ByteBuffer>> chunks = new RawReturnParser()
+                .parse("{\"return\": [{\"minion1\": true}, {\"minion2\": false}]}");
+        assertEquals(2, chunks.size());
+        assertEquals("false", utf8(chunks.get(1).get("minion2")));
+    }
+}
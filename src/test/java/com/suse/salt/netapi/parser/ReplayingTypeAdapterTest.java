@@ -0,0 +1,162 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.suse.salt.netapi.errors.JsonParsingError;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.utils.Xor;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tests for decoding Xor and Result values straight from the stream, comparing them with
+ * the values decoded from the tree of the same JSON, the way they were decoded before.
+ */
+public class ReplayingTypeAdapterTest {
+
+    /**
+     * Object with optional fields.
+     */
+    private static class Dates {
+        private Optional<ZonedDateTime> date = Optional.empty();
+        private Optional<Integer> count = Optional.empty();
+        private Optional<Dates> previous = Optional.empty();
+
+        @Override
+        public String toString() {
+            return "Dates(" + date + ", " + count + ", " + previous + ")";
+        }
+    }
+
+    private static final Type RESULTS =
+            new TypeToken<Map<String, Result<Map<String, Xor<String, List<Integer>>>>>>() { }
+                    .getType();
+
+    private static <T> T fromStream(String json, Type type) {
+        return JsonParser.GSON.fromJson(json, type);
+    }
+
+    private static <T> T fromTree(String json, Type type) {
+        JsonElement tree = JsonParser.GSON.fromJson(json, JsonElement.class);
+        return JsonParser.GSON.fromJson(tree, type);
+    }
+
+    private static void assertSameAsTree(String json, Type type) {
+        Object fromStream = fromStream(json, type);
+        assertEquals(fromTree(json, type).toString(), fromStream.toString());
+    }
+
+    @Test
+    public void testResults() {
+        assertSameAsTree("{\"minion1\": {\"a\": [1, 2], \"b\": \"oops\", \"c\": [3, \"x\"]}," +
+                "\"minion2\": \"Minion did not return. [No response]\"," +
+                "\"minion3\": {\"a\": [1, {\"deep\": [[], {}]}, 2.5]}," +
+                "\"minion4\": [true, null, 1e2]," +
+                "\"minion5\": {\"a\": [7]}}", RESULTS);
+    }
+
+    @Test
+    public void testFailureInsideValue() {
+        Map<String, Result<List<Integer>>> results = fromStream(
+                "{\"minion1\": [1, 2, \"x\", {\"a\": [1, \"b\"]}, 3], \"minion2\": [4]}",
+                new TypeToken<Map<String, Result<List<Integer>>>>() { }.getType());
+
+        JsonParsingError error = (JsonParsingError) results.get("minion1").error().get();
+        assertEquals("[1,2,\"x\",{\"a\":[1,\"b\"]},3]", error.getJson().toString());
+        assertEquals(Arrays.asList(4), results.get("minion2").result().get());
+    }
+
+    @Test
+    public void testNumbers() {
+        Type type = new TypeToken<List<Result<Integer>>>() { }.getType();
+        String json = "[1, 1.0, 1e2, 2.5, \"3\", \"3.5\", 12345678901, true]";
+        assertSameAsTree(json, type);
+
+        List<Result<Integer>> results = fromStream(json, type);
+        assertEquals(Integer.valueOf(100), results.get(2).result().get());
+        // Numbers read from the tree are narrowed rather than rejected, as before
+        assertEquals(Integer.valueOf(2), results.get(3).result().get());
+        assertEquals(Integer.valueOf(3), results.get(4).result().get());
+        assertEquals("3.5",
+                ((JsonParsingError) results.get(5).error().get()).getJson().getAsString());
+        assertEquals("true",
+                ((JsonParsingError) results.get(7).error().get()).getJson().toString());
+    }
+
+    @Test
+    public void testOptionalEmptyString() {
+        Type type = new TypeToken<Result<List<Dates>>>() { }.getType();
+        String json = "[{\"previous\": \"\", \"count\": 1}, " +
+                "{\"date\": \"2015-08-24T05:58:22Z\", \"previous\": {\"count\": 2}}]";
+        assertSameAsTree(json, type);
+
+        List<Dates> dates = JsonParser.GSON.<Result<List<Dates>>>fromJson(json, type)
+                .result().get();
+        assertFalse(dates.get(0).previous.isPresent());
+        assertEquals(Optional.of(1), dates.get(0).count);
+        assertEquals(2015, dates.get(1).date.get().getYear());
+        assertEquals(Optional.of(2), dates.get(1).previous.get().count);
+    }
+
+    @Test
+    public void testOptionalInvalidString() {
+        Type type = new TypeToken<Result<Dates>>() { }.getType();
+        String json = "{\"previous\": \"yesterday\"}";
+        assertSameAsTree(json, type);
+        assertTrue(JsonParser.GSON.<Result<Dates>>fromJson(json, type).error().isPresent());
+    }
+
+    @Test
+    public void testNonStringKeys() {
+        Type type = new TypeToken<Result<Map<Integer, String>>>() { }.getType();
+        String json = "{\"1\": \"a\", \"2\": \"b\"}";
+        assertSameAsTree(json, type);
+        Result<Map<Integer, String>> result = fromStream(json, type);
+        assertEquals("b", result.result().get().get(2));
+    }
+
+    @Test
+    public void testXorLeft() {
+        Type type = new TypeToken<List<Xor<Map<String, Integer>, List<Integer>>>>() { }
+                .getType();
+        assertSameAsTree("[[1, 2], {\"a\": 1}, [3]]", type);
+    }
+
+    @Test
+    public void testMalformedJson() {
+        JsonReader reader = new JsonReader(new StringReader("{\"minion1\": [1, 2}"));
+        try {
+            JsonParser.GSON.getAdapter(new TypeToken<Map<String, Result<List<Integer>>>>() { })
+                    .read(reader);
+            fail("Expected malformed JSON to be rejected");
+        } catch (Exception e) {
+            assertTrue(e.toString(), e instanceof java.io.IOException);
+        }
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        try {
+            fromStream("{\"a\": 1, \"a\": 2}", new TypeToken<Map<String, Integer>>() { }.getType());
+            fail("Expected duplicate keys to be rejected");
+        } catch (JsonSyntaxException e) {
+            assertEquals("duplicate key: a", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.calls.modules.Pkg;
+import com.suse.salt.netapi.errors.JsonParsingError;
+import com.suse.salt.netapi.results.LazyResultMap;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import com.suse.salt.netapi.utils.ClientUtils;
+import com.suse.salt.netapi.utils.Xor;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Tests for SpillingParser.
+ */
+public class SpillingParserTest {
+
+    private static final String RESPONSE = "{\"return\": [{" +
+            "\"minion1\": {\"a\": [1, \"}]\\\"\"]}, " +
+            "\"min\\u0069on2\" : \"not a map\" ,\n" +
+            "\"minion3\": null}], \"other\": {\"return\": []}}";
+
+    private Path directory;
+
+    @Before
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("spill");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.delete(directory);
+    }
+
+    private <R> SpillingParser<R> parser(TypeToken<R> type, long threshold) {
+        return new SpillingParser<>(type, SpillPolicy.custom()
+                .withThreshold(threshold).withDirectory(directory).build());
+    }
+
+    private long spilledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testLazyResults() throws IOException {
+        TypeToken<Map<String, List<Object>>> type = new TypeToken<Map<String, List<Object>>>() { };
+        Return<List<Map<String, Result<Map<String, List<Object>>>>>> parsed =
+                JsonParser.GSON.fromJson(RESPONSE, new TypeToken<Return<List<Map<String,
+                        Result<Map<String, List<Object>>>>>>>() { }.getType());
+        for (long threshold : new long[] {0, 1L << 20}) {
+            List<Map<String, Result<Map<String, List<Object>>>>> chunks =
+                    parser(type, threshold).parse(RESPONSE);
+            assertEquals(0, spilledFiles());
+            assertEquals(1, chunks.size());
+            Map<String, Result<Map<String, List<Object>>>> results = chunks.get(0);
+            assertTrue(results instanceof LazyResultMap);
+            assertEquals(Arrays.asList("minion1", "minion2", "minion3"),
+                    new ArrayList<>(results.keySet()));
+            assertEquals(Arrays.asList(1.0, "}]\""),
+                    results.get("minion1").result().get().get("a"));
+            assertTrue(results.get("minion2").error().get() instanceof JsonParsingError);
+            assertNull(results.get("minion4"));
+            // Results are the same as if the response was parsed as a whole
+            for (Map.Entry<String, Result<Map<String, List<Object>>>> entry :
+                    results.entrySet()) {
+                assertEquals(String.valueOf(parsed.getResult().get(0).get(entry.getKey())),
+                        String.valueOf(entry.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testSpilledResults() throws IOException {
+        String pkgs = ClientUtils.streamToString(
+                getClass().getResourceAsStream("/modules/pkg/list_pkgs_full.json"));
+        StringBuilder response = new StringBuilder("{\"return\": [{");
+        for (int i = 0; i < 100; i++) {
+            response.append(i == 0 ? "" : ", ").append("\"minion").append(i).append("\": ")
+                    .append(pkgs);
+        }
+        response.append("}]}");
+        TypeToken<Map<String, List<Object>>> type = new TypeToken<Map<String, List<Object>>>() { };
+
+        Map<String, Result<Map<String, List<Object>>>> results =
+                parser(type, 64 * 1024).parse(new ByteArrayInputStream(
+                        response.toString().getBytes(StandardCharsets.UTF_8))).get(0);
+        assertEquals(0, spilledFiles());
+        assertEquals(100, results.size());
+        Map<String, List<Object>> expected = JsonParser.GSON.fromJson(pkgs, type.getType());
+        assertEquals(expected, results.get("minion0").result().get());
+        assertEquals(expected, results.get("minion99").result().get());
+    }
+
+    @Test
+    public void testCachedResults() {
+        TypeToken<Map<String, List<Object>>> type = new TypeToken<Map<String, List<Object>>>() { };
+        LazyResultMap<Map<String, List<Object>>> results =
+                (LazyResultMap<Map<String, List<Object>>>) new SpillingParser<>(type,
+                        SpillPolicy.NEVER, true).parse(RESPONSE).get(0);
+        assertEquals(0, results.getCachedCount());
+
+        Result<Map<String, List<Object>>> minion1 = results.get("minion1");
+        assertSame(minion1, results.get("minion1"));
+        assertEquals(1, results.getCachedCount());
+        assertNull(results.get("minion4"));
+
+        results.forEach((minion, result) -> { });
+        assertEquals(3, results.getCachedCount());
+        assertSame(minion1, results.entrySet().iterator().next().getValue());
+
+        // Not caching by default
+        LazyResultMap<Map<String, List<Object>>> uncached =
+                (LazyResultMap<Map<String, List<Object>>>) parser(type, 0)
+                        .parse(RESPONSE).get(0);
+        assertNotSame(uncached.get("minion1"), uncached.get("minion1"));
+        assertEquals(0, uncached.getCachedCount());
+    }
+
+    @Test
+    public void testFunctionReturnType() {
+        Map<String, Result<Map<String, List<Xor<String, Pkg.Info>>>>> results =
+                parser(Pkg.listPkgs(new ArrayList<>()).getReturnType(), 0)
+                        .parse("{\"return\": [{\"minion1\": {\"vim\": " +
+                                "[{\"version\": \"8.0\", \"arch\": \"x86_64\"}]}}]}").get(0);
+        Pkg.Info vim = results.get("minion1").result().get().get("vim").get(0).right().get();
+        assertEquals("8.0", vim.getVersion().get());
+    }
+
+    @Test
+    public void testEmptyReturn() {
+        TypeToken<Boolean> type = new TypeToken<Boolean>() { };
+        assertTrue(parser(type, 0).parse("{\"return\": [{}]}").get(0).isEmpty());
+        assertEquals(2, parser(type, 0).parse("{\"return\": [{}, {\"m\": true}]}").size());
+    }
+
+    @Test
+    public void testMalformedResponses() throws IOException {
+        List<String> responses = Arrays.asList(
+                "",
+                "[]",
+                "{\"return\": [{\"minion1\": true}]",
+                "{\"return\": [{\"minion1\": true}]}}",
+                "{\"return\": [{\"minion1\": true}]} {",
+                "{\"return\": [\"minion1\"]}",
+                "{\"return\": [{\"minion1\": true]}]}",
+                "{\"return\": [{\"minion1\": }]}",
+                "{\"return\": {\"minion1\": true}}",
+                "{\"other\": [{\"minion1\": true}]}");
+        for (String response : responses) {
+            try {
+                parser(new TypeToken<Boolean>() { }, 0).parse(response);
+                throw new AssertionError("Accepted " + response);
+            } catch (JsonParseException e) {
+                // expected
+            }
+        }
+        assertEquals(0, spilledFiles());
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testDuplicateMinion() {
+        parser(new TypeToken<Boolean>() { }, 0)
+                .parse("{\"return\": [{\"minion1\": true, \"minion1\": false}]}");
+    }
+}
@@ -0,0 +1,82 @@
+package com.suse.salt.netapi.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+/**
+ * Tests for StringTable.
+ */
+public class StringTableTest {
+
+    @Test
+    public void testIntern() {
+        StringTable table = new StringTable(16, 8);
+        String first = new String("x86_64");
+        assertSame(first, table.intern(first));
+        assertSame(first, table.intern(new String("x86_64")));
+        assertEquals(1, table.getHits());
+        assertEquals(1, table.getMisses());
+        assertEquals(0.5, table.getHitRate(), 0);
+        // 24 bytes for the string, 16 + 2 * 6 rounded up to 32 bytes for the array
+        assertEquals(56, table.getBytesSaved());
+    }
+
+    @Test
+    public void testInternName() {
+        StringTable table = new StringTable(16, 8);
+        String first = new String("arch");
+        assertSame(first, table.internName(first));
+        assertSame(first, table.internName(new String("arch")));
+        assertEquals(0, table.getHits() + table.getMisses());
+        assertEquals(0, table.getBytesSaved());
+
+        // Names are shared with equal values
+        assertSame(first, table.intern(new String("arch")));
+        assertEquals(1, table.getHits());
+    }
+
+    @Test
+    public void testMaxLength() {
+        StringTable table = new StringTable(16, 8);
+        String first = new String("a very long description");
+        assertSame(first, table.intern(first));
+        assertNotSame(first, table.intern(new String(first)));
+        assertEquals(0, table.getHits() + table.getMisses());
+        assertEquals(0, table.getHitRate(), 0);
+    }
+
+    @Test
+    public void testBounded() {
+        StringTable table = new StringTable(1, 8);
+        assertEquals(1, table.getCapacity());
+        String first = new String("a");
+        table.intern(first);
+        table.intern(new String("b"));
+        // "a" was evicted by "b"
+        assertNotSame(first, table.intern(new String("a")));
+        assertEquals(3, table.getMisses());
+        assertEquals(1024, new StringTable(1000, 8).getCapacity());
+    }
+
+    @Test
+    public void testOptional() {
+        StringTable table = new StringTable(16, 8);
+        String string = table.intern(new String("noarch"));
+        Optional<String> optional = table.optionalOf(string);
+        long saved = table.getBytesSaved();
+        assertSame(optional, table.optionalOf(table.intern(new String("noarch"))));
+        assertEquals(saved + 56 + 16, table.getBytesSaved());
+        // Strings not taken from the table are not shared
+        assertNotSame(optional, table.optionalOf(new String("noarch")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new StringTable(0, 8);
+    }
+}
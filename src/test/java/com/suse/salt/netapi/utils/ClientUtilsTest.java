@@ -8,6 +8,11 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * ClientUtils class unit-tests.
@@ -78,4 +83,23 @@ public class ClientUtilsTest {
         ClientUtils.splitFunction(TEST_STRING);
     }
 
+    @Test
+    public void testTimeoutSignalledOnExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "timeout-executor"));
+        try {
+            CompletableFuture<String> source = new CompletableFuture<>();
+            CompletableFuture<String> thread = ClientUtils.withTimeout(source, 50, executor)
+                    .handle((value, e) -> {
+                        assertTrue(e instanceof TimeoutException);
+                        return Thread.currentThread().getName();
+                    }).toCompletableFuture();
+            assertEquals("timeout-executor", thread.get(5, TimeUnit.SECONDS));
+            // The source is cancelled right after the timeout was signalled
+            source.handle((value, e) -> e).get(5, TimeUnit.SECONDS);
+            assertTrue(source.isCancelled());
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package com.suse.salt.netapi.utils;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static org.junit.Assert.assertEquals;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.suse.salt.netapi.client.SaltClient;
+import com.suse.salt.netapi.client.SaltClientTest;
+import com.suse.salt.netapi.client.impl.HttpAsyncClientImpl;
+import org.apache.http.pool.PoolStats;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+/**
+ * HttpClientUtils unit tests.
+ */
+public class HttpClientUtilsTest {
+
+    private static final int MOCK_HTTP_PORT = 8888;
+
+    static final String JSON_STATS_RESPONSE = ClientUtils.streamToString(
+            SaltClientTest.class.getResourceAsStream("/stats_response.json"));
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    @Test
+    public void testPooledClient() throws IOException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(JSON_STATS_RESPONSE)));
+        URI uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+
+        try (PooledHttpClient pooled = HttpClientUtils.custom()
+                .withMaxConnectionsPerRoute(4)
+                .withMaxConnectionsTotal(8)
+                .withIoThreadCount(1)
+                .withKeepAlive(60000)
+                .withIdleConnectionEviction(60000)
+                .build()) {
+            assertEquals(8, pooled.getTotalStats().getMax());
+
+            pooled.prewarm(uri, 10).toCompletableFuture().join();
+            PoolStats stats = pooled.getStats(uri);
+            assertEquals(4, stats.getMax());
+            assertEquals(4, stats.getAvailable());
+            assertEquals(0, stats.getLeased());
+
+            SaltClient client = new SaltClient(uri,
+                    new HttpAsyncClientImpl(pooled.getHttpClient()));
+            client.stats().toCompletableFuture().join();
+            stats = pooled.getStats(uri);
+            assertEquals(4, stats.getAvailable());
+            assertEquals(0, stats.getLeased());
+            assertEquals(0, stats.getPending());
+        }
+    }
+}
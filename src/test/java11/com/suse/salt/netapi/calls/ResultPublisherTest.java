@@ -0,0 +1,235 @@
+package com.suse.salt.netapi.calls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.client.ManualClient;
+import com.suse.salt.netapi.client.SaltClient;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.Event;
+import com.suse.salt.netapi.datatypes.Token;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.errors.GenericError;
+import com.suse.salt.netapi.event.AbstractEventStream;
+import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.results.Result;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for ResultPublisher.
+ */
+public class ResultPublisherTest {
+
+    private static final AuthMethod AUTH = new AuthMethod(new Token("token"));
+    private static final String JID = "20161115135014396739";
+
+    /**
+     * Event stream passing on the events it is given.
+     */
+    private static class ManualEventStream extends AbstractEventStream {
+        void fire(String minion, String result) {
+            notifyListeners(JsonParser.GSON.fromJson("{\"tag\": \"salt/job/" + JID +
+                    "/ret/" + minion + "\", \"data\": {\"id\": \"" + minion + "\", " +
+                    "\"jid\": \"" + JID + "\", \"fun\": \"test.ping\", \"return\": " +
+                    result + "}}", Event.class));
+        }
+
+        void closeWith(String phrase) {
+            clearListeners(1000, phrase);
+        }
+
+        @Override
+        public boolean isEventStreamClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Subscriber recording what it is given.
+     */
+    private static class Recorder implements Flow.Subscriber<Map.Entry<String, Result<Boolean>>> {
+        private final List<Map.Entry<String, Result<Boolean>>> items = new ArrayList<>();
+        private final List<String> threads = new ArrayList<>();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            this.subscription = s;
+        }
+
+        @Override
+        public void onNext(Map.Entry<String, Result<Boolean>> item) {
+            items.add(item);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            threads.add(Thread.currentThread().getName());
+            terminated.countDown();
+        }
+    }
+
+    private final ManualClient http = new ManualClient(this::publish);
+    private String published = "{\"return\": [{\"jid\": \"" + JID + "\", " +
+            "\"minions\": [\"minion1\", \"minion2\", \"minion3\"]}]}";
+    private final SaltClient client = new SaltClient(URI.create("http://localhost/"), http);
+    private final ManualEventStream events = new ManualEventStream();
+
+    /**
+     * Answers the publish of the job, and leaves the lookup of its results pending.
+     */
+    private void publish(ManualClient.Request request) {
+        if (http.getRequests().size() == 1) {
+            request.answer(published);
+        }
+    }
+
+    private Recorder subscribe(long timeoutMillis) {
+        return subscribe(timeoutMillis, Runnable::run);
+    }
+
+    private Recorder subscribe(long timeoutMillis, Executor executor) {
+        Recorder recorder = new Recorder();
+        new ResultPublisher<>(Test.ping(), client, new Glob("*"), AUTH, events,
+                Optional.empty(), timeoutMillis, executor).subscribe(recorder);
+        return recorder;
+    }
+
+    @org.junit.Test
+    public void testDemand() {
+        Recorder recorder = subscribe(0);
+        assertEquals(1, events.getListenerCount());
+        // The job is published, and its results looked up for minions already done
+        assertEquals(2, http.getBodies().size());
+
+        events.fire("minion1", "true");
+        events.fire("minion2", "false");
+        assertTrue(recorder.items.isEmpty());
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.items.size());
+        assertEquals("minion1", recorder.items.get(0).getKey());
+        assertTrue(recorder.items.get(0).getValue().result().get());
+
+        events.fire("minion3", "true");
+        // Returns for other jobs and minions already returned are ignored
+        events.fire("minion1", "false");
+        assertFalse(recorder.completed);
+        assertEquals(0, events.getListenerCount());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(3, recorder.items.size());
+        assertEquals("minion3", recorder.items.get(2).getKey());
+        assertTrue(recorder.completed);
+    }
+
+    @org.junit.Test
+    public void testTimeout() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "publisher-executor"));
+        try {
+            Recorder recorder = subscribe(100, executor);
+            recorder.subscription.request(10);
+            events.fire("minion2", "true");
+
+            assertTrue(recorder.terminated.await(5, TimeUnit.SECONDS));
+            assertTrue(recorder.completed);
+            assertEquals(3, recorder.items.size());
+            assertTrue(recorder.items.get(1).getValue().error().get() instanceof GenericError);
+            assertEquals(0, events.getListenerCount());
+            // Expired results are delivered on the executor, not on the shared scheduler
+            assertEquals(Collections.nCopies(4, "publisher-executor"), recorder.threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @org.junit.Test
+    public void testRejectedExecution() {
+        Recorder recorder = subscribe(0, task -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        recorder.subscription.request(10);
+        events.fire("minion1", "true");
+
+        assertTrue(recorder.error instanceof RejectedExecutionException);
+        assertTrue(recorder.items.isEmpty());
+        assertEquals(0, events.getListenerCount());
+    }
+
+    @org.junit.Test
+    public void testEventStreamClosed() {
+        Recorder recorder = subscribe(0);
+        recorder.subscription.request(10);
+        events.closeWith("going away");
+
+        assertEquals(3, recorder.items.size());
+        assertEquals("EventStream closed with reason going away",
+                ((GenericError) recorder.items.get(0).getValue().error().get()).getMessage());
+        assertTrue(recorder.completed);
+    }
+
+    @org.junit.Test
+    public void testCancel() {
+        Recorder recorder = subscribe(0);
+        recorder.subscription.request(10);
+        events.fire("minion1", "true");
+        recorder.subscription.cancel();
+        events.fire("minion2", "true");
+
+        assertEquals(1, recorder.items.size());
+        assertEquals(0, events.getListenerCount());
+        assertFalse(recorder.completed);
+    }
+
+    @org.junit.Test
+    public void testNoMinions() {
+        published = "{\"return\": [{\"jid\": \"" + JID + "\", \"minions\": []}]}";
+        Recorder recorder = subscribe(0);
+
+        assertTrue(recorder.completed);
+        assertEquals(1, http.getBodies().size());
+    }
+
+    @org.junit.Test
+    public void testSingleSubscriber() {
+        ResultPublisher<Boolean> publisher = new ResultPublisher<>(Test.ping(), client,
+                new Glob("*"), AUTH, events, Optional.empty());
+        publisher.subscribe(new Recorder());
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+
+        assertTrue(second.error instanceof IllegalStateException);
+        assertEquals(2, http.getBodies().size());
+    }
+}
@@ -0,0 +1,236 @@
+package com.suse.salt.netapi.client.impl;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.suse.salt.netapi.AuthModule;
+import com.suse.salt.netapi.calls.modules.Test;
+import com.suse.salt.netapi.client.Deadline;
+import com.suse.salt.netapi.client.SaltClient;
+import com.suse.salt.netapi.datatypes.AuthMethod;
+import com.suse.salt.netapi.datatypes.PasswordAuth;
+import com.suse.salt.netapi.datatypes.target.Glob;
+import com.suse.salt.netapi.exception.SaltUserUnauthorizedException;
+import com.suse.salt.netapi.parser.JsonParser;
+import com.suse.salt.netapi.parser.SpillPolicy;
+import com.suse.salt.netapi.parser.SpillingParser;
+import com.suse.salt.netapi.results.Result;
+import com.suse.salt.netapi.results.Return;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for JdkHttpClientImpl.
+ */
+public class JdkHttpClientImplTest {
+
+    private static final int MOCK_HTTP_PORT = 8888;
+    private static final int MINIONS = 20000;
+
+    private static final JsonParser<Return<List<Map<String, String>>>> PARSER =
+            new JsonParser<>(new TypeToken<Return<List<Map<String, String>>>>(){});
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(MOCK_HTTP_PORT);
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private HttpClient httpClient;
+    private URI uri;
+
+    @Before
+    public void init() {
+        httpClient = JdkHttpClientImpl.defaultClient(executor);
+        uri = URI.create("http://localhost:" + Integer.toString(MOCK_HTTP_PORT));
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    private static String largeResponse() {
+        StringBuilder json = new StringBuilder("{\"return\": [{");
+        for (int i = 0; i < MINIONS; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"minion").append(i).append("\": \"SUSE Linux Enterprise\"");
+        }
+        return json.append("}]}").toString();
+    }
+
+    @org.junit.Test
+    public void testStreamingParse() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient, executor);
+        Map<String, String> result = client.post(uri, "[]", PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+        assertEquals("SUSE Linux Enterprise", result.get("minion" + (MINIONS - 1)));
+    }
+
+    @org.junit.Test
+    public void testSpillingParseStreamed() throws IOException {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        Path directory = Files.createTempDirectory("spill");
+        AtomicReference<String> thread = new AtomicReference<>();
+        SpillingParser<String> parser = new SpillingParser<String>(new TypeToken<String>(){},
+                SpillPolicy.custom().withThreshold(0).withDirectory(directory).build()) {
+            @Override
+            public List<Map<String, Result<String>>> parse(InputStream inputStream) {
+                thread.set(Thread.currentThread().getName());
+                return super.parse(inputStream);
+            }
+        };
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient);
+        Map<String, Result<String>> result = client.post(uri, "[]", parser)
+                .toCompletableFuture().join().get(0);
+
+        assertEquals(MINIONS, result.size());
+        assertEquals("SUSE Linux Enterprise", result.get("minion1").result().get());
+        // The client buffers other bodies, spilled ones are parsed while they arrive
+        assertEquals("salt-netapi-parser", thread.get());
+        Files.delete(directory);
+    }
+
+    @org.junit.Test
+    public void testDeadlineExceeded() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(HttpTimeoutException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withFixedDelay(10000)
+                .withBody("{\"return\": [{}]}")));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient)
+                .withDeadline(Deadline.after(200));
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @org.junit.Test
+    public void testBufferedParse() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody(largeResponse())));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient);
+        Map<String, String> result = client.get(uri, PARSER)
+                .toCompletableFuture().join().getResult().get(0);
+
+        assertEquals(MINIONS, result.size());
+    }
+
+    @org.junit.Test
+    public void testParseError() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(JsonSyntaxException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": [1, 2, 3]}]}")));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient, executor);
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @org.junit.Test
+    public void testUnauthorized() {
+        exception.expect(CompletionException.class);
+        exception.expectCause(instanceOf(SaltUserUnauthorizedException.class));
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_UNAUTHORIZED)
+                .withBody("<html>401 Unauthorized</html>")));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient, executor);
+        client.post(uri, "[]", PARSER).toCompletableFuture().join();
+    }
+
+    @org.junit.Test
+    public void testCancel() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withFixedDelay(10000)
+                .withBody("{\"return\": [{}]}")));
+
+        JdkHttpClientImpl client = new JdkHttpClientImpl(httpClient, executor);
+        CompletableFuture<Return<List<Map<String, String>>>> future =
+                client.post(uri, "[]", PARSER).toCompletableFuture();
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+    }
+
+    @org.junit.Test
+    public void testSaltClientCall() {
+        stubFor(any(urlMatching(".*"))
+                .willReturn(aResponse()
+                .withStatus(HttpURLConnection.HTTP_OK)
+                .withHeader("Content-Type", "application/json")
+                .withBody("{\"return\": [{\"minion1\": true}]}")));
+
+        SaltClient saltClient = new SaltClient(uri, new JdkHttpClientImpl(httpClient));
+        AuthMethod auth = new AuthMethod(new PasswordAuth("user", "pa55wd", AuthModule.AUTO));
+        Map<String, Result<Boolean>> result = Test.ping().callSync(saltClient,
+                new Glob("*"), auth).toCompletableFuture().join();
+
+        assertEquals(Collections.singleton("minion1"), result.keySet());
+        verify(1, postRequestedFor(urlEqualTo("/run"))
+                .withHeader("Content-Type", equalTo("application/json"))
+                .withRequestBody(equalToJson("[{\"client\": \"local\", \"fun\": \"test.ping\"," +
+                        " \"tgt\": \"*\", \"tgt_type\": \"glob\", \"username\": \"user\"," +
+                        " \"password\": \"pa55wd\", \"eauth\": \"auto\"}]")));
+    }
+}